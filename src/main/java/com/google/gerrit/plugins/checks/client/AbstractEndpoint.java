@@ -17,57 +17,137 @@ package com.google.gerrit.plugins.checks.client;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Base class of the checks REST-API endpoints.
+ *
+ * <p>Endpoints are immutable: every request builds its own URI, therefore an endpoint and the
+ * {@link GerritChecksApi} that created it can be shared across threads.
+ */
 abstract class AbstractEndpoint {
 
   private static final String AUTH_PREFIX = "/a/";
 
   private final URIish gerritBaseUrl;
+  private final URI gerritBaseUri;
   private final boolean isAuthentcated;
   protected final CloseableHttpClient client;
-  protected final URIBuilder uriBuilder;
 
   protected AbstractEndpoint(
       URIish gerritBaseUrl, CloseableHttpClient client, boolean isAuthenticated)
       throws URISyntaxException {
     this.isAuthentcated = isAuthenticated;
     this.gerritBaseUrl = gerritBaseUrl;
+    this.gerritBaseUri = new URIBuilder(gerritBaseUrl.toASCIIString()).build();
     this.client = client;
-    this.uriBuilder = new URIBuilder(gerritBaseUrl.toASCIIString());
+  }
+
+  /**
+   * Create an endpoint targeting the same Gerrit server as another one.
+   *
+   * @param endpoint the endpoint to copy the server configuration from.
+   */
+  protected AbstractEndpoint(AbstractEndpoint endpoint) {
+    this.isAuthentcated = endpoint.isAuthentcated;
+    this.gerritBaseUrl = endpoint.gerritBaseUrl;
+    this.gerritBaseUri = endpoint.gerritBaseUri;
+    this.client = endpoint.client;
   }
 
   protected String getPrefix() {
     return isAuthentcated ? AUTH_PREFIX : "/";
   }
 
+  protected URI buildRequestUri(String path) throws URISyntaxException {
+    return buildRequestUri(path, Collections.emptyMap());
+  }
+
+  protected URI buildRequestUri(String path, Map<String, String> parameters)
+      throws URISyntaxException {
+    URIBuilder uriBuilder = new URIBuilder(gerritBaseUri).setPath(getPrefix() + path);
+    parameters.forEach(uriBuilder::setParameter);
+    return uriBuilder.build();
+  }
+
   protected URIish getGerritBaseUrl() {
     return gerritBaseUrl;
   }
 
+  /**
+   * JSON codec for the Gerrit checks REST-API.
+   *
+   * <p>The underlying {@link Gson} instance is immutable and shared by all the endpoints.
+   */
   public static class JsonBodyParser {
     private static final String JSON_PREFIX = ")]}'";
 
+    private static final Gson GSON =
+        new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .registerTypeAdapter(Timestamp.class, UTCTimestampTypeAdapter.INSTANCE)
+            .create();
+
     public static <T> T parseResponse(String json, Type type) {
       json = removeJsonPrefix(json);
-      return newGson().fromJson(json, type);
+      return GSON.fromJson(json, type);
     }
 
-    public static String createRequestBody(Object object, Type type) {
-      return newGson().toJson(object, type);
+    /**
+     * Parse a response entity without buffering it, skipping the XSSI prevention prefix.
+     *
+     * @param entity the response entity.
+     * @param type the type of the parsed object.
+     * @return the parsed object.
+     * @throws IOException if the entity cannot be read.
+     */
+    public static <T> T parseResponse(HttpEntity entity, Type type) throws IOException {
+      Charset charset =
+          Optional.ofNullable(ContentType.getOrDefault(entity).getCharset())
+              .orElse(StandardCharsets.UTF_8);
+      try (Reader reader =
+          new BufferedReader(new InputStreamReader(entity.getContent(), charset))) {
+        return parseResponse(reader, type);
+      }
     }
 
-    private static Gson newGson() {
-      return new GsonBuilder()
-          .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-          .setDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
-          .registerTypeAdapter(Timestamp.class, new UTCTimestampTypeAdapter())
-          .create();
+    /**
+     * Parse a JSON stream, skipping the XSSI prevention prefix.
+     *
+     * @param reader the reader, which must support {@link Reader#mark(int)}.
+     * @param type the type of the parsed object.
+     * @return the parsed object.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static <T> T parseResponse(Reader reader, Type type) throws IOException {
+      skipJsonPrefix(reader);
+      try {
+        return GSON.fromJson(reader, type);
+      } catch (JsonIOException e) {
+        throw new IOException(e);
+      }
+    }
+
+    public static String createRequestBody(Object object, Type type) {
+      return GSON.toJson(object, type);
     }
 
     private static String removeJsonPrefix(String json) {
@@ -76,5 +156,20 @@ abstract class AbstractEndpoint {
       }
       return json;
     }
+
+    private static void skipJsonPrefix(Reader reader) throws IOException {
+      reader.mark(JSON_PREFIX.length());
+      for (int i = 0; i < JSON_PREFIX.length(); i++) {
+        if (reader.read() != JSON_PREFIX.charAt(i)) {
+          reader.reset();
+          return;
+        }
+      }
+
+      int c;
+      do {
+        c = reader.read();
+      } while (c != -1 && c != '\n');
+    }
   }
 }
@@ -46,9 +46,9 @@ public class Checkers extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()),
-              new TypeToken<CheckerInfo>() {}.getType());
+              response.getEntity(), new TypeToken<CheckerInfo>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format("Request returned status %s", response.getStatusLine().getStatusCode()));
       }
@@ -63,9 +63,9 @@ public class Checkers extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()),
-              new TypeToken<CheckerInfo>() {}.getType());
+              response.getEntity(), new TypeToken<CheckerInfo>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format(
                 "Request failed with status: %d", response.getStatusLine().getStatusCode()));
@@ -86,9 +86,9 @@ public class Checkers extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()),
-              new TypeToken<CheckerInfo>() {}.getType());
+              response.getEntity(), new TypeToken<CheckerInfo>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format("Request returned status %s", response.getStatusLine().getStatusCode()));
       }
@@ -102,8 +102,6 @@ public class Checkers extends AbstractEndpoint {
   }
 
   private URI buildRequestUrl(String suffixPath) throws URISyntaxException {
-    return uriBuilder
-        .setPath(String.format("%splugins/checks/checkers/%s", getPrefix(), suffixPath))
-        .build();
+    return buildRequestUri("plugins/checks/checkers/" + suffixPath);
   }
 }
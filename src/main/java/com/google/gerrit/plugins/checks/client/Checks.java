@@ -33,24 +33,36 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Checks of a patch-set.
+ *
+ * <p>Instances are immutable, {@link #change(int)} and {@link #patchSet(int)} return a new request
+ * and leave the original one unchanged.
+ */
 public class Checks extends AbstractEndpoint {
 
-  private int changeNumber;
-  private int patchSetNumber;
+  private final int changeNumber;
+  private final int patchSetNumber;
 
   public Checks(URIish gerritBaseUrl, CloseableHttpClient client, boolean isAuthenticated)
       throws URISyntaxException {
     super(gerritBaseUrl, client, isAuthenticated);
+    this.changeNumber = 0;
+    this.patchSetNumber = 0;
   }
 
-  public Checks change(int changeNumber) {
+  private Checks(Checks checks, int changeNumber, int patchSetNumber) {
+    super(checks);
     this.changeNumber = changeNumber;
-    return this;
+    this.patchSetNumber = patchSetNumber;
+  }
+
+  public Checks change(int changeNumber) {
+    return new Checks(this, changeNumber, patchSetNumber);
   }
 
   public Checks patchSet(int patchSetNumber) {
-    this.patchSetNumber = patchSetNumber;
-    return this;
+    return new Checks(this, changeNumber, patchSetNumber);
   }
 
   public CheckInfo create(CheckInput input) throws RestApiException {
@@ -67,8 +79,9 @@ public class Checks extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()), new TypeToken<CheckInfo>() {}.getType());
+              response.getEntity(), new TypeToken<CheckInfo>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format(
                 "Request failed with status: %d", response.getStatusLine().getStatusCode()));
@@ -84,9 +97,9 @@ public class Checks extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()),
-              new TypeToken<List<CheckInfo>>() {}.getType());
+              response.getEntity(), new TypeToken<List<CheckInfo>>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format(
                 "Request failed with status: %d", response.getStatusLine().getStatusCode()));
@@ -110,8 +123,9 @@ public class Checks extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()), new TypeToken<CheckInfo>() {}.getType());
+              response.getEntity(), new TypeToken<CheckInfo>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format(
                 "Request failed with status: %d", response.getStatusLine().getStatusCode()));
@@ -140,7 +154,7 @@ public class Checks extends AbstractEndpoint {
     try (CloseableHttpResponse response = client.execute(request)) {
       if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
         return JsonBodyParser.parseResponse(
-            EntityUtils.toString(response.getEntity()), new TypeToken<CheckInfo>() {}.getType());
+            response.getEntity(), new TypeToken<CheckInfo>() {}.getType());
       }
       throw new RestApiException(
           String.format(
@@ -157,11 +171,8 @@ public class Checks extends AbstractEndpoint {
   }
 
   private URI buildRequestUrl(String suffixPath) throws URISyntaxException {
-    return uriBuilder
-        .setPath(
-            String.format(
-                "%schanges/%d/revisions/%d/checks/%s",
-                getPrefix(), changeNumber, patchSetNumber, suffixPath))
-        .build();
+    return buildRequestUri(
+        String.format(
+            "changes/%d/revisions/%d/checks/%s", changeNumber, patchSetNumber, suffixPath));
   }
 }
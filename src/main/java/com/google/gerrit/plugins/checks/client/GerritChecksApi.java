@@ -19,10 +19,16 @@ import java.net.URISyntaxException;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Entry point of the Gerrit checks REST-API.
+ *
+ * <p>The endpoints are immutable and share the same pooled HTTP client, therefore a single instance
+ * can serve concurrent callers.
+ */
 public class GerritChecksApi {
 
-  private URIish gerritBaseUrl;
-  private CloseableHttpClient client;
+  private final URIish gerritBaseUrl;
+  private final CloseableHttpClient client;
   private final boolean isAuthenticated;
 
   public GerritChecksApi(
@@ -22,13 +22,18 @@ import java.security.cert.X509Certificate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ssl.SSLContext;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.TrustStrategy;
 import org.eclipse.jgit.transport.URIish;
@@ -36,13 +41,18 @@ import org.eclipse.jgit.transport.URIish;
 public class GerritChecksApiBuilder {
   public static final Logger LOGGER = Logger.getLogger(GerritChecksApiBuilder.class.getName());
 
+  private static final int MAX_CONNECTIONS = Integer.getInteger("gerrit.checks.maxConnections", 20);
+
   private URIish gerritBaseURL;
   private HttpClientBuilder clientBuilder;
   private boolean isAuthenticated = false;
 
   public GerritChecksApiBuilder(URIish gerritBaseURL) {
     this.gerritBaseURL = gerritBaseURL;
-    clientBuilder = HttpClientBuilder.create();
+    clientBuilder =
+        HttpClientBuilder.create()
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .setMaxConnTotal(MAX_CONNECTIONS);
   }
 
   public GerritChecksApiBuilder allowInsecureHttps() {
@@ -76,6 +86,32 @@ public class GerritChecksApiBuilder {
     return this;
   }
 
+  public GerritChecksApiBuilder setRequestExecutor(HttpRequestExecutor requestExecutor) {
+    clientBuilder.setRequestExecutor(requestExecutor);
+    return this;
+  }
+
+  public GerritChecksApiBuilder setRetryHandler(HttpRequestRetryHandler retryHandler) {
+    clientBuilder.setRetryHandler(retryHandler);
+    return this;
+  }
+
+  public GerritChecksApiBuilder setServiceUnavailableRetryStrategy(
+      ServiceUnavailableRetryStrategy retryStrategy) {
+    clientBuilder.setServiceUnavailableRetryStrategy(retryStrategy);
+    return this;
+  }
+
+  public GerritChecksApiBuilder addRequestInterceptor(HttpRequestInterceptor interceptor) {
+    clientBuilder.addInterceptorFirst(interceptor);
+    return this;
+  }
+
+  public GerritChecksApiBuilder addResponseInterceptor(HttpResponseInterceptor interceptor) {
+    clientBuilder.addInterceptorLast(interceptor);
+    return this;
+  }
+
   public GerritChecksApi build() {
     return new GerritChecksApi(gerritBaseURL, clientBuilder.build(), isAuthenticated);
   }
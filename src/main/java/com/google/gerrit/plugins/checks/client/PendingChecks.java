@@ -20,9 +20,11 @@ import com.google.gerrit.plugins.checks.api.PendingChecksInfo;
 import com.google.gson.reflect.TypeToken;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -30,29 +32,40 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Pending checks query.
+ *
+ * <p>Instances are immutable, every query operator returns a new request and leaves the original
+ * one unchanged.
+ */
 public class PendingChecks extends AbstractEndpoint {
   private static final String PENDING_CHECKS_PATH = "plugins/checks/checks.pending/";
 
-  private HashMap<String, String> queries = new HashMap<String, String>();
+  private final Map<String, String> queries;
 
   public PendingChecks(URIish gerritBaseUrl, CloseableHttpClient client, boolean isAuthenticated)
       throws URISyntaxException {
     super(gerritBaseUrl, client, isAuthenticated);
+    this.queries = Collections.emptyMap();
+  }
+
+  private PendingChecks(PendingChecks pendingChecks, String operator, String value) {
+    super(pendingChecks);
+    Map<String, String> queries = new LinkedHashMap<>(pendingChecks.queries);
+    queries.put(operator, value);
+    this.queries = Collections.unmodifiableMap(queries);
   }
 
   public PendingChecks checker(String uuid) {
-    queries.put("checker", uuid);
-    return this;
+    return new PendingChecks(this, "checker", uuid);
   }
 
   public PendingChecks scheme(String scheme) {
-    queries.put("scheme", scheme);
-    return this;
+    return new PendingChecks(this, "scheme", scheme);
   }
 
   public PendingChecks state(CheckState state) {
-    queries.put("state", state.name());
-    return this;
+    return new PendingChecks(this, "state", state.name());
   }
 
   public List<PendingChecksInfo> list() throws RestApiException {
@@ -61,9 +74,9 @@ public class PendingChecks extends AbstractEndpoint {
       try (CloseableHttpResponse response = client.execute(request)) {
         if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
           return JsonBodyParser.parseResponse(
-              EntityUtils.toString(response.getEntity()),
-              new TypeToken<List<PendingChecksInfo>>() {}.getType());
+              response.getEntity(), new TypeToken<List<PendingChecksInfo>>() {}.getType());
         }
+        EntityUtils.consume(response.getEntity());
         throw new RestApiException(
             String.format(
                 "Request failed with status: %d", response.getStatusLine().getStatusCode()));
@@ -74,14 +87,15 @@ public class PendingChecks extends AbstractEndpoint {
   }
 
   private URI buildRequestUrl() throws URISyntaxException {
-    if (!queries.isEmpty()) {
-      StringBuffer queryString = new StringBuffer();
-      for (Map.Entry<String, String> query : queries.entrySet()) {
-        String connector = queryString.length() > 0 ? "+" : "";
-        queryString.append(String.format("%s%s:%s", connector, query.getKey(), query.getValue()));
-      }
-      uriBuilder.setParameter("query", queryString.toString());
+    if (queries.isEmpty()) {
+      return buildRequestUri(PENDING_CHECKS_PATH);
     }
-    return uriBuilder.setPath(getPrefix() + PENDING_CHECKS_PATH).build();
+    String queryString =
+        queries
+            .entrySet()
+            .stream()
+            .map(query -> query.getKey() + ":" + query.getValue())
+            .collect(Collectors.joining("+"));
+    return buildRequestUri(PENDING_CHECKS_PATH, Collections.singletonMap("query", queryString));
   }
 }
@@ -9,32 +9,40 @@ import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Format {@link java.sql.Timestamp} objects to JSON string representation compatible with the
  * Gerrit API.
+ *
+ * <p>The adapter is stateless and can be shared across threads.
  */
 class UTCTimestampTypeAdapter extends TypeAdapter<Timestamp> {
-  private final DateFormat utcDateFormat;
+  static final UTCTimestampTypeAdapter INSTANCE = new UTCTimestampTypeAdapter();
 
-  public UTCTimestampTypeAdapter() {
-    super();
-    utcDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
-    utcDateFormat.setTimeZone(TimeZone.getTimeZone(UTC));
-  }
+  private static final DateTimeFormatter UTC_WRITE_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).withZone(UTC);
+
+  /** Gerrit sends up to nanoseconds, accept any fraction length. */
+  private static final DateTimeFormatter UTC_READ_FORMAT =
+      new DateTimeFormatterBuilder()
+          .appendPattern("yyyy-MM-dd HH:mm:ss")
+          .optionalStart()
+          .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true)
+          .optionalEnd()
+          .toFormatter(Locale.US);
 
   @Override
   public void write(JsonWriter out, Timestamp date) throws IOException {
     if (date == null) {
       out.nullValue();
     } else {
-      out.value(utcDateFormat.format(date));
+      out.value(UTC_WRITE_FORMAT.format(date.toInstant()));
     }
   }
 
@@ -46,10 +54,8 @@ class UTCTimestampTypeAdapter extends TypeAdapter<Timestamp> {
     }
 
     try {
-      Calendar utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-      utcCalendar.setTimeInMillis(utcDateFormat.parse(in.nextString()).getTime());
-      return Timestamp.from(utcCalendar.toInstant());
-    } catch (ParseException e) {
+      return Timestamp.from(LocalDateTime.parse(in.nextString(), UTC_READ_FORMAT).toInstant(UTC));
+    } catch (DateTimeParseException e) {
       throw new JsonParseException(e);
     }
   }
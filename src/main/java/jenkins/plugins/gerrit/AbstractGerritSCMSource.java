@@ -17,9 +17,12 @@ package jenkins.plugins.gerrit;
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.api.changes.Changes;
-import com.google.gerrit.extensions.api.changes.Changes.QueryRequest;
+import com.google.gerrit.extensions.api.projects.BranchInfo;
+import com.google.gerrit.extensions.api.projects.ProjectApi;
 import com.google.gerrit.extensions.client.ListChangesOption;
 import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.common.RevisionInfo;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.plugins.checks.api.PendingChecksInfo;
 import com.google.gerrit.plugins.checks.client.GerritChecksApi;
@@ -30,9 +33,11 @@ import hudson.model.Action;
 import hudson.model.Actionable;
 import hudson.model.TaskListener;
 import hudson.plugins.git.Branch;
+import hudson.plugins.git.GitException;
 import hudson.plugins.git.GitTool;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
@@ -41,12 +46,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
@@ -72,11 +79,13 @@ import jenkins.scm.api.SCMSourceEvent;
 import jenkins.scm.api.SCMSourceOwner;
 import jenkins.scm.api.metadata.ObjectMetadataAction;
 import jenkins.scm.api.trait.SCMSourceRequest;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -92,6 +101,12 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
   public static final String OPEN_CHANGES_FILTER =
       System.getProperty("gerrit.open.changes.filter", "-age:24w");
   private static final String ORIGIN_REF_PREFIX = "origin/";
+  private static final String BLOBLESS_FILTER = "blob:none";
+  private static final String BLOBLESS_CACHE_SUFFIX = "-blobless";
+  private static final Map<String, Set<CacheFetchMode>> unsupportedFetchModes =
+      new ConcurrentHashMap<>();
+  private static final int REST_PAGE_SIZE =
+      Math.max(1, Integer.getInteger("gerrit.restDiscovery.pageSize", 500));
   private static final Pattern changePattern = Pattern.compile("(\\d\\d)/(\\d+)/(\\d+)");
   private transient ProjectChanges projectChanges;
 
@@ -121,6 +136,11 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
   @Override
   protected SCMRevision retrieve(@NonNull final SCMHead head, @NonNull TaskListener listener)
       throws IOException, InterruptedException {
+    GerritSCMSourceContext context =
+        new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(getTraits());
+    if (context.restDiscovery()) {
+      return retrieveWithRest(head, listener);
+    }
     return doRetrieve(
         head,
         new Retriever<SCMRevision>() {
@@ -145,7 +165,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
             return null;
           }
         },
-        new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(getTraits()),
+        context,
         listener,
         false);
   }
@@ -159,6 +179,12 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
       @CheckForNull SCMHeadEvent<?> event,
       @Nonnull final TaskListener listener)
       throws IOException, InterruptedException {
+    GerritSCMSourceContext context =
+        new GerritSCMSourceContext(criteria, observer).withTraits(getTraits());
+    if (context.restDiscovery()) {
+      discoverWithRest(context, listener);
+      return;
+    }
     doRetrieve(
         null,
         new Retriever<Object>() {
@@ -175,18 +201,25 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
                 GerritSCMSourceRequest request =
                     context.newRequest(AbstractGerritSCMSource.this, listener)) {
               if (context.wantBranches()) {
-                discoverBranches(
-                    repository,
-                    walk,
-                    context,
-                    request,
+                Map<String, ObjectId> remoteReferences =
                     client
                         .getRemoteBranches()
                         .stream()
                         .collect(
                             Collectors.toMap(
                                 (Branch branch) -> branch.getName(),
-                                (Branch branch) -> branch.getSHA1())));
+                                (Branch branch) -> branch.getSHA1()));
+                listener
+                    .getLogger()
+                    .println("Checking " + remoteReferences.size() + " branches ...");
+                Map<String, ObjectId> filteredRefs = filterRemoteReferences(remoteReferences);
+                listener.getLogger().println("Filtered " + filteredRefs.size() + " branches ...");
+                walk.setRetainBody(false);
+                discoverHeads(
+                    request,
+                    filteredRefs,
+                    (name, ref, revision) -> gitProbe(repository, walk, name, revision),
+                    listener);
               }
               if (context.wantTags()) {
                 // TODO
@@ -194,55 +227,45 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
             }
             return null;
           }
+        },
+        context,
+        listener,
+        true);
+  }
 
-          private void discoverBranches(
-              final Repository repository,
-              final RevWalk walk,
-              GerritSCMSourceContext context,
-              GerritSCMSourceRequest request,
-              final Map<String, ObjectId> remoteReferences)
-              throws IOException, InterruptedException {
+  private void discoverHeads(
+      GerritSCMSourceRequest request,
+      Map<String, ObjectId> filteredRefs,
+      ProbeFactory probes,
+      TaskListener listener)
+      throws IOException, InterruptedException {
+    int branchesCount = 0;
+    int changesCount = 0;
 
-            listener.getLogger().println("Checking " + remoteReferences.size() + " branches ...");
-            Map<String, ObjectId> filteredRefs = filterRemoteReferences(remoteReferences);
-            listener.getLogger().println("Filtered " + filteredRefs.size() + " branches ...");
-            walk.setRetainBody(false);
-            int branchesCount = 0;
-            int changesCount = 0;
-
-            for (final Map.Entry<String, ObjectId> ref : filteredRefs.entrySet()) {
-              String refKey = ref.getKey();
-              if (!refKey.startsWith(Constants.R_HEADS) && !refKey.startsWith(R_CHANGES)) {
-                continue;
-              }
+    for (final Map.Entry<String, ObjectId> ref : filteredRefs.entrySet()) {
+      String refKey = ref.getKey();
+      if (!refKey.startsWith(Constants.R_HEADS) && !refKey.startsWith(R_CHANGES)) {
+        continue;
+      }
 
-              if (refKey.startsWith(R_CHANGES)) {
-                try {
-                  if (processChangeRequest(repository, walk, request, ref, listener)) {
-                    listener
-                        .getLogger()
-                        .format("Processed %d changes (query complete)%n", changesCount);
-                    return;
-                  }
-                } catch (Exception e) {
-                  listener.getLogger().format("Unable to process %s: %s", refKey, e.toString());
-                }
-              } else {
-                if (processBranchRequest(repository, walk, request, ref, listener)) {
-                  listener
-                      .getLogger()
-                      .format("Processed %d branches (query complete)%n", branchesCount);
-                  return;
-                }
-              }
-            }
-            listener.getLogger().format("Processed %d branches%n", branchesCount);
-            listener.getLogger().format("Processed %d changes%n", changesCount);
+      if (refKey.startsWith(R_CHANGES)) {
+        try {
+          if (processChangeRequest(probes, request, ref, listener)) {
+            listener.getLogger().format("Processed %d changes (query complete)%n", changesCount);
+            return;
           }
-        },
-        new GerritSCMSourceContext(criteria, observer).withTraits(getTraits()),
-        listener,
-        true);
+        } catch (Exception e) {
+          listener.getLogger().format("Unable to process %s: %s", refKey, e.toString());
+        }
+      } else {
+        if (processBranchRequest(probes, request, ref, listener)) {
+          listener.getLogger().format("Processed %d branches (query complete)%n", branchesCount);
+          return;
+        }
+      }
+    }
+    listener.getLogger().format("Processed %d branches%n", branchesCount);
+    listener.getLogger().format("Processed %d changes%n", changesCount);
   }
 
   /** {@inheritDoc} */
@@ -251,6 +274,17 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
   protected List<Action> retrieveActions(
       @CheckForNull SCMSourceEvent event, @Nonnull TaskListener listener)
       throws IOException, InterruptedException {
+    GerritSCMSourceContext context =
+        new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(getTraits());
+    if (context.restDiscovery()) {
+      GerritURI gerritURI = getGerritURI();
+      try {
+        return primaryBranchActions(
+            restApi(listener, gerritURI).projects().name(gerritURI.getProject()).head());
+      } catch (RestApiException e) {
+        throw new IOException("Unable to read the HEAD of " + gerritURI.getProject(), e);
+      }
+    }
     return doRetrieve(
         null,
         new Retriever<List<Action>>() {
@@ -264,72 +298,67 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
             Map<String, String> symrefs = client.getRemoteSymbolicReferences(getRemote(), null);
             if (symrefs.containsKey(Constants.HEAD)) {
               // Hurrah! The Server is Git 1.8.5 or newer and our client has symref reporting
-              String target = symrefs.get(Constants.HEAD);
-              if (target.startsWith(Constants.R_HEADS)) {
-                // shorten standard names
-                target = target.substring(Constants.R_HEADS.length());
-              }
-              List<Action> result = new ArrayList<>();
-              if (StringUtils.isNotBlank(target)) {
-                result.add(new GitRemoteHeadRefAction(getRemote(), target));
-              }
-              result.add(new GerritLogo());
-              return result;
+              return primaryBranchActions(symrefs.get(Constants.HEAD));
             }
 
             // Give up, there's no way to get the primary branch
             return new ArrayList<>();
           }
         },
-        new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(getTraits()),
+        context,
         listener,
         false);
   }
 
+  private List<Action> primaryBranchActions(String target) {
+    if (target.startsWith(Constants.R_HEADS)) {
+      // shorten standard names
+      target = target.substring(Constants.R_HEADS.length());
+    }
+    List<Action> result = new ArrayList<>();
+    if (StringUtils.isNotBlank(target)) {
+      result.add(new GitRemoteHeadRefAction(getRemote(), target));
+    }
+    result.add(new GerritLogo());
+    return result;
+  }
+
   /** {@inheritDoc} */
   @NonNull
   @Override
   protected List<Action> retrieveActions(
       @NonNull SCMHead head, @CheckForNull SCMHeadEvent event, @NonNull TaskListener listener)
       throws IOException, InterruptedException {
-    final List<Action> actions =
-        doRetrieve(
-            head,
-            (GitClient client,
-                GerritSCMSourceContext context,
-                String remoteName,
-                Changes.QueryRequest changeQuery) -> {
-              SCMSourceOwner owner = getOwner();
-              if (owner instanceof Actionable && head instanceof ChangeSCMHead) {
-                final Actionable actionableOwner = (Actionable) owner;
-                final ChangeSCMHead change = (ChangeSCMHead) head;
-                String gerritBaseUrl = getGerritBaseUrl();
-
-                return actionableOwner
-                    .getActions(GitRemoteHeadRefAction.class)
-                    .stream()
-                    .filter(action -> action.getRemote().equals(getRemote()))
-                    .map(
-                        action ->
-                            new ObjectMetadataAction(
-                                change.getName(),
-                                change.getId(),
-                                String.format("%s%d", gerritBaseUrl, change.getChangeNumber())))
-                    .collect(Collectors.toList());
-              } else {
-                return Collections.emptyList();
-              }
-            },
-            new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(getTraits()),
-            listener,
-            false);
-
+    // Called for each head observed by a scan, which holds the cache repository shared
     final ImmutableList.Builder<Action> resultBuilder = new ImmutableList.Builder<>();
     resultBuilder.addAll(super.retrieveActions(head, event, listener));
-    resultBuilder.addAll(actions);
+    resultBuilder.addAll(changeMetadataActions(head));
     return resultBuilder.build();
   }
 
+  private List<Action> changeMetadataActions(SCMHead head) throws IOException {
+    SCMSourceOwner owner = getOwner();
+    if (owner instanceof Actionable && head instanceof ChangeSCMHead) {
+      final Actionable actionableOwner = (Actionable) owner;
+      final ChangeSCMHead change = (ChangeSCMHead) head;
+      String gerritBaseUrl = getGerritBaseUrl();
+
+      return actionableOwner
+          .getActions(GitRemoteHeadRefAction.class)
+          .stream()
+          .filter(action -> action.getRemote().equals(getRemote()))
+          .map(
+              action ->
+                  new ObjectMetadataAction(
+                      change.getName(),
+                      change.getId(),
+                      String.format("%s%d", gerritBaseUrl, change.getChangeNumber())))
+          .collect(Collectors.toList());
+    } else {
+      return Collections.emptyList();
+    }
+  }
+
   private String getGerritBaseUrl() throws IOException {
     try {
       return getGerritURI().getApiURI().toASCIIString();
@@ -339,8 +368,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
   }
 
   private boolean processBranchRequest(
-      final Repository repository,
-      final RevWalk walk,
+      final ProbeFactory probes,
       GerritSCMSourceRequest request,
       final Map.Entry<String, ObjectId> ref,
       final TaskListener listener)
@@ -364,57 +392,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
           public SCMSourceCriteria.Probe create(
               @Nonnull SCMHead head, @Nullable ObjectId revisionInfo)
               throws IOException, InterruptedException {
-            RevCommit commit = walk.parseCommit(revisionInfo);
-            final long lastModified = TimeUnit.SECONDS.toMillis(commit.getCommitTime());
-            final RevTree tree = commit.getTree();
-            return new SCMProbe() {
-              @Override
-              public void close() throws IOException {
-                // no-op
-              }
-
-              @Override
-              public String name() {
-                return branchName;
-              }
-
-              @Override
-              public long lastModified() {
-                return lastModified;
-              }
-
-              @Override
-              @Nonnull
-              @SuppressFBWarnings(
-                  value = "NP_LOAD_OF_KNOWN_NULL_VALUE",
-                  justification =
-                      "TreeWalk.forPath can return null, compiler "
-                          + "generated code for try with resources handles it")
-              public SCMProbeStat stat(@Nonnull String path) throws IOException {
-                try (TreeWalk tw = TreeWalk.forPath(repository, path, tree)) {
-                  if (tw == null) {
-                    return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
-                  }
-                  FileMode fileMode = tw.getFileMode(0);
-                  if (fileMode == FileMode.MISSING) {
-                    return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
-                  }
-                  if (fileMode == FileMode.EXECUTABLE_FILE) {
-                    return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
-                  }
-                  if (fileMode == FileMode.REGULAR_FILE) {
-                    return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
-                  }
-                  if (fileMode == FileMode.SYMLINK) {
-                    return SCMProbeStat.fromType(SCMFile.Type.LINK);
-                  }
-                  if (fileMode == FileMode.TREE) {
-                    return SCMProbeStat.fromType(SCMFile.Type.DIRECTORY);
-                  }
-                  return SCMProbeStat.fromType(SCMFile.Type.OTHER);
-                }
-              }
-            };
+            return probes.create(branchName, ref.getKey(), revisionInfo);
           }
         },
         new SCMSourceRequest.LazyRevisionLambda<SCMHead, SCMRevision, ObjectId>() {
@@ -436,17 +414,17 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
   }
 
   private boolean processChangeRequest(
-      final Repository repository,
-      final RevWalk walk,
+      final ProbeFactory probes,
       GerritSCMSourceRequest request,
       final Map.Entry<String, ObjectId> ref,
       final TaskListener listener)
       throws IOException, InterruptedException {
     final String branchName = StringUtils.removeStart(ref.getKey(), R_CHANGES);
     Set<String> pendingCheckerUuids = getPendingCheckerUuids(request, ref);
+    Map<String, String> changeEnvs = getChangeEnvs(request, ref);
     boolean succeeded =
         request.process(
-            new ChangeSCMHead(ref, branchName, pendingCheckerUuids),
+            new ChangeSCMHead(ref, branchName, pendingCheckerUuids, changeEnvs),
             new SCMSourceRequest.IntermediateLambda<ObjectId>() {
               @Nullable
               @Override
@@ -460,57 +438,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
               public SCMSourceCriteria.Probe create(
                   @Nonnull ChangeSCMHead head, @Nullable ObjectId revisionInfo)
                   throws IOException, InterruptedException {
-                RevCommit commit = walk.parseCommit(revisionInfo);
-                final long lastModified = TimeUnit.SECONDS.toMillis(commit.getCommitTime());
-                final RevTree tree = commit.getTree();
-                return new SCMProbe() {
-                  @Override
-                  public void close() throws IOException {
-                    // no-op
-                  }
-
-                  @Override
-                  public String name() {
-                    return branchName;
-                  }
-
-                  @Override
-                  public long lastModified() {
-                    return lastModified;
-                  }
-
-                  @Override
-                  @Nonnull
-                  @SuppressFBWarnings(
-                      value = "NP_LOAD_OF_KNOWN_NULL_VALUE",
-                      justification =
-                          "TreeWalk.forPath can return null, compiler "
-                              + "generated code for try with resources handles it")
-                  public SCMProbeStat stat(@Nonnull String path) throws IOException {
-                    try (TreeWalk tw = TreeWalk.forPath(repository, path, tree)) {
-                      if (tw == null) {
-                        return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
-                      }
-                      FileMode fileMode = tw.getFileMode(0);
-                      if (fileMode == FileMode.MISSING) {
-                        return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
-                      }
-                      if (fileMode == FileMode.EXECUTABLE_FILE) {
-                        return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
-                      }
-                      if (fileMode == FileMode.REGULAR_FILE) {
-                        return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
-                      }
-                      if (fileMode == FileMode.SYMLINK) {
-                        return SCMProbeStat.fromType(SCMFile.Type.LINK);
-                      }
-                      if (fileMode == FileMode.TREE) {
-                        return SCMProbeStat.fromType(SCMFile.Type.DIRECTORY);
-                      }
-                      return SCMProbeStat.fromType(SCMFile.Type.OTHER);
-                    }
-                  }
-                };
+                return probes.create(branchName, ref.getKey(), revisionInfo);
               }
             },
             new SCMSourceRequest.LazyRevisionLambda<ChangeSCMHead, SCMRevision, ObjectId>() {
@@ -537,6 +465,243 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
     return succeeded;
   }
 
+  /** Creates the probe of a discovered branch or change, checked against the criteria. */
+  @FunctionalInterface
+  private interface ProbeFactory {
+    SCMProbe create(String name, String ref, ObjectId revision)
+        throws IOException, InterruptedException;
+  }
+
+  private static SCMProbe gitProbe(
+      final Repository repository, final RevWalk walk, final String name, ObjectId revision)
+      throws IOException {
+    RevCommit commit = walk.parseCommit(revision);
+    final long lastModified = TimeUnit.SECONDS.toMillis(commit.getCommitTime());
+    final RevTree tree = commit.getTree();
+    return new SCMProbe() {
+      @Override
+      public void close() throws IOException {
+        // no-op
+      }
+
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public long lastModified() {
+        return lastModified;
+      }
+
+      @Override
+      @Nonnull
+      @SuppressFBWarnings(
+          value = "NP_LOAD_OF_KNOWN_NULL_VALUE",
+          justification =
+              "TreeWalk.forPath can return null, compiler "
+                  + "generated code for try with resources handles it")
+      public SCMProbeStat stat(@Nonnull String path) throws IOException {
+        try (TreeWalk tw = TreeWalk.forPath(repository, path, tree)) {
+          if (tw == null) {
+            return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
+          }
+          FileMode fileMode = tw.getFileMode(0);
+          if (fileMode == FileMode.MISSING) {
+            return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
+          }
+          if (fileMode == FileMode.EXECUTABLE_FILE) {
+            return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
+          }
+          if (fileMode == FileMode.REGULAR_FILE) {
+            return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
+          }
+          if (fileMode == FileMode.SYMLINK) {
+            return SCMProbeStat.fromType(SCMFile.Type.LINK);
+          }
+          if (fileMode == FileMode.TREE) {
+            return SCMProbeStat.fromType(SCMFile.Type.DIRECTORY);
+          }
+          return SCMProbeStat.fromType(SCMFile.Type.OTHER);
+        }
+      }
+    };
+  }
+
+  /**
+   * Probes a branch or change through the REST file lookups of a {@link GerritSCMFileSystem}:
+   * files are found, directories are reported as non-existent.
+   */
+  private static SCMProbe restProbe(
+      GerritApi gerritApi, String project, final String name, String ref, ObjectId revision)
+      throws IOException {
+    SCMRevision rev = new SCMRevisionImpl(new SCMHead(name), revision.name());
+    Matcher changeMatcher = getChangeRefMatcher(StringUtils.removeStart(ref, R_CHANGES));
+    final GerritSCMFileSystem fileSystem =
+        changeMatcher.matches()
+            ? GerritSCMFileSystem.ofChange(
+                gerritApi, project, rev, Integer.parseInt(changeMatcher.group(2)), revision.name())
+            : GerritSCMFileSystem.ofBranch(
+                gerritApi,
+                project,
+                rev,
+                StringUtils.removeStart(ref, Constants.R_HEADS),
+                revision.name());
+    return new SCMProbe() {
+      @Override
+      public void close() throws IOException {
+        fileSystem.close();
+      }
+
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public long lastModified() {
+        return fileSystem.lastModified();
+      }
+
+      @Override
+      @Nonnull
+      public SCMProbeStat stat(@Nonnull String path) throws IOException {
+        try {
+          return SCMProbeStat.fromType(fileSystem.getRoot().child(path).getType());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while probing " + path);
+        }
+      }
+    };
+  }
+
+  /**
+   * Discovers the branches and the open changes with the Gerrit REST API only: nothing is fetched
+   * in the cache repository and the criteria are checked with {@link #restProbe}.
+   */
+  private void discoverWithRest(GerritSCMSourceContext context, TaskListener listener)
+      throws IOException, InterruptedException {
+    GerritURI gerritURI = getGerritURI();
+    GerritApi gerritApi = restApi(listener, gerritURI);
+    String project = gerritURI.getProject();
+    Changes.QueryRequest changeQuery =
+        getOpenChanges(gerritApi, project, context.changesQueryFilter());
+    listener
+        .getLogger()
+        .println(
+            "Looking for branches and open changes with query '"
+                + URLDecoder.decode(changeQuery.getQuery(), StandardCharsets.UTF_8.name())
+                + "' through the REST API ...");
+
+    List<RefSpec> branchRefSpecs =
+        context
+            .asRefSpecs()
+            .stream()
+            .filter((RefSpec refSpec) -> !refSpec.getSource().contains(R_CHANGES))
+            .collect(Collectors.toList());
+    Map<String, ObjectId> refs = new HashMap<>();
+    try {
+      for (BranchInfo branch : listBranches(gerritApi.projects().name(project))) {
+        if (branch.ref.startsWith(Constants.R_HEADS)
+            && branch.revision != null
+            && ObjectId.isId(branch.revision)
+            && branchRefSpecs.stream().anyMatch(refSpec -> refSpec.matchSource(branch.ref))) {
+          refs.put(branch.ref, ObjectId.fromString(branch.revision));
+        }
+      }
+
+      List<ChangeInfo> openChanges = queryAllChanges(changeQuery);
+      context.withOpenChanges(openChanges);
+      for (ChangeInfo change : openChanges) {
+        RevisionInfo current =
+            change.revisions == null ? null : change.revisions.get(change.currentRevision);
+        if (current != null && current.ref != null) {
+          refs.put(current.ref, ObjectId.fromString(change.currentRevision));
+        }
+      }
+    } catch (RestApiException e) {
+      throw new IOException("Unable to list Gerrit branches and open changes", e);
+    }
+
+    try (GerritSCMSourceRequest request = context.newRequest(this, listener)) {
+      if (context.wantBranches()) {
+        listener.getLogger().println("Checking " + refs.size() + " branches ...");
+        discoverHeads(
+            request,
+            refs,
+            (name, ref, revision) -> restProbe(gerritApi, project, name, ref, revision),
+            listener);
+      }
+    }
+  }
+
+  @CheckForNull
+  private SCMRevision retrieveWithRest(SCMHead head, TaskListener listener) throws IOException {
+    if (head instanceof ChangeSCMHead) {
+      return new SCMRevisionImpl(head, ((ChangeSCMHead) head).getRev());
+    }
+
+    GerritURI gerritURI = getGerritURI();
+    try {
+      BranchInfo branch =
+          restApi(listener, gerritURI)
+              .projects()
+              .name(gerritURI.getProject())
+              .branch(Constants.R_HEADS + head.getName())
+              .get();
+      return branch.revision != null && ObjectId.isId(branch.revision)
+          ? new SCMRevisionImpl(head, branch.revision)
+          : null;
+    } catch (ResourceNotFoundException e) {
+      return null;
+    } catch (RestApiException e) {
+      throw new IOException("Unable to read branch " + head.getName() + " from Gerrit", e);
+    }
+  }
+
+  private GerritApi restApi(TaskListener listener, GerritURI gerritURI) throws IOException {
+    GerritApi gerritApi = createGerritApi(listener, gerritURI);
+    if (gerritApi == null) {
+      throw new IllegalStateException("Invalid gerrit configuration");
+    }
+    return gerritApi;
+  }
+
+  static List<BranchInfo> listBranches(ProjectApi project) throws RestApiException {
+    List<BranchInfo> branches = new ArrayList<>();
+    List<BranchInfo> page;
+    do {
+      page = project.branches().withStart(branches.size()).withLimit(REST_PAGE_SIZE).get();
+      branches.addAll(page);
+    } while (page.size() >= REST_PAGE_SIZE);
+    return branches;
+  }
+
+  private static List<String> listBranchNames(GerritApi gerritApi, GerritURI gerritURI)
+      throws IOException {
+    try {
+      return listBranches(gerritApi.projects().name(gerritURI.getProject()))
+          .stream()
+          .filter(branch -> branch.ref.startsWith(Constants.R_HEADS))
+          .map(branch -> branch.ref.substring(Constants.R_HEADS.length()))
+          .collect(Collectors.toList());
+    } catch (RestApiException e) {
+      throw new IOException("Unable to list the branches of " + gerritURI.getProject(), e);
+    }
+  }
+
+  private static List<ChangeInfo> queryAllChanges(Changes.QueryRequest changeQuery)
+      throws RestApiException {
+    List<ChangeInfo> changes = new ArrayList<>();
+    List<ChangeInfo> page;
+    do {
+      page = changeQuery.withStart(changes.size()).withLimit(REST_PAGE_SIZE).get();
+      changes.addAll(page);
+    } while (!page.isEmpty() && Boolean.TRUE.equals(page.get(page.size() - 1)._moreChanges));
+    return changes;
+  }
+
   private Set<String> getPendingCheckerUuids(
       GerritSCMSourceRequest request, final Map.Entry<String, ObjectId> ref) {
     String[] refParts = ref.getKey().split("/");
@@ -559,6 +724,40 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
     return Collections.<String>emptySet();
   }
 
+  private Map<String, String> getChangeEnvs(
+      GerritSCMSourceRequest request, final Map.Entry<String, ObjectId> ref) throws IOException {
+    String[] refParts = ref.getKey().split("/");
+    int changeNumber = Integer.parseInt(refParts[refParts.length - 2]);
+    int patchSetNumber = Integer.parseInt(refParts[refParts.length - 1]);
+    ChangeInfo change = request.getOpenChanges().get(changeNumber);
+    if (change == null || change.revisions == null) {
+      return Collections.emptyMap();
+    }
+
+    Optional<RevisionInfo> patchSet =
+        change
+            .revisions
+            .values()
+            .stream()
+            .filter(revision -> revision._number == patchSetNumber)
+            .findFirst();
+    if (!patchSet.isPresent()) {
+      return Collections.emptyMap();
+    }
+    if (change.owner == null || patchSet.get().uploader == null) {
+      request
+          .listener()
+          .getLogger()
+          .format(
+              "Change %d patch-set %d has no account details, "
+                  + "the GERRIT_* variables will be fetched when the build starts%n",
+              changeNumber, patchSetNumber);
+      return Collections.emptyMap();
+    }
+
+    return GerritEnvironmentContributor.changeEnvsOf(change, patchSetNumber, getGerritURI());
+  }
+
   private Map<String, ObjectId> filterRemoteReferences(Map<String, ObjectId> gitRefs) {
     Map<Integer, Integer> changes = new HashMap<>();
     Map<String, ObjectId> filteredRefs = new HashMap<>();
@@ -595,7 +794,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
     return filteredRefs;
   }
 
-  private static Matcher getChangeRefMatcher(String gitRef) {
+  static Matcher getChangeRefMatcher(String gitRef) {
     String changeRef =
         gitRef.startsWith(ORIGIN_REF_PREFIX)
             ? gitRef.substring(ORIGIN_REF_PREFIX.length())
@@ -613,90 +812,293 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
       boolean prune)
       throws IOException, InterruptedException {
     boolean doPrune = prune && head == null;
-    String cacheEntry = getCacheEntry();
-    Lock cacheLock = getCacheLock(cacheEntry);
-    cacheLock.lock();
+    String cacheEntry = cacheEntryOf(getCacheEntry(), context.bloblessFetch());
+    GerritCacheLock cacheLock = GerritCacheLock.of(cacheEntry);
+    File cacheDir = getCacheDir(cacheEntry);
+    Git git = Git.with(listener, new EnvVars(EnvVars.masterEnvVars)).in(cacheDir);
+    GitTool tool = resolveGitTool(context.gitTool());
+    if (tool != null) {
+      git.using(tool.getGitExe());
+    }
+    GitClient client = git.getClient();
+    String remoteName = context.remoteName();
+
+    URIish remoteURI = null;
     try {
-      File cacheDir = getCacheDir(cacheEntry);
-      Git git = Git.with(listener, new EnvVars(EnvVars.masterEnvVars)).in(cacheDir);
-      GitTool tool = resolveGitTool(context.gitTool());
-      if (tool != null) {
-        git.using(tool.getGitExe());
-      }
+      remoteURI = new URIish(remoteName);
+    } catch (URISyntaxException ex) {
+      listener.getLogger().println("URI syntax exception for '" + remoteName + "' " + ex);
+    }
 
-      GitClient client = git.getClient();
-      client.addDefaultCredentials(getCredentials());
-      if (!client.hasGitRepo()) {
-        listener.getLogger().println("Creating git repository in " + cacheDir);
-        client.init();
-      }
-      String remoteName = context.remoteName();
-      listener.getLogger().println("Setting " + remoteName + " to " + getRemote());
-      client.setRemoteUrl(remoteName, getRemote());
-      listener
-          .getLogger()
-          .println((doPrune ? "Fetching & pruning " : "Fetching ") + remoteName + "...");
+    GerritURI gerritURI = getGerritURI();
+    GerritApi gerritApi = createGerritApi(listener, gerritURI);
+    if (gerritApi == null) {
+      throw new IllegalStateException("Invalid gerrit configuration");
+    }
 
-      FetchCommand fetch = client.fetch_();
-      if (doPrune) {
-        fetch = fetch.prune();
+    Changes.QueryRequest changeQuery =
+        getOpenChanges(gerritApi, gerritURI.getProject(), context.changesQueryFilter());
+    listener
+        .getLogger()
+        .println(
+            "Looking for open changes with query '"
+                + URLDecoder.decode(changeQuery.getQuery(), StandardCharsets.UTF_8.name())
+                + "' ...");
+
+    List<RefSpec> fetchRefSpecs;
+    BranchRefSpecs branchRefSpecs = null;
+    try {
+      if (head == null) {
+        branchRefSpecs =
+            BranchRefSpecs.narrow(
+                this, context, () -> listBranchNames(gerritApi, gerritURI), listener);
+        Stream<RefSpec> refSpecs = branchRefSpecs.getRefSpecs().stream();
+        List<ChangeInfo> openChanges = changeQuery.get();
+        context.withOpenChanges(openChanges);
+        Stream<RefSpec> openChangesRefSpecs = changesToRefSpecs(openChanges);
+        fetchRefSpecs = Stream.concat(refSpecs, openChangesRefSpecs).collect(Collectors.toList());
+      } else {
+        String headName = head.getName();
+        String refSpecPrefix = head instanceof ChangeSCMHead ? R_CHANGES : "+refs/heads/";
+        fetchRefSpecs =
+            Arrays.asList(
+                new RefSpec(refSpecPrefix + headName + ":refs/remotes/origin/" + headName));
       }
-      URIish remoteURI = null;
-      try {
-        remoteURI = new URIish(remoteName);
-      } catch (URISyntaxException ex) {
-        listener.getLogger().println("URI syntax exception for '" + remoteName + "' " + ex);
+    } catch (RestApiException e) {
+      throw new IOException("Unable to query Gerrit open changes", e);
+    }
+
+    GerritCacheLock.FetchRequest fetchRequest =
+        new GerritCacheLock.FetchRequest(
+            String.join(
+                "|",
+                remoteName,
+                getRemote(),
+                String.valueOf(getCredentialsId()),
+                String.valueOf(context.gitTool()),
+                String.valueOf(doPrune),
+                String.valueOf(context.shallowFetch()),
+                String.valueOf(context.bloblessFetch()),
+                String.valueOf(context.protocolV2())),
+            fetchRefSpecs.stream().map(RefSpec::toString).collect(Collectors.toSet()),
+            fetchRefSpecs.isEmpty() ? null : GerritFetchLimiter.serverOf(gerritURI.getRemoteURI()));
+    URIish fetchURI = remoteURI;
+    BranchRefSpecs prunedRefSpecs = doPrune ? branchRefSpecs : null;
+    cacheLock.fetchThenLockShared(
+        fetchRequest,
+        listener,
+        () -> {
+          client.addDefaultCredentials(getCredentials());
+          if (!context.bloblessFetch() && isPartialClone(client)) {
+            // Left without file contents by a blobless fetch made before it had its own cache
+            listener.getLogger().println("Recreating the partial git repository in " + cacheDir);
+            FileUtils.deleteDirectory(cacheDir);
+          }
+          if (!client.hasGitRepo()) {
+            listener.getLogger().println("Creating git repository in " + cacheDir);
+            client.init();
+          }
+          listener.getLogger().println("Setting " + remoteName + " to " + getRemote());
+          client.setRemoteUrl(remoteName, getRemote());
+          listener
+              .getLogger()
+              .println((doPrune ? "Fetching & pruning " : "Fetching ") + remoteName + "...");
+
+          if (!fetchRefSpecs.isEmpty()) {
+            long fetchStart = System.nanoTime();
+            fetchCache(client, context, remoteName, fetchURI, fetchRefSpecs, doPrune, listener);
+            listener
+                .getLogger()
+                .format(
+                    "Fetched %s in %d ms%n",
+                    remoteName,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fetchStart));
+          }
+          if (prunedRefSpecs != null) {
+            prunedRefSpecs.pruneStaleBranches(client, remoteName, listener);
+          }
+          // Marked once the repository has changed, so that its size is measured again
+          GerritCacheRepositories.touch(cacheDir, getRemote());
+        },
+        () -> hasFetched(client, fetchRefSpecs));
+    try {
+      if (head == null) {
+        GerritCacheMaintenance.recordScan(
+            cacheEntry,
+            getRemote(),
+            getId(),
+            fetchRefSpecs
+                .stream()
+                .filter(refSpec -> refSpec.getSource().startsWith(R_CHANGES))
+                .map(RefSpec::getDestination)
+                .collect(Collectors.toSet()));
       }
+      return retriever.run(client, context, remoteName, changeQuery);
+    } finally {
+      cacheLock.unlockShared();
+    }
+  }
 
-      GerritURI gerritURI = getGerritURI();
-      GerritApi gerritApi = createGerritApi(listener, gerritURI);
-      if (gerritApi == null) {
-        throw new IllegalStateException("Invalid gerrit configuration");
+  /** Tells whether the cache repository has the refs of explicit refspecs. */
+  private static boolean hasFetched(GitClient client, List<RefSpec> refSpecs)
+      throws IOException, InterruptedException {
+    if (!client.hasGitRepo()) {
+      return false;
+    }
+    try (Repository repository = client.getRepository()) {
+      for (RefSpec refSpec : refSpecs) {
+        if (!refSpec.isWildcard() && repository.exactRef(refSpec.getDestination()) == null) {
+          return false;
+        }
       }
+    }
+    return true;
+  }
 
-      Changes.QueryRequest changeQuery =
-          getOpenChanges(gerritApi, gerritURI.getProject(), context.changesQueryFilter());
-      listener
-          .getLogger()
-          .println(
-              "Looking for open changes with query '"
-                  + URLDecoder.decode(changeQuery.getQuery(), StandardCharsets.UTF_8.name())
-                  + "' ...");
+  /**
+   * Fetches the refs in the cache repository, with depth 1, without the file contents or with
+   * protocol v2 when the context asks for it. A mode that the fetch error says is not supported is
+   * turned off and the fetch retried; the remote then never uses that mode again. Other errors,
+   * such as network or credential failures, fail the fetch.
+   */
+  private void fetchCache(
+      GitClient client,
+      GerritSCMSourceContext context,
+      String remoteName,
+      URIish remoteURI,
+      List<RefSpec> refSpecs,
+      boolean prune,
+      TaskListener listener)
+      throws IOException, InterruptedException {
+    Set<CacheFetchMode> modes = EnumSet.noneOf(CacheFetchMode.class);
+    if (context.shallowFetch()) {
+      modes.add(CacheFetchMode.SHALLOW);
+    }
+    if (context.bloblessFetch()) {
+      modes.add(CacheFetchMode.BLOBLESS);
+    }
+    if (context.protocolV2()) {
+      modes.add(CacheFetchMode.PROTOCOL_V2);
+    }
+    Set<CacheFetchMode> unsupported =
+        unsupportedFetchModes.computeIfAbsent(getRemote(), remote -> ConcurrentHashMap.newKeySet());
+    modes.removeAll(unsupported);
 
-      List<RefSpec> fetchRefSpecs;
+    while (true) {
+      Integer protocolVersion = null;
+      if (context.protocolV2()) {
+        protocolVersion = modes.contains(CacheFetchMode.PROTOCOL_V2) ? 2 : 0;
+      }
+      configureCacheFetch(
+          client, remoteName, modes.contains(CacheFetchMode.BLOBLESS), protocolVersion);
+      FetchCommand fetch = client.fetch_().from(remoteURI, refSpecs);
+      if (prune) {
+        fetch = fetch.prune();
+      }
+      if (modes.contains(CacheFetchMode.SHALLOW)) {
+        fetch = fetch.shallow(true).depth(1);
+      }
       try {
-        if (head == null) {
-          Stream<RefSpec> refSpecs =
-              context
-                  .asRefSpecs()
-                  .stream()
-                  .filter((RefSpec refSpec) -> !refSpec.getSource().contains(R_CHANGES));
-          Stream<RefSpec> openChangesRefSpecs = changeQueryToRefSpecs(changeQuery);
-          fetchRefSpecs = Stream.concat(refSpecs, openChangesRefSpecs).collect(Collectors.toList());
-        } else {
-          String headName = head.getName();
-          String refSpecPrefix = head instanceof ChangeSCMHead ? R_CHANGES : "+refs/heads/";
-          fetchRefSpecs =
-              Arrays.asList(
-                  new RefSpec(refSpecPrefix + headName + ":refs/remotes/origin/" + headName));
+        fetch.execute();
+        return;
+      } catch (GitException e) {
+        CacheFetchMode mode = CacheFetchMode.unsupportedBy(e, modes);
+        if (mode == null) {
+          throw e;
         }
-      } catch (RestApiException e) {
-        throw new IOException("Unable to query Gerrit open changes", e);
+        listener
+            .getLogger()
+            .format(
+                "The %s fetch of %s is not supported, retrying without it: %s%n",
+                mode,
+                remoteName,
+                e);
+        modes.remove(mode);
+        unsupported.add(mode);
       }
+    }
+  }
 
-      if (!fetchRefSpecs.isEmpty()) {
-        fetch.from(remoteURI, fetchRefSpecs).execute();
+  /**
+   * Configures the fetches of the cache repository, which the git command line reads.
+   *
+   * <p>A blobless fetch makes the remote a promisor remote with the {@code blob:none} filter, so
+   * that git fetches the commits and the trees, which the probes need, but none of the file
+   * contents. Once disabled, the remote stays a promisor, so that the contents left out so far can
+   * still be fetched on demand.
+   *
+   * <p>With protocol v2, git only asks for the refs matching the {@code ref-prefix} of the refspecs
+   * instead of reading the advertisement of every ref, including all the patch-sets of the project.
+   * The version is set to 0 only once v2 has failed with the remote, and left to the git default,
+   * which is v2 since git 2.26, when the protocol is not configured.
+   *
+   * @param protocolVersion the protocol version to use, or null for the git default.
+   */
+  static void configureCacheFetch(
+      GitClient client, String remoteName, boolean blobless, @CheckForNull Integer protocolVersion)
+      throws IOException, InterruptedException {
+    try (Repository repository = client.getRepository()) {
+      StoredConfig config = repository.getConfig();
+      String filter = config.getString("remote", remoteName, "partialclonefilter");
+      boolean changed = false;
+      if (blobless != BLOBLESS_FILTER.equals(filter)) {
+        if (blobless) {
+          config.setInt("core", null, "repositoryformatversion", 1);
+          config.setString("extensions", null, "partialclone", remoteName);
+          config.setBoolean("remote", remoteName, "promisor", true);
+          config.setString("remote", remoteName, "partialclonefilter", BLOBLESS_FILTER);
+        } else {
+          config.unset("remote", remoteName, "partialclonefilter");
+        }
+        changed = true;
+      }
+      int configuredVersion = config.getInt("protocol", null, "version", -1);
+      if (protocolVersion == null) {
+        if (configuredVersion != -1) {
+          config.unset("protocol", null, "version");
+          changed = true;
+        }
+      } else if (configuredVersion != protocolVersion) {
+        config.setInt("protocol", null, "version", protocolVersion);
+        changed = true;
+      }
+      if (changed) {
+        config.save();
       }
+    }
+  }
 
-      return retriever.run(client, context, remoteName, changeQuery);
-    } finally {
-      cacheLock.unlock();
+  /**
+   * Returns the cache entry of the fetches. The {@code GitSCMFileSystem} of the git plugin reads
+   * the older revisions from the cache with JGit, which cannot fetch the missing file contents on
+   * demand, so the blobless fetches have a cache of their own.
+   */
+  static String cacheEntryOf(String cacheEntry, boolean blobless) {
+    return blobless ? cacheEntry + BLOBLESS_CACHE_SUFFIX : cacheEntry;
+  }
+
+  /** Tells whether the file contents of the cache repository can be missing. */
+  static boolean isPartialClone(GitClient client) throws InterruptedException {
+    if (!client.hasGitRepo()) {
+      return false;
     }
+    try (Repository repository = client.getRepository()) {
+      return repository.getConfig().getString("extensions", null, "partialclone") != null;
+    }
+  }
+
+  /** Gives {@link GerritCacheLock} the git plugin lock of a cache repository. */
+  static Lock cacheLockOf(String cacheEntry) {
+    return getCacheLock(cacheEntry);
+  }
+
+  @CheckForNull
+  static File cacheDirOf(String cacheEntry) {
+    return getCacheDir(cacheEntry);
   }
 
-  private Stream<RefSpec> changeQueryToRefSpecs(QueryRequest changeQuery) throws RestApiException {
-    return changeQuery
-        .get()
+  private Stream<RefSpec> changesToRefSpecs(List<ChangeInfo> changes) {
+    return changes
         .stream()
         .map(
             (ChangeInfo change) -> {
@@ -733,7 +1135,7 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
     }
   }
 
-  private GerritApi createGerritApi(@Nonnull TaskListener listener, GerritURI remoteUri)
+  GerritApi createGerritApi(@Nonnull TaskListener listener, GerritURI remoteUri)
       throws IOException {
     return setupGerritApiBuilder(listener, remoteUri).build();
   }
@@ -755,7 +1157,8 @@ public abstract class AbstractGerritSCMSource extends AbstractGitSCMSource {
     return gerritApi
         .changes()
         .query(URLEncoder.encode(query, StandardCharsets.UTF_8.name()))
-        .withOption(ListChangesOption.CURRENT_REVISION);
+        .withOption(ListChangesOption.CURRENT_REVISION)
+        .withOption(ListChangesOption.DETAILED_ACCOUNTS);
   }
 
   public GerritURI getGerritURI() throws IOException {
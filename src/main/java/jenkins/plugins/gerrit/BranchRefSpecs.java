@@ -0,0 +1,213 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.model.TaskListener;
+import hudson.plugins.git.Branch;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.RefSpec;
+import org.jenkinsci.plugins.gitclient.GitClient;
+
+/**
+ * Narrows the branch refspecs of the cache fetch to the branches accepted by the head filters of a
+ * source, so that the other branches are neither negotiated nor downloaded.
+ *
+ * <p>The includes of a {@link WildcardSCMHeadFilterTrait} become glob refspecs. Any other filter is
+ * evaluated on the branches listed through the REST API, which then become explicit refspecs. The
+ * filters still run on the discovered heads, so the refspecs only need to cover the accepted
+ * branches, not to match them exactly.
+ */
+class BranchRefSpecs {
+  private static final int MAX_EXPLICIT_REFSPECS =
+      Math.max(1, Integer.getInteger("gerrit.fetch.maxBranchRefSpecs", 1000));
+
+  /** Lists the short names of the branches of the project. */
+  @FunctionalInterface
+  interface BranchLister {
+    List<String> list() throws IOException;
+  }
+
+  private final List<RefSpec> refSpecs;
+  /** The branches that exist on the server, when the refspecs list some of them one by one. */
+  @CheckForNull private final Set<String> serverBranches;
+
+  private BranchRefSpecs(List<RefSpec> refSpecs, @CheckForNull Set<String> serverBranches) {
+    this.refSpecs = refSpecs;
+    this.serverBranches = serverBranches;
+  }
+
+  /**
+   * Returns the branch refspecs of the context, narrowed by the head filters when the refspecs
+   * fetch all the branches.
+   */
+  static BranchRefSpecs narrow(
+      SCMSource source,
+      GerritSCMSourceContext context,
+      BranchLister lister,
+      TaskListener listener) {
+    List<RefSpec> refSpecs =
+        context
+            .asRefSpecs()
+            .stream()
+            .filter(refSpec -> !refSpec.getSource().contains(AbstractGerritSCMSource.R_CHANGES))
+            .collect(Collectors.toList());
+    List<SCMHeadPrefilter> prefilters = context.prefilters();
+    List<RefSpec> allBranches =
+        refSpecs.stream().filter(BranchRefSpecs::isAllBranches).collect(Collectors.toList());
+    if (prefilters.isEmpty() || allBranches.isEmpty()) {
+      return new BranchRefSpecs(refSpecs, null);
+    }
+    List<RefSpec> narrowed = new ArrayList<>(refSpecs);
+    narrowed.removeAll(allBranches);
+
+    List<String> includes = wildcardIncludes(source);
+    if (includes != null) {
+      for (RefSpec refSpec : allBranches) {
+        for (String include : includes) {
+          narrowed.add(expand(refSpec, include));
+        }
+      }
+      listener.getLogger().println("Fetching the branches matching " + includes);
+      return new BranchRefSpecs(narrowed, null);
+    }
+
+    List<String> names;
+    try {
+      names = lister.list();
+    } catch (IOException e) {
+      listener.getLogger().println("Unable to list the branches, fetching all of them: " + e);
+      return new BranchRefSpecs(refSpecs, null);
+    }
+    Set<String> accepted = new HashSet<>();
+    for (String name : names) {
+      SCMHead head = new SCMHead(name);
+      if (prefilters.stream().noneMatch(prefilter -> prefilter.isExcluded(source, head))) {
+        accepted.add(name);
+      }
+    }
+    if (accepted.size() == names.size()) {
+      return new BranchRefSpecs(refSpecs, null);
+    }
+    if (accepted.size() > MAX_EXPLICIT_REFSPECS) {
+      listener
+          .getLogger()
+          .format("%d branches match the filters, fetching all of them%n", accepted.size());
+      return new BranchRefSpecs(refSpecs, null);
+    }
+    for (RefSpec refSpec : allBranches) {
+      for (String name : accepted) {
+        narrowed.add(expand(refSpec, name));
+      }
+    }
+    listener
+        .getLogger()
+        .format(
+            "Fetching the %d of %d branches matching the filters%n",
+            accepted.size(), names.size());
+    return new BranchRefSpecs(narrowed, new HashSet<>(names));
+  }
+
+  List<RefSpec> getRefSpecs() {
+    return refSpecs;
+  }
+
+  /**
+   * Deletes the remote-tracking branches of the branches deleted on the server: pruning only covers
+   * the destinations of the refspecs, which do not include the deleted branches once they are
+   * listed one by one. Branches that still exist are kept even when this source does not fetch
+   * them, since the cache is shared with the other sources of the same remote.
+   */
+  void pruneStaleBranches(GitClient client, String remoteName, TaskListener listener)
+      throws InterruptedException {
+    for (String branch : staleBranches(client.getRemoteBranches(), remoteName)) {
+      listener.getLogger().println("Pruning stale branch " + branch);
+      client.deleteRef(Constants.R_REMOTES + branch);
+    }
+  }
+
+  /** Returns the remote-tracking branches whose branch no longer exists on the server. */
+  List<String> staleBranches(Collection<Branch> remoteBranches, String remoteName) {
+    if (serverBranches == null) {
+      return Collections.emptyList();
+    }
+    String prefix = remoteName + "/";
+    List<String> stale = new ArrayList<>();
+    for (Branch branch : remoteBranches) {
+      String name = StringUtils.removeStart(branch.getName(), prefix);
+      if (!name.equals(branch.getName())
+          && !serverBranches.contains(name)
+          && !AbstractGerritSCMSource.getChangeRefMatcher(name).matches()) {
+        stale.add(branch.getName());
+      }
+    }
+    return stale;
+  }
+
+  /** Returns the includes of the wildcard filter, when all of them can be refspec patterns. */
+  @CheckForNull
+  static List<String> wildcardIncludes(SCMSource source) {
+    WildcardSCMHeadFilterTrait wildcard =
+        SCMTrait.find(source.getTraits(), WildcardSCMHeadFilterTrait.class);
+    if (wildcard == null) {
+      return null;
+    }
+    List<String> includes = new ArrayList<>();
+    Collections.addAll(
+        includes, StringUtils.split(StringUtils.defaultString(wildcard.getIncludes())));
+    for (String include : includes) {
+      // A refspec pattern has a single wildcard, which matches at least one character
+      if (include.equals("*") || StringUtils.countMatches(include, "*") > 1) {
+        return null;
+      }
+      try {
+        new RefSpec(Constants.R_HEADS + include);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return includes.isEmpty() ? null : includes;
+  }
+
+  private static boolean isAllBranches(RefSpec refSpec) {
+    return refSpec.getSource().equals(Constants.R_HEADS + "*")
+        && refSpec.getDestination() != null
+        && refSpec.getDestination().endsWith("/*");
+  }
+
+  private static RefSpec expand(RefSpec refSpec, String branch) {
+    return new RefSpec(
+        (refSpec.isForceUpdate() ? "+" : "")
+            + Constants.R_HEADS
+            + branch
+            + ":"
+            + StringUtils.removeEnd(refSpec.getDestination(), "*")
+            + branch);
+  }
+}
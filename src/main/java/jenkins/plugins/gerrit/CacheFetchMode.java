@@ -0,0 +1,88 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.plugins.git.GitException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * The optional modes of the fetches of the cache repository, which some servers or git versions do
+ * not support.
+ *
+ * <p>Each mode recognizes the errors saying it is not supported, so that only that mode is turned
+ * off. The errors of the git command line quote the command, so the phrases never match its
+ * options.
+ */
+enum CacheFetchMode {
+  SHALLOW(
+      "shallow",
+      "does not support shallow",
+      "shallow capabilities",
+      "unknown option `depth'",
+      "shallow file has changed"),
+  BLOBLESS(
+      "blobless",
+      "filtering not recognized by server",
+      "filter 'blob:none' not supported",
+      "unsupported filter",
+      "does not support partial clone",
+      "unknown option `filter'",
+      "unknown repository extension"),
+  PROTOCOL_V2(
+      "protocol v2",
+      "unknown value for config 'protocol.version'",
+      "expected flush after ref listing",
+      "bad protocol version",
+      "unknown capability",
+      "expected capabilities after ls-refs");
+
+  private final String description;
+  private final List<String> unsupportedPhrases;
+
+  CacheFetchMode(String description, String... unsupportedPhrases) {
+    this.description = description;
+    this.unsupportedPhrases = Arrays.asList(unsupportedPhrases);
+  }
+
+  /** Tells whether an error says that this mode is not supported. */
+  boolean isUnsupportedBy(String message) {
+    String lowerCase = message.toLowerCase(Locale.ROOT);
+    return unsupportedPhrases.stream().anyMatch(lowerCase::contains);
+  }
+
+  /**
+   * Returns the mode among the ones tried that a fetch error says is not supported, or {@code
+   * null} when the error is about something else, such as the network or the credentials.
+   */
+  @CheckForNull
+  static CacheFetchMode unsupportedBy(GitException e, Set<CacheFetchMode> tried) {
+    String message = String.valueOf(e.getMessage());
+    for (CacheFetchMode mode : tried) {
+      if (mode.isUnsupportedBy(message)) {
+        return mode;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+}
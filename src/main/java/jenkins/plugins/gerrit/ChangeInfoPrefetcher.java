@@ -0,0 +1,126 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.google.gerrit.extensions.common.ChangeInfo;
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.plugins.gerrit.GerritEnvironmentContributor.ChangeInfoInvisibleAction;
+import jenkins.scm.api.SCMHead;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+/**
+ * Starts fetching the change details of a change build as soon as it enters the queue, so that the
+ * GERRIT_* variables are ready by the time the build gets an executor.
+ */
+@Extension
+public class ChangeInfoPrefetcher extends QueueListener {
+  private static final Logger LOGGER = Logger.getLogger(ChangeInfoPrefetcher.class.getName());
+
+  private static final int PREFETCH_THREADS =
+      Integer.getInteger("gerrit.change.prefetch.threads", 4);
+
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          PREFETCH_THREADS,
+          new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit change prefetcher"));
+
+  @Override
+  public void onEnterWaiting(Queue.WaitingItem wi) {
+    if (!(wi.task instanceof WorkflowJob)
+        || wi.getAction(ChangeInfoInvisibleAction.class) != null) {
+      return;
+    }
+
+    WorkflowJob job = (WorkflowJob) wi.task;
+    GerritSCMSource gerritSCMSource = GerritEnvironmentContributor.getGerritSCMSource(job);
+    SCMHead head = SCMHead.HeadByItem.findHead(job);
+    if (gerritSCMSource == null || !(head instanceof ChangeSCMHead)) {
+      return;
+    }
+
+    GerritURI gerritURI;
+    try {
+      gerritURI = gerritSCMSource.getGerritURI();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to prefetch change details for " + job.getFullName(), e);
+      return;
+    }
+
+    wi.addAction(
+        prefetch((ChangeSCMHead) head, gerritURI, gerritSCMSource::getChangeInfo, executor));
+  }
+
+  /**
+   * Get the change environment of a change head, from the scanned change when the head has it or
+   * from an asynchronous fetch otherwise.
+   *
+   * @param change the change head of the queued build.
+   * @param gerritURI the Gerrit URI of the source.
+   * @param changes the lookup of the change details.
+   * @param executor the executor of the asynchronous fetch.
+   * @return the action holding the change environment or its pending fetch.
+   */
+  static ChangeInfoInvisibleAction prefetch(
+      ChangeSCMHead change, GerritURI gerritURI, ChangeLookup changes, ExecutorService executor) {
+    Map<String, String> scannedChangeEnvs =
+        GerritEnvironmentContributor.getScannedChangeEnvs(change, change.getPatchSetNumber());
+    if (!scannedChangeEnvs.isEmpty()) {
+      return new ChangeInfoInvisibleAction(scannedChangeEnvs);
+    }
+
+    Future<Map<String, String>> changeEnvs =
+        executor.submit(
+            () -> {
+              Optional<ChangeInfo> changeInfo =
+                  changes.get(change.getChangeNumber(), gerritURI.getProject());
+              return changeInfo
+                  .map(
+                      c ->
+                          GerritEnvironmentContributor.changeEnvsOf(
+                              c, change.getPatchSetNumber(), gerritURI))
+                  .orElseGet(HashMap::new);
+            });
+    return new ChangeInfoInvisibleAction(changeEnvs);
+  }
+
+  @Override
+  public void onLeft(Queue.LeftItem li) {
+    if (li.isCancelled()) {
+      ChangeInfoInvisibleAction changeInfoAction = li.getAction(ChangeInfoInvisibleAction.class);
+      if (changeInfoAction != null) {
+        changeInfoAction.cancel();
+      }
+    }
+  }
+
+  /** Looks up the details of a change of a project. */
+  @FunctionalInterface
+  interface ChangeLookup {
+    Optional<ChangeInfo> get(int changeNumber, String projectName) throws IOException;
+  }
+}
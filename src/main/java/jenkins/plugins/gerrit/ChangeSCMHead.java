@@ -14,6 +14,8 @@
 
 package jenkins.plugins.gerrit;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -38,13 +40,25 @@ public class ChangeSCMHead extends SCMHead implements ChangeRequestSCMHead2 {
 
   private final Set<String> pendingCheckerUuids;
 
+  /** GERRIT_* variables computed from the change returned by the scan-time open changes query. */
+  private final HashMap<String, String> changeEnvs;
+
   ChangeSCMHead(
       Map.Entry<String, ObjectId> ref, String branchName, Set<String> pendingCheckerUuids) {
+    this(ref, branchName, pendingCheckerUuids, Collections.emptyMap());
+  }
+
+  ChangeSCMHead(
+      Map.Entry<String, ObjectId> ref,
+      String branchName,
+      Set<String> pendingCheckerUuids,
+      Map<String, String> changeEnvs) {
     super(branchName);
     changeNumber = parseChangeNumber(ref);
     patchset = parsePatchset(ref);
     rev = ref.getValue().name();
     this.pendingCheckerUuids = pendingCheckerUuids;
+    this.changeEnvs = new HashMap<>(changeEnvs);
   }
 
   private static int parseChangeNumber(Map.Entry<String, ObjectId> ref) {
@@ -102,6 +116,16 @@ public class ChangeSCMHead extends SCMHead implements ChangeRequestSCMHead2 {
     return pendingCheckerUuids;
   }
 
+  /**
+   * Get the change environment variables captured when the change was discovered.
+   *
+   * @return the GERRIT_* variables of this patch-set, or an empty map if they were not captured.
+   */
+  @Nonnull
+  public Map<String, String> getChangeEnvs() {
+    return changeEnvs == null ? Collections.emptyMap() : Collections.unmodifiableMap(changeEnvs);
+  }
+
   @Nonnull
   @Override
   public SCMHead getTarget() {
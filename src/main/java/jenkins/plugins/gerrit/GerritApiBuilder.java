@@ -17,6 +17,7 @@ import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.transport.URIish;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
@@ -29,6 +30,7 @@ public class GerritApiBuilder {
   private boolean requireAuthentication;
   private String username;
   private String password;
+  private InFlightRequests inFlightRequests;
 
   public GerritApiBuilder logger(PrintStream logger) {
     this.logger = logger;
@@ -73,10 +75,21 @@ public class GerritApiBuilder {
     return this;
   }
 
+  /** Registers every request of the built clients, so that they can be aborted at once. */
+  public GerritApiBuilder inFlightRequests(InFlightRequests inFlightRequests) {
+    this.inFlightRequests = inFlightRequests;
+    return this;
+  }
+
   public GerritApiBuilder stepContext(StepContext context)
       throws URISyntaxException, IOException, InterruptedException {
-    EnvVars envVars = context.get(EnvVars.class);
     logger(context.get(TaskListener.class).getLogger());
+    return environment(context.get(EnvVars.class), context.get(Run.class));
+  }
+
+  /** Configures the builder from the GERRIT_* variables of a build environment. */
+  public GerritApiBuilder environment(Map<String, String> envVars, Run<?, ?> run)
+      throws URISyntaxException {
     if (StringUtils.isNotEmpty(envVars.get("GERRIT_API_URL"))) {
       gerritApiUrl(envVars.get("GERRIT_API_URL"));
     } else if (StringUtils.isNotEmpty(envVars.get("GERRIT_CHANGE_URL"))) {
@@ -87,7 +100,7 @@ public class GerritApiBuilder {
     if (credentialsId != null) {
       credentials(
           CredentialsProvider.findCredentialById(
-              credentialsId, StandardUsernamePasswordCredentials.class, context.get(Run.class)));
+              credentialsId, StandardUsernamePasswordCredentials.class, run));
     }
     return this;
   }
@@ -97,9 +110,13 @@ public class GerritApiBuilder {
     if (verifyParameters()) {
       List<HttpClientBuilderExtension> extensions = new ArrayList<>();
       extensions.add(UserAgentClientBuilderExtension.INSTANCE);
+      extensions.add(GerritRestClientBuilderExtension.INSTANCE);
       if (Boolean.TRUE.equals(insecureHttps)) {
         extensions.add(SSLNoVerifyCertificateManagerClientBuilderExtension.INSTANCE);
       }
+      if (inFlightRequests != null) {
+        extensions.add(inFlightRequests);
+      }
       gerritApi =
           new GerritRestApiFactory()
               .create(
@@ -111,13 +128,23 @@ public class GerritApiBuilder {
 
   public GerritChecksApi buildChecksApi() {
     if (verifyParameters()) {
-      GerritChecksApiBuilder gerritChecksApiBuilder = new GerritChecksApiBuilder(gerritApiUrl);
+      GerritChecksApiBuilder gerritChecksApiBuilder =
+          new GerritChecksApiBuilder(gerritApiUrl)
+              .setRequestExecutor(GerritRestClientBuilderExtension.REQUEST_EXECUTOR)
+              .setRetryHandler(GerritRestClientBuilderExtension.RETRY_HANDLER)
+              .setServiceUnavailableRetryStrategy(
+                  GerritRestClientBuilderExtension.SERVICE_UNAVAILABLE_RETRY)
+              .addRequestInterceptor(GerritRestClientBuilderExtension.ADMISSION)
+              .addResponseInterceptor(GerritRestClientBuilderExtension.RESPONSE_CHECK);
       if (username != null) {
         gerritChecksApiBuilder.setBasicAuthCredentials(username, password);
       }
       if (Boolean.TRUE.equals(insecureHttps)) {
         gerritChecksApiBuilder.allowInsecureHttps();
       }
+      if (inFlightRequests != null) {
+        gerritChecksApiBuilder.addRequestInterceptor(inFlightRequests);
+      }
       return gerritChecksApiBuilder.build();
     }
     return null;
@@ -0,0 +1,395 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.CheckForNull;
+
+/**
+ * Locks a cache repository shared by the Gerrit sources of the same remote.
+ *
+ * <p>Fetches, maintenance and eviction change the repository and run exclusively. The scans then
+ * probe the fetched refs under a shared lock, so that they run concurrently. A fetch hands its
+ * exclusive lock over to the shared lock of its scan without releasing it, so that nothing changes
+ * the fetched refs before they are probed. A fetch that waits for the repository is reused by the
+ * other scans asking for the same refs or fewer, which then wait for it instead of fetching again.
+ *
+ * <p>Both the exclusive and the shared locks also hold the cache lock of the git plugin, so that
+ * its fetches do not change the repository either. That lock is owned by a thread, so a keeper
+ * thread holds it on behalf of all the scans, as long as any of them needs it.
+ */
+class GerritCacheLock {
+  private static final ConcurrentMap<String, GerritCacheLock> locks = new ConcurrentHashMap<>();
+
+  private static final ExecutorService keepers =
+      Executors.newCachedThreadPool(
+          new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit cache lock keeper"));
+
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+  private final Lock gitLock;
+
+  private Flight queued;
+
+  // Guarded by this: the holders of the git plugin lock, and whether the keeper holds it
+  private int gitLockHolders;
+  private boolean keeperRunning;
+  private boolean gitLockHeld;
+
+  GerritCacheLock(Lock gitLock) {
+    this.gitLock = gitLock;
+  }
+
+  /** Returns the lock of a cache repository, identified by its cache entry. */
+  static GerritCacheLock of(String cacheEntry) {
+    return locks.computeIfAbsent(
+        cacheEntry, entry -> new GerritCacheLock(AbstractGerritSCMSource.cacheLockOf(entry)));
+  }
+
+  void lockExclusively() throws InterruptedException {
+    readWriteLock.writeLock().lockInterruptibly();
+    try {
+      holdGitLock();
+    } catch (InterruptedException e) {
+      readWriteLock.writeLock().unlock();
+      throw e;
+    }
+  }
+
+  boolean tryLockExclusively() {
+    if (!readWriteLock.writeLock().tryLock()) {
+      return false;
+    }
+    if (!tryHoldGitLock()) {
+      readWriteLock.writeLock().unlock();
+      return false;
+    }
+    return true;
+  }
+
+  void unlockExclusively() {
+    releaseGitLock();
+    readWriteLock.writeLock().unlock();
+  }
+
+  void lockShared() throws InterruptedException {
+    readWriteLock.readLock().lockInterruptibly();
+    try {
+      holdGitLock();
+    } catch (InterruptedException e) {
+      readWriteLock.readLock().unlock();
+      throw e;
+    }
+  }
+
+  void unlockShared() {
+    releaseGitLock();
+    readWriteLock.readLock().unlock();
+  }
+
+  /** Turns the exclusive lock of the current thread into a shared lock, without releasing it. */
+  private void downgrade() {
+    readWriteLock.readLock().lock();
+    synchronized (this) {
+      gitLockHolders++;
+    }
+    unlockExclusively();
+  }
+
+  /**
+   * Runs a fetch exclusively, or waits for a fetch of another scan that has not started yet and
+   * covers the same refs, then locks the repository shared. Only fetches that start after the
+   * request are reused, so that the scans never see refs older than their request.
+   *
+   * <p>The refs fetched for another scan could have changed before the shared lock, so they are
+   * checked and fetched again if missing.
+   *
+   * <p>A thread that already holds the shared lock cannot take the exclusive one, so a request
+   * nested in a scan does not fetch and only uses the refs already in the repository.
+   *
+   * @param request what the fetch is about
+   * @param listener the listener of the scan
+   * @param fetch the fetch, which runs at most once for all the scans reusing it
+   * @param fetched tells, under the shared lock, whether the refs of the request are fetched
+   * @throws IOException if the fetch failed, also when run for another scan
+   */
+  void fetchThenLockShared(
+      FetchRequest request, TaskListener listener, Fetch fetch, Fetched fetched)
+      throws IOException, InterruptedException {
+    if (readWriteLock.getReadHoldCount() > 0) {
+      if (!lockSharedIfFetched(fetched)) {
+        throw new IOException(
+            "Unable to fetch the cache repository while the same thread is reading it");
+      }
+      return;
+    }
+    boolean reusable = true;
+    while (true) {
+      Flight flight;
+      boolean reused;
+      synchronized (this) {
+        reused = reusable && queued != null && queued.request.covers(request);
+        if (reused) {
+          flight = queued;
+        } else {
+          flight = new Flight(request);
+          if (queued == null) {
+            queued = flight;
+          }
+        }
+      }
+      if (!reused) {
+        run(flight, listener, fetch);
+        return;
+      }
+      listener.getLogger().println("Waiting for the fetch of another scan of the same remote...");
+      if (!flight.await()) {
+        // The other scan was aborted before it could fetch
+        continue;
+      }
+      if (lockSharedIfFetched(fetched)) {
+        return;
+      }
+      listener.getLogger().println("Refs changed since the fetch of another scan, fetching again");
+      reusable = false;
+    }
+  }
+
+  /** Locks the repository shared and keeps it locked only if the refs are fetched. */
+  private boolean lockSharedIfFetched(Fetched fetched) throws IOException, InterruptedException {
+    lockShared();
+    boolean complete = false;
+    try {
+      complete = fetched.check();
+    } finally {
+      if (!complete) {
+        unlockShared();
+      }
+    }
+    return complete;
+  }
+
+  /**
+   * Runs the fetch of a flight, then keeps the repository locked shared. The fetch slot is taken
+   * before the exclusive lock, so that waiting for it does not hold back the scans reading the
+   * repository.
+   */
+  private void run(Flight flight, TaskListener listener, Fetch fetch)
+      throws IOException, InterruptedException {
+    GerritFetchLimiter.Slot slot = null;
+    boolean locked = false;
+    try {
+      if (flight.request.server != null) {
+        slot = GerritFetchLimiter.get().acquire(flight.request.server, listener);
+      }
+      lockExclusively();
+      locked = true;
+      dequeue(flight);
+      fetch.run();
+      flight.complete(null);
+      downgrade();
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      dequeue(flight);
+      flight.complete(e);
+      if (locked) {
+        unlockExclusively();
+      }
+      throw e;
+    } finally {
+      if (slot != null) {
+        slot.close();
+      }
+    }
+  }
+
+  private synchronized void dequeue(Flight flight) {
+    if (queued == flight) {
+      queued = null;
+    }
+  }
+
+  /** Waits for the keeper to hold the git plugin lock for the current thread too. */
+  private synchronized void holdGitLock() throws InterruptedException {
+    gitLockHolders++;
+    try {
+      while (!gitLockHeld) {
+        if (!keeperRunning) {
+          startKeeper();
+        }
+        wait();
+      }
+    } catch (InterruptedException e) {
+      // The keeper releases the lock once it sees no holders
+      gitLockHolders--;
+      notifyAll();
+      throw e;
+    }
+  }
+
+  /** Holds the git plugin lock only if it is free or already held by the keeper. */
+  private boolean tryHoldGitLock() {
+    CompletableFuture<Boolean> acquired;
+    synchronized (this) {
+      if (gitLockHeld) {
+        gitLockHolders++;
+        return true;
+      }
+      if (keeperRunning) {
+        // The keeper is still waiting for the lock
+        return false;
+      }
+      gitLockHolders++;
+      keeperRunning = true;
+      acquired = new CompletableFuture<>();
+      keepers.execute(() -> keep(acquired));
+    }
+    try {
+      if (acquired.get()) {
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Not acquired
+    }
+    synchronized (this) {
+      gitLockHolders--;
+      notifyAll();
+    }
+    return false;
+  }
+
+  private synchronized void releaseGitLock() {
+    gitLockHolders--;
+    notifyAll();
+  }
+
+  private void startKeeper() {
+    keeperRunning = true;
+    keepers.execute(() -> keep(null));
+  }
+
+  /**
+   * Holds the git plugin lock while there are holders. With a future, only tries to take the lock
+   * and completes the future with the outcome.
+   */
+  private void keep(CompletableFuture<Boolean> tryOnly) {
+    if (tryOnly == null) {
+      gitLock.lock();
+    } else if (!gitLock.tryLock()) {
+      synchronized (this) {
+        keeperRunning = false;
+        notifyAll();
+      }
+      tryOnly.complete(false);
+      return;
+    }
+    try {
+      synchronized (this) {
+        gitLockHeld = true;
+        notifyAll();
+        if (tryOnly != null) {
+          tryOnly.complete(true);
+        }
+        while (gitLockHolders > 0) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // Only released once there are no holders
+          }
+        }
+        gitLockHeld = false;
+        keeperRunning = false;
+      }
+    } finally {
+      gitLock.unlock();
+    }
+  }
+
+  /** The fetch of a cache repository. */
+  @FunctionalInterface
+  interface Fetch {
+    void run() throws IOException, InterruptedException;
+  }
+
+  /** Checks that the refs of a fetch request are in the cache repository. */
+  @FunctionalInterface
+  interface Fetched {
+    boolean check() throws IOException, InterruptedException;
+  }
+
+  /** The refs and the options of a fetch of the cache repository. */
+  static class FetchRequest {
+    private final String options;
+    private final Set<String> refSpecs;
+    @CheckForNull private final String server;
+
+    /**
+     * @param options everything besides the refs that changes the fetch, such as the remote, the
+     *     credentials, the pruning or the fetch modes
+     * @param refSpecs the refspecs to fetch
+     * @param server the Gerrit server to take a {@link GerritFetchLimiter} slot for, or {@code
+     *     null} when nothing is fetched
+     */
+    FetchRequest(String options, Set<String> refSpecs, @CheckForNull String server) {
+      this.options = options;
+      this.refSpecs = refSpecs;
+      this.server = server;
+    }
+
+    boolean covers(FetchRequest other) {
+      return options.equals(other.options) && refSpecs.containsAll(other.refSpecs);
+    }
+  }
+
+  private static class Flight {
+    private final FetchRequest request;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Exception failure;
+
+    Flight(FetchRequest request) {
+      this.request = request;
+    }
+
+    void complete(Exception failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+
+    /** Returns whether the fetch ran, or throws its failure. */
+    boolean await() throws IOException, InterruptedException {
+      done.await();
+      if (failure instanceof InterruptedException) {
+        return false;
+      }
+      if (failure != null) {
+        throw new IOException("The fetch of another scan of the same remote failed", failure);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,389 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitTool;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.gitclient.JGitApacheTool;
+import org.jenkinsci.plugins.gitclient.JGitTool;
+
+/**
+ * Periodically tidies up the cache repositories of the Gerrit sources.
+ *
+ * <p>Every scan fetches the patch-sets of the open changes as remote-tracking refs, which are never
+ * removed once the changes are merged or abandoned. The maintenance deletes the refs of the changes
+ * that no source sharing the cache repository fetched in its recent scans, packs the refs, runs
+ * {@code git gc} and writes a commit-graph. Only the cache repositories scanned since Jenkins
+ * started are maintained, and the whole run stops once its time budget is spent. Each repository
+ * also has a budget of its own, since it is locked exclusively, and so not scanned, while it is
+ * maintained. The maintenance needs the git command line: it is skipped when only JGit is
+ * installed.
+ */
+@Extension
+public class GerritCacheMaintenance extends AsyncPeriodicWork {
+  private static final long PERIOD_HOURS = Long.getLong("gerrit.cacheMaintenance.periodHours", 24);
+  private static final long BUDGET_MINUTES =
+      Long.getLong("gerrit.cacheMaintenance.budgetMinutes", 30);
+  private static final long REPOSITORY_BUDGET_MINUTES =
+      Long.getLong("gerrit.cacheMaintenance.repositoryBudgetMinutes", 5);
+  private static final long KILLED_WAIT_SECONDS = 10;
+
+  private static final long KEPT_REFS_HOURS =
+      Long.getLong("gerrit.cacheMaintenance.keptRefsHours", 7 * 24);
+
+  private static final Pattern CHANGE_TRACKING_REF =
+      Pattern.compile("refs/remotes/[^/]+/\\d\\d/\\d+/\\d+");
+
+  private static final Map<String, Scanned> scanned = new ConcurrentHashMap<>();
+  private static final Map<String, Result> results = new ConcurrentHashMap<>();
+
+  public GerritCacheMaintenance() {
+    super("Gerrit cache maintenance");
+  }
+
+  /**
+   * Records the change refs fetched by the last scan of a source. The maintenance keeps the refs
+   * of the last scan of every source sharing the cache repository, unless that scan is older than
+   * {@code gerrit.cacheMaintenance.keptRefsHours}.
+   */
+  static void recordScan(
+      String cacheEntry, String remote, String sourceId, Set<String> changeRefs) {
+    scanned
+        .computeIfAbsent(cacheEntry, entry -> new Scanned(remote))
+        .record(sourceId, changeRefs, System.currentTimeMillis());
+  }
+
+  /** The change refs that the maintenance of a cache repository keeps. */
+  static Set<String> keptRefs(String cacheEntry, long nowMillis) {
+    Scanned scan = scanned.get(cacheEntry);
+    return scan == null
+        ? Collections.emptySet()
+        : scan.keptRefs(nowMillis - TimeUnit.HOURS.toMillis(KEPT_REFS_HOURS));
+  }
+
+  /** The outcome of the last maintenance of a cache repository, if any. */
+  @CheckForNull
+  static Result resultOf(String cacheEntry) {
+    return results.get(cacheEntry);
+  }
+
+  /** Forgets a cache repository, which has been deleted. */
+  static void forget(String cacheEntry) {
+    scanned.remove(cacheEntry);
+    results.remove(cacheEntry);
+  }
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.HOURS.toMillis(Math.max(1, PERIOD_HOURS));
+  }
+
+  @Override
+  protected void execute(TaskListener listener) throws InterruptedException {
+    if (PERIOD_HOURS <= 0) {
+      return;
+    }
+    String gitExe = cliGitExe();
+    if (gitExe == null) {
+      listener.getLogger().println("No git command line installed, skipping the maintenance");
+      return;
+    }
+    long deadlineNanos = System.nanoTime() + TimeUnit.MINUTES.toNanos(BUDGET_MINUTES);
+
+    for (Map.Entry<String, Scanned> entry : scanned.entrySet()) {
+      if (System.nanoTime() >= deadlineNanos) {
+        listener.getLogger().println("Time budget spent, the other caches wait for the next run");
+        return;
+      }
+      String cacheEntry = entry.getKey();
+      Scanned scan = entry.getValue();
+      GerritCacheLock cacheLock = GerritCacheLock.of(cacheEntry);
+      cacheLock.lockExclusively();
+      try {
+        File cacheDir = AbstractGerritSCMSource.cacheDirOf(cacheEntry);
+        if (cacheDir == null || !new File(cacheDir, ".git").isDirectory()) {
+          continue;
+        }
+        Set<String> keptRefs = keptRefs(cacheEntry, System.currentTimeMillis());
+        long repositoryDeadlineNanos =
+            Math.min(
+                deadlineNanos,
+                System.nanoTime() + TimeUnit.MINUTES.toNanos(REPOSITORY_BUDGET_MINUTES));
+        Result result = maintain(gitExe, scan.remote, cacheDir, keptRefs, repositoryDeadlineNanos);
+        results.put(cacheEntry, result);
+        GerritCacheRepositories.measured(cacheDir, result.getBytesAfter());
+        listener.getLogger().println(result);
+      } finally {
+        cacheLock.unlockExclusively();
+      }
+    }
+  }
+
+  /**
+   * Returns the git command line to maintain the caches with: the default git installation, or
+   * else the first one that is not JGit, which cannot pack refs, collect garbage or write
+   * commit-graphs.
+   */
+  @CheckForNull
+  private static String cliGitExe() {
+    List<GitTool> tools = new ArrayList<>();
+    GitTool defaultTool = GitTool.getDefaultInstallation();
+    if (defaultTool == null) {
+      return "git";
+    }
+    tools.add(defaultTool);
+    Jenkins jenkins = Jenkins.getInstance();
+    GitTool.DescriptorImpl descriptor = jenkins.getDescriptorByType(GitTool.DescriptorImpl.class);
+    if (descriptor != null) {
+      tools.addAll(Arrays.asList(descriptor.getInstallations()));
+    }
+    for (GitTool tool : tools) {
+      if (isCommandLine(tool.getGitExe())) {
+        return tool.getGitExe();
+      }
+    }
+    return null;
+  }
+
+  /** Tells whether a git installation runs the command line rather than JGit. */
+  static boolean isCommandLine(String gitExe) {
+    return gitExe != null
+        && !gitExe.equals(JGitTool.MAGIC_EXENAME)
+        && !gitExe.equals(JGitApacheTool.MAGIC_EXENAME);
+  }
+
+  /** Maintains a cache repository, which must be locked. */
+  static Result maintain(
+      String gitExe, String remote, File cacheDir, Set<String> keptRefs, long deadlineNanos)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    long sizeBefore = FileUtils.sizeOfDirectory(cacheDir);
+    int deleted = 0;
+    String failure = null;
+    try {
+      StringBuilder deletions = new StringBuilder();
+      String refs =
+          git(gitExe, cacheDir, deadlineNanos, null, "for-each-ref", "--format=%(refname)");
+      for (String ref : refs.split("\n")) {
+        if (CHANGE_TRACKING_REF.matcher(ref).matches() && !keptRefs.contains(ref)) {
+          deletions.append("delete ").append(ref).append('\n');
+          deleted++;
+        }
+      }
+      if (deleted > 0) {
+        git(gitExe, cacheDir, deadlineNanos, deletions.toString(), "update-ref", "--stdin");
+      }
+      git(gitExe, cacheDir, deadlineNanos, null, "pack-refs", "--all", "--prune");
+      git(gitExe, cacheDir, deadlineNanos, null, "gc", "--quiet");
+      git(gitExe, cacheDir, deadlineNanos, null, "commit-graph", "write", "--reachable");
+    } catch (IOException e) {
+      failure = e.getMessage();
+    }
+    return new Result(
+        remote,
+        System.currentTimeMillis(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        deleted,
+        sizeBefore,
+        FileUtils.sizeOfDirectory(cacheDir),
+        failure);
+  }
+
+  private static String git(
+      String gitExe, File dir, long deadlineNanos, @CheckForNull String input, String... args)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(gitExe);
+    command.addAll(Arrays.asList(args));
+    File output = File.createTempFile("gerrit-maintenance", ".log");
+    try {
+      Process process =
+          new ProcessBuilder(command)
+              .directory(dir)
+              .redirectErrorStream(true)
+              .redirectOutput(output)
+              .start();
+      try (OutputStream stdin = process.getOutputStream()) {
+        if (input != null) {
+          stdin.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      if (!process.waitFor(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)) {
+        process.destroyForcibly().waitFor(KILLED_WAIT_SECONDS, TimeUnit.SECONDS);
+        removeStaleLocks(new File(dir, ".git"));
+        throw new IOException("git " + args[0] + " stopped after the time budget");
+      }
+      String out = FileUtils.readFileToString(output, StandardCharsets.UTF_8);
+      if (process.exitValue() != 0) {
+        throw new IOException("git " + args[0] + " failed: " + out.trim());
+      }
+      return out;
+    } finally {
+      FileUtils.deleteQuietly(output);
+    }
+  }
+
+  /**
+   * Deletes the lock files left by a killed git command, which would make the next fetches and
+   * maintenance of the repository fail. Nothing else changes the repository while it is locked
+   * exclusively, so all of them are stale.
+   */
+  static void removeStaleLocks(File gitDir) throws IOException {
+    Path root = gitDir.toPath();
+    Files.deleteIfExists(root.resolve("gc.pid"));
+    for (Path dir : Arrays.asList(root, root.resolve("refs"), root.resolve("objects/info"))) {
+      if (!Files.isDirectory(dir)) {
+        continue;
+      }
+      int depth = dir.equals(root) ? 1 : Integer.MAX_VALUE;
+      try (Stream<Path> files = Files.walk(dir, depth)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          if (file.getFileName().toString().endsWith(".lock") && Files.isRegularFile(file)) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+  }
+
+  /** The change refs fetched by the last scan of each source sharing a cache repository. */
+  private static class Scanned {
+    private final String remote;
+    private final Map<String, SourceScan> sources = new ConcurrentHashMap<>();
+
+    Scanned(String remote) {
+      this.remote = remote;
+    }
+
+    void record(String sourceId, Set<String> changeRefs, long timestamp) {
+      sources.put(sourceId, new SourceScan(changeRefs, timestamp));
+    }
+
+    /** Returns the refs of the scans since a time, and forgets the older scans. */
+    Set<String> keptRefs(long sinceMillis) {
+      sources.values().removeIf(scan -> scan.timestamp < sinceMillis);
+      Set<String> kept = new HashSet<>();
+      for (SourceScan scan : sources.values()) {
+        kept.addAll(scan.changeRefs);
+      }
+      return kept;
+    }
+  }
+
+  private static class SourceScan {
+    private final Set<String> changeRefs;
+    private final long timestamp;
+
+    SourceScan(Set<String> changeRefs, long timestamp) {
+      this.changeRefs = Collections.unmodifiableSet(changeRefs);
+      this.timestamp = timestamp;
+    }
+  }
+
+  /** The outcome of the maintenance of a cache repository. */
+  public static class Result {
+    private final String remote;
+    private final long timestamp;
+    private final long durationMillis;
+    private final int deletedRefs;
+    private final long bytesBefore;
+    private final long bytesAfter;
+    @CheckForNull private final String failure;
+
+    Result(
+        String remote,
+        long timestamp,
+        long durationMillis,
+        int deletedRefs,
+        long bytesBefore,
+        long bytesAfter,
+        @CheckForNull String failure) {
+      this.remote = remote;
+      this.timestamp = timestamp;
+      this.durationMillis = durationMillis;
+      this.deletedRefs = deletedRefs;
+      this.bytesBefore = bytesBefore;
+      this.bytesAfter = bytesAfter;
+      this.failure = failure;
+    }
+
+    public String getRemote() {
+      return remote;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    public int getDeletedRefs() {
+      return deletedRefs;
+    }
+
+    public long getBytesBefore() {
+      return bytesBefore;
+    }
+
+    public long getBytesAfter() {
+      return bytesAfter;
+    }
+
+    public long getReclaimedBytes() {
+      return bytesBefore - bytesAfter;
+    }
+
+    @CheckForNull
+    public String getFailure() {
+      return failure;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Maintained the cache of %s in %d ms: %d change refs deleted, %d KiB reclaimed%s",
+          remote,
+          durationMillis,
+          deletedRefs,
+          getReclaimedBytes() / 1024,
+          failure == null ? "" : " (" + failure + ")");
+    }
+  }
+}
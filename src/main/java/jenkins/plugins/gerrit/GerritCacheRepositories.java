@@ -0,0 +1,233 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps the cache repositories of the Gerrit sources within a disk budget, deleting the least
+ * recently used ones first.
+ *
+ * <p>Every fetch touches a marker file in its cache repository, whose modification time tells
+ * when the repository was last used. A repository is only deleted under its cache lock, and only
+ * if no scan used it since it was measured. The sizes are remembered along with the marker time,
+ * so that each run only measures the repositories fetched since the previous one.
+ */
+@Extension
+public class GerritCacheRepositories extends AsyncPeriodicWork {
+  private static final Logger LOGGER = Logger.getLogger(GerritCacheRepositories.class.getName());
+
+  static final String MARKER_FILE = "gerrit-scm-source";
+
+  private static final long PERIOD_MINUTES =
+      Long.getLong("gerrit.cacheRepositories.periodMinutes", 60);
+  private static final long DISK_BUDGET_BYTES =
+      Long.getLong("gerrit.cacheRepositories.diskBytes", 10L * 1024 * 1024 * 1024);
+
+  private static volatile List<Entry> entries = Collections.emptyList();
+  private static final Map<String, Measured> sizes = new ConcurrentHashMap<>();
+  private static final AtomicLong evictions = new AtomicLong();
+
+  public GerritCacheRepositories() {
+    super("Gerrit cache repositories eviction");
+  }
+
+  /** Records that a cache repository, which must be locked, has just been used. */
+  static void touch(File cacheDir, String remote) {
+    File marker = new File(new File(cacheDir, ".git"), MARKER_FILE);
+    try {
+      if (!marker.isFile() || !marker.setLastModified(System.currentTimeMillis())) {
+        FileUtils.writeStringToFile(marker, remote, StandardCharsets.UTF_8);
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Could not mark the use of " + cacheDir, e);
+    }
+  }
+
+  /**
+   * Records the size of a cache repository that has just changed without being used, e.g. by its
+   * maintenance, so that the next run does not measure it again.
+   */
+  static void measured(File cacheDir, long sizeBytes) {
+    File marker = new File(new File(cacheDir, ".git"), MARKER_FILE);
+    if (marker.isFile()) {
+      sizes.put(cacheDir.getName(), new Measured(marker.lastModified(), sizeBytes));
+    }
+  }
+
+  /** The cache repositories measured by the last run, most recently used first. */
+  public static List<Entry> getEntries() {
+    return entries;
+  }
+
+  public static long getDiskBudget() {
+    return DISK_BUDGET_BYTES;
+  }
+
+  public static long getDiskBytes() {
+    return entries.stream().mapToLong(Entry::getSizeBytes).sum();
+  }
+
+  public static long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.MINUTES.toMillis(Math.max(1, PERIOD_MINUTES));
+  }
+
+  @Override
+  protected void execute(TaskListener listener) {
+    evict(new File(Jenkins.getInstance().getRootDir(), "caches"), DISK_BUDGET_BYTES, listener);
+  }
+
+  /** Deletes the least recently used cache repositories until they fit in the budget. */
+  static void evict(File cachesDir, long budgetBytes, TaskListener listener) {
+    List<Entry> found = new ArrayList<>();
+    File[] dirs = cachesDir.listFiles(File::isDirectory);
+    for (File dir : dirs == null ? new File[0] : dirs) {
+      File marker = new File(new File(dir, ".git"), MARKER_FILE);
+      if (marker.isFile()) {
+        found.add(new Entry(dir, marker, sizeOf(dir, marker.lastModified())));
+      }
+    }
+    found.sort(Comparator.comparingLong(Entry::getLastUsed).reversed());
+
+    long total = found.stream().mapToLong(Entry::getSizeBytes).sum();
+    List<Entry> kept = new ArrayList<>(found);
+    for (int i = found.size() - 1; i >= 0 && total > budgetBytes; i--) {
+      Entry entry = found.get(i);
+      if (delete(entry)) {
+        listener
+            .getLogger()
+            .format(
+                "Evicted the cache of %s (%d KiB)%n", entry.getRemote(), entry.sizeBytes / 1024);
+        total -= entry.sizeBytes;
+        kept.remove(entry);
+        evictions.incrementAndGet();
+      }
+    }
+    entries = Collections.unmodifiableList(kept);
+  }
+
+  /** Measures a cache repository, unless it was not used since it was last measured. */
+  private static long sizeOf(File dir, long lastUsed) {
+    Measured measured = sizes.get(dir.getName());
+    if (measured != null && measured.lastUsed == lastUsed) {
+      return measured.sizeBytes;
+    }
+    long sizeBytes = FileUtils.sizeOfDirectory(dir);
+    sizes.put(dir.getName(), new Measured(lastUsed, sizeBytes));
+    return sizeBytes;
+  }
+
+  private static boolean delete(Entry entry) {
+    GerritCacheLock cacheLock = GerritCacheLock.of(entry.cacheEntry);
+    if (!cacheLock.tryLockExclusively()) {
+      // In use, so not the least recently used anymore
+      return false;
+    }
+    try {
+      if (entry.marker.lastModified() != entry.lastUsed) {
+        return false;
+      }
+      FileUtils.deleteDirectory(entry.dir);
+      sizes.remove(entry.cacheEntry);
+      GerritCacheMaintenance.forget(entry.cacheEntry);
+      return true;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not evict the cache repository " + entry.dir, e);
+      return false;
+    } finally {
+      cacheLock.unlockExclusively();
+    }
+  }
+
+  private static class Measured {
+    private final long lastUsed;
+    private final long sizeBytes;
+
+    Measured(long lastUsed, long sizeBytes) {
+      this.lastUsed = lastUsed;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+
+  /** A cache repository of a Gerrit source. */
+  public static class Entry {
+    private final File dir;
+    private final File marker;
+    private final String cacheEntry;
+    private final String remote;
+    private final long sizeBytes;
+    private final long lastUsed;
+
+    Entry(File dir, File marker, long sizeBytes) {
+      this.dir = dir;
+      this.marker = marker;
+      this.cacheEntry = dir.getName();
+      this.lastUsed = marker.lastModified();
+      this.sizeBytes = sizeBytes;
+      String markedRemote;
+      try {
+        markedRemote = FileUtils.readFileToString(marker, StandardCharsets.UTF_8).trim();
+      } catch (IOException e) {
+        markedRemote = cacheEntry;
+      }
+      this.remote = markedRemote;
+    }
+
+    public String getCacheEntry() {
+      return cacheEntry;
+    }
+
+    public String getRemote() {
+      return remote;
+    }
+
+    public long getSizeBytes() {
+      return sizeBytes;
+    }
+
+    public long getLastUsed() {
+      return lastUsed;
+    }
+
+    /** The outcome of the last maintenance of the repository, if any since Jenkins started. */
+    @CheckForNull
+    public GerritCacheMaintenance.Result getMaintenance() {
+      return GerritCacheMaintenance.resultOf(cacheEntry);
+    }
+  }
+}
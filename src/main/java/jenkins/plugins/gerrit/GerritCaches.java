@@ -0,0 +1,75 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import java.util.List;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/** Shows how well the Gerrit caches perform, and lets admins clear them. */
+@Extension
+public class GerritCaches extends ManagementLink {
+
+  public GerritContentCache getContentCache() {
+    return GerritContentCache.get();
+  }
+
+  public List<GerritCacheRepositories.Entry> getRepositories() {
+    return GerritCacheRepositories.getEntries();
+  }
+
+  public long getRepositoriesDiskBytes() {
+    return GerritCacheRepositories.getDiskBytes();
+  }
+
+  public long getRepositoriesDiskBudget() {
+    return GerritCacheRepositories.getDiskBudget();
+  }
+
+  public long getRepositoriesEvictions() {
+    return GerritCacheRepositories.getEvictions();
+  }
+
+  @RequirePOST
+  public HttpResponse doClearContentCache() {
+    Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+    GerritContentCache.get().clear();
+    return HttpResponses.redirectToDot();
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "folder.png";
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Gerrit Caches";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Hit rates and sizes of the caches that spare Gerrit and git requests.";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "gerrit-caches";
+  }
+}
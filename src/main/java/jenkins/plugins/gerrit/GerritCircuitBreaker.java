@@ -0,0 +1,236 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending REST calls to a Gerrit server that keeps failing.
+ *
+ * <p>The breaker opens when the share of failed calls among the last ones reaches a threshold.
+ * While open, calls fail immediately with a {@link GerritUnavailableException}. Once the open
+ * period is over, a single probe call is let through: its success closes the breaker, its failure
+ * opens it again.
+ */
+public class GerritCircuitBreaker {
+  public static final int DEFAULT_FAILURE_RATE_PERCENT = 50;
+  public static final int DEFAULT_MINIMUM_CALLS = 10;
+  public static final int DEFAULT_OPEN_SECONDS = 30;
+
+  private static final int WINDOW_SIZE = 20;
+
+  private static final ConcurrentMap<String, GerritCircuitBreaker> breakers =
+      new ConcurrentHashMap<>();
+
+  private static volatile Settings settings =
+      new Settings(DEFAULT_FAILURE_RATE_PERCENT, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_SECONDS);
+
+  private static volatile StepPolicy stepPolicy = StepPolicy.FAIL_FAST;
+
+  /** What pipeline steps do when their Gerrit server is unavailable. */
+  public enum StepPolicy {
+    /** Fail the step straight away. */
+    FAIL_FAST,
+    /** Wait for the breaker to let calls through again, up to the step timeout, then retry. */
+    DEFER
+  }
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String server;
+  private final Settings limits;
+
+  private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+  private int calls;
+  private int failures;
+  private int next;
+
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private boolean probeInFlight;
+  private long probeStartedNanos;
+  private long timesOpened;
+  private long rejected;
+
+  GerritCircuitBreaker(String server, Settings limits) {
+    this.server = server;
+    this.limits = limits;
+  }
+
+  /** Applies new thresholds and closes all the breakers. */
+  public static void configure(
+      int failureRatePercent, int minimumCalls, int openSeconds, StepPolicy stepPolicy) {
+    settings = new Settings(failureRatePercent, minimumCalls, openSeconds);
+    GerritCircuitBreaker.stepPolicy = stepPolicy == null ? StepPolicy.FAIL_FAST : stepPolicy;
+    breakers.clear();
+  }
+
+  public static StepPolicy getStepPolicy() {
+    return stepPolicy;
+  }
+
+  /** Returns the breaker of a Gerrit server, identified by its scheme, host and port. */
+  public static GerritCircuitBreaker forServer(String server) {
+    return breakers.computeIfAbsent(server, s -> new GerritCircuitBreaker(s, settings));
+  }
+
+  /** The breakers used so far, ordered by server. */
+  public static Collection<GerritCircuitBreaker> all() {
+    List<GerritCircuitBreaker> all = new ArrayList<>(breakers.values());
+    all.sort(Comparator.comparing(GerritCircuitBreaker::getServer));
+    return all;
+  }
+
+  /**
+   * Admits a call, which should then be reported with {@link #onSuccess()}, {@link #onFailure()}
+   * or {@link #onCancel()}.
+   *
+   * @throws GerritUnavailableException if the breaker is open
+   */
+  public synchronized void beforeCall() throws GerritUnavailableException {
+    if (state == State.OPEN) {
+      long remainingNanos = openedAtNanos + openNanos() - System.nanoTime();
+      if (remainingNanos > 0) {
+        throw unavailable(remainingNanos);
+      }
+      state = State.HALF_OPEN;
+      probeInFlight = false;
+    }
+    if (state == State.HALF_OPEN) {
+      long now = System.nanoTime();
+      // A probe that was never reported, e.g. because it was aborted, does not block forever
+      if (probeInFlight && now - probeStartedNanos < openNanos()) {
+        throw unavailable(probeStartedNanos + openNanos() - now);
+      }
+      probeInFlight = true;
+      probeStartedNanos = now;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      close();
+    } else {
+      record(false);
+    }
+  }
+
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+      return;
+    }
+    record(true);
+    if (state == State.CLOSED
+        && calls >= limits.minimumCalls
+        && failures * 100 >= limits.failureRatePercent * calls) {
+      open();
+    }
+  }
+
+  /** Reports a call that ended without telling anything about the server health. */
+  public synchronized void onCancel() {
+    if (state == State.HALF_OPEN) {
+      probeInFlight = false;
+    }
+  }
+
+  private void record(boolean failure) {
+    if (calls == WINDOW_SIZE) {
+      if (outcomes[next]) {
+        failures--;
+      }
+    } else {
+      calls++;
+    }
+    outcomes[next] = failure;
+    if (failure) {
+      failures++;
+    }
+    next = (next + 1) % WINDOW_SIZE;
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAtNanos = System.nanoTime();
+    probeInFlight = false;
+    timesOpened++;
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    probeInFlight = false;
+    calls = 0;
+    failures = 0;
+    next = 0;
+  }
+
+  private long openNanos() {
+    return TimeUnit.SECONDS.toNanos(limits.openSeconds);
+  }
+
+  private GerritUnavailableException unavailable(long retryAfterNanos) {
+    rejected++;
+    return new GerritUnavailableException(
+        String.format("Gerrit server %s is unavailable after repeated failures", server),
+        Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos)));
+  }
+
+  public synchronized boolean isOpen() {
+    return state == State.OPEN && System.nanoTime() - openedAtNanos < openNanos();
+  }
+
+  public String getServer() {
+    return server;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized int getFailureRatePercent() {
+    return calls == 0 ? 0 : failures * 100 / calls;
+  }
+
+  public synchronized long getTimesOpened() {
+    return timesOpened;
+  }
+
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  static class Settings {
+    final int failureRatePercent;
+    final int minimumCalls;
+    final int openSeconds;
+
+    Settings(int failureRatePercent, int minimumCalls, int openSeconds) {
+      this.failureRatePercent = Math.max(1, Math.min(100, failureRatePercent));
+      this.minimumCalls = Math.max(1, Math.min(WINDOW_SIZE, minimumCalls));
+      this.openSeconds = Math.max(1, openSeconds);
+    }
+  }
+}
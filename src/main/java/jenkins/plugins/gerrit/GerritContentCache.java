@@ -0,0 +1,310 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Pipeline definition files, such as {@code Jenkinsfile}s and library scripts, shared by all the
+ * builds that load them, keyed by project and git blob id.
+ *
+ * <p>The most recently used contents are kept in memory, and all of them on disk under {@code
+ * JENKINS_HOME/caches/gerrit-content}. Both are bounded in bytes and evict the least recently used
+ * contents first.
+ *
+ * <p>Only the in-memory index is guarded by the cache monitor. Disk files are named by blob id and
+ * written atomically, so they are read, written and evicted outside of it.
+ */
+public class GerritContentCache {
+  private static final Logger LOGGER = Logger.getLogger(GerritContentCache.class.getName());
+
+  static final long DEFAULT_MEMORY_BYTES = 16L * 1024 * 1024;
+  static final long DEFAULT_DISK_BYTES = 256L * 1024 * 1024;
+
+  private static volatile GerritContentCache instance;
+
+  @CheckForNull private final File dir;
+  private final long memoryBudget;
+  private final long diskBudget;
+
+  private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes;
+  /** Bytes of the cached files, or -1 until they are first counted. */
+  private final AtomicLong diskBytes = new AtomicLong(-1);
+
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder diskHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  GerritContentCache(@CheckForNull File dir, long memoryBudget, long diskBudget) {
+    this.dir = dir;
+    this.memoryBudget = Math.max(0, memoryBudget);
+    this.diskBudget = Math.max(0, diskBudget);
+  }
+
+  /** The cache shared by all the builds, on disk when Jenkins is running. */
+  public static GerritContentCache get() {
+    GerritContentCache cache = instance;
+    if (cache == null) {
+      synchronized (GerritContentCache.class) {
+        cache = instance;
+        if (cache == null) {
+          Jenkins jenkins = Jenkins.getInstanceOrNull();
+          File dir =
+              jenkins == null ? null : new File(jenkins.getRootDir(), "caches/gerrit-content");
+          cache =
+              new GerritContentCache(
+                  dir,
+                  Long.getLong("gerrit.contentCache.memoryBytes", DEFAULT_MEMORY_BYTES),
+                  Long.getLong("gerrit.contentCache.diskBytes", DEFAULT_DISK_BYTES));
+          instance = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  /** Computes the git blob id of a content, as git would store it. */
+  public static String blobId(byte[] content) {
+    return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, content).name();
+  }
+
+  /** Returns the content of a blob, or {@code null} when it is not cached. */
+  @CheckForNull
+  public byte[] get(String project, String blobId) {
+    String key = key(project, blobId);
+    byte[] content;
+    synchronized (this) {
+      content = memory.get(key);
+    }
+    if (content != null) {
+      memoryHits.increment();
+      return content;
+    }
+    File file = file(project, blobId);
+    if (file != null && file.isFile()) {
+      try {
+        content = Files.readAllBytes(file.toPath());
+        if (blobId.equals(blobId(content))) {
+          file.setLastModified(System.currentTimeMillis());
+          diskHits.increment();
+          remember(key, content);
+          return content;
+        }
+        LOGGER.log(Level.WARNING, "Dropping corrupted cached content {0}", file);
+        deleteFromDisk(file);
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "Unable to read cached content " + file, e);
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /** Caches a content read from git or from the REST API. */
+  public void put(String project, String blobId, byte[] content) {
+    remember(key(project, blobId), content);
+    File file = file(project, blobId);
+    if (file == null || file.isFile() || content.length > diskBudget) {
+      return;
+    }
+    diskBytes();
+    try {
+      Util.createDirs(file.getParentFile());
+      File tmp = File.createTempFile(blobId, ".tmp", file.getParentFile());
+      Files.write(tmp.toPath(), content);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      if (diskBytes.addAndGet(content.length) > diskBudget) {
+        evictFromDisk();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Unable to cache content " + file, e);
+    }
+  }
+
+  /** Drops all the cached contents and resets the statistics. */
+  public void clear() {
+    synchronized (this) {
+      memory.clear();
+      memoryBytes = 0;
+    }
+    if (dir != null) {
+      try {
+        Util.deleteRecursive(dir);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to delete " + dir, e);
+      }
+    }
+    diskBytes.set(0);
+    memoryHits.reset();
+    diskHits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  private synchronized void remember(String key, byte[] content) {
+    if (content.length > memoryBudget) {
+      return;
+    }
+    byte[] previous = memory.put(key, content);
+    memoryBytes += content.length - (previous == null ? 0 : previous.length);
+    Iterator<byte[]> eldest = memory.values().iterator();
+    while (memoryBytes > memoryBudget && eldest.hasNext()) {
+      memoryBytes -= eldest.next().length;
+      eldest.remove();
+      evictions.increment();
+    }
+  }
+
+  private long diskBytes() {
+    long bytes = diskBytes.get();
+    if (bytes < 0) {
+      bytes = sizeOf(cachedFiles());
+      diskBytes.compareAndSet(-1, bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Deletes the least recently used files down to 90% of the budget, and recounts the bytes on
+   * disk. Only one thread evicts at a time, the others leave it to it.
+   */
+  private void evictFromDisk() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      File[] files = cachedFiles();
+      long bytes = sizeOf(files);
+      Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+      long target = diskBudget / 10 * 9;
+      for (File file : files) {
+        if (bytes <= target) {
+          break;
+        }
+        long length = file.length();
+        if (file.delete()) {
+          bytes -= length;
+          evictions.increment();
+        }
+      }
+      diskBytes.set(bytes);
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private void deleteFromDisk(File file) {
+    long length = file.length();
+    if (file.delete()) {
+      diskBytes.updateAndGet(bytes -> bytes < 0 ? bytes : Math.max(0, bytes - length));
+    }
+  }
+
+  private static long sizeOf(File[] files) {
+    long bytes = 0;
+    for (File file : files) {
+      bytes += file.length();
+    }
+    return bytes;
+  }
+
+  private File[] cachedFiles() {
+    if (dir == null) {
+      return new File[0];
+    }
+    File[] projects = dir.listFiles(File::isDirectory);
+    if (projects == null) {
+      return new File[0];
+    }
+    return Arrays.stream(projects)
+        .map(project -> project.listFiles(file -> !file.getName().endsWith(".tmp")))
+        .filter(files -> files != null)
+        .flatMap(Arrays::stream)
+        .toArray(File[]::new);
+  }
+
+  @CheckForNull
+  private File file(String project, String blobId) {
+    return dir == null ? null : new File(new File(dir, Util.getDigestOf(project)), blobId);
+  }
+
+  private static String key(String project, String blobId) {
+    return project + ":" + blobId;
+  }
+
+  public long getMemoryHits() {
+    return memoryHits.sum();
+  }
+
+  public long getDiskHits() {
+    return diskHits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** The share of lookups served from memory or disk. */
+  public int getHitRatePercent() {
+    long hits = memoryHits.sum() + diskHits.sum();
+    long lookups = hits + misses.sum();
+    return lookups == 0 ? 0 : (int) (hits * 100 / lookups);
+  }
+
+  public synchronized int getMemoryEntries() {
+    return memory.size();
+  }
+
+  public synchronized long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  public long getDiskBytes() {
+    return diskBytes();
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public long getDiskBudget() {
+    return diskBudget;
+  }
+}
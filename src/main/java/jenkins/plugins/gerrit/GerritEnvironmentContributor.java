@@ -22,103 +22,162 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.model.EnvironmentContributor;
 import hudson.model.InvisibleAction;
-import hudson.model.ItemGroup;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import jenkins.branch.BranchSource;
+import jenkins.scm.api.SCMHead;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 
 @Extension
 public class GerritEnvironmentContributor extends EnvironmentContributor {
+  private static final Logger LOGGER =
+      Logger.getLogger(GerritEnvironmentContributor.class.getName());
 
   private static final Pattern REF_PATTERN =
       Pattern.compile("^\\d+\\/(?<changeNum>\\d+)\\/(?<patchSet>\\d+)$");
 
   public static class ChangeInfoInvisibleAction extends InvisibleAction {
-    private final Map<String, String> changeEnvs;
+    private static final long PREFETCH_TIMEOUT_SECONDS =
+        Long.getLong("gerrit.change.prefetch.timeout", 60);
+
+    private Map<String, String> changeEnvs;
+    private transient Future<Map<String, String>> pendingChangeEnvs;
 
     ChangeInfoInvisibleAction(
         Optional<ChangeInfo> maybeChangeInfo, int patchSetNum, GerritURI gerritURI) {
-      changeEnvs = new HashMap<>();
-
-      maybeChangeInfo.ifPresent(
-          (change) -> {
-            changeEnvs.put("GERRIT_CHANGE_NUMBER", Integer.toString(change._number));
-            changeEnvs.put("GERRIT_PATCHSET_NUMBER", Integer.toString(patchSetNum));
-            changeEnvs.put(
-                "GERRIT_CHANGE_PRIVATE_STATE",
-                change.isPrivate != null ? Boolean.toString(change.isPrivate) : "false");
-            changeEnvs.put(
-                "GERRIT_CHANGE_WIP_STATE",
-                change.workInProgress != null ? Boolean.toString(change.workInProgress) : "false");
-            changeEnvs.put("GERRIT_CHANGE_SUBJECT", change.subject);
-            changeEnvs.put(
-                "GERRIT_CHANGE_URL", gerritURI.setPath("" + change._number).toASCIIString());
-            changeEnvs.put("GERRIT_BRANCH", change.branch);
-            changeEnvs.put("GERRIT_TOPIC", Strings.nullToEmpty(change.topic));
-            changeEnvs.put("GERRIT_CHANGE_ID", change.id);
-            changeEnvs.put("GERRIT_REVERTED_CHANGE_NUMBER", integerString(change.revertOf));
-
-            Map.Entry<String, RevisionInfo> patchSetInfo =
-                change
-                    .revisions
-                    .entrySet()
-                    .stream()
-                    .filter(entry -> entry.getValue()._number == patchSetNum)
-                    .findFirst()
-                    .get();
-
-            changeEnvs.put("GERRIT_REFNAME", patchSetInfo.getValue().ref);
-            changeEnvs.put("GERRIT_REFSPEC", patchSetInfo.getValue().ref);
-            Optional.ofNullable(patchSetInfo.getValue().kind)
-                .ifPresent(kind -> changeEnvs.put("GERRIT_PATCHSET_KIND", kind.toString()));
-            changeEnvs.put("GERRIT_PATCHSET_REVISION", patchSetInfo.getKey());
-            changeEnvs.put(
-                "GERRIT_CHANGE_OWNER", change.owner.name + " <" + change.owner.email + ">");
-            changeEnvs.put("GERRIT_CHANGE_OWNER_NAME", change.owner.name);
-            changeEnvs.put("GERRIT_CHANGE_OWNER_EMAIL", change.owner.email);
-
-            AccountInfo uploader = patchSetInfo.getValue().uploader;
-            changeEnvs.put("GERRIT_PATCHSET_UPLOADER", uploader.name + " <" + uploader.email + ">");
-            changeEnvs.put("GERRIT_PATCHSET_UPLOADER_NAME", uploader.name);
-            changeEnvs.put("GERRIT_PATCHSET_UPLOADER_EMAIL", uploader.email);
-          });
+      this(
+          maybeChangeInfo
+              .map(change -> changeEnvsOf(change, patchSetNum, gerritURI))
+              .orElseGet(HashMap::new));
+    }
+
+    ChangeInfoInvisibleAction(Map<String, String> changeEnvs) {
+      this.changeEnvs = new HashMap<>(changeEnvs);
+    }
+
+    /**
+     * Create an action whose change environment is still being fetched.
+     *
+     * @param pendingChangeEnvs the asynchronous fetch of the change environment.
+     */
+    ChangeInfoInvisibleAction(Future<Map<String, String>> pendingChangeEnvs) {
+      this.pendingChangeEnvs = pendingChangeEnvs;
     }
 
-    public Map<String, String> getChangeEnvs() {
+    /**
+     * Get the change environment variables, waiting for a pending fetch to complete.
+     *
+     * @return the GERRIT_* variables or an empty map if they could not be fetched.
+     */
+    public synchronized Map<String, String> getChangeEnvs() {
+      if (changeEnvs == null) {
+        changeEnvs = awaitChangeEnvs();
+        pendingChangeEnvs = null;
+      }
       return changeEnvs;
     }
+
+    synchronized void cancel() {
+      if (pendingChangeEnvs != null) {
+        pendingChangeEnvs.cancel(true);
+      }
+    }
+
+    private Map<String, String> awaitChangeEnvs() {
+      if (pendingChangeEnvs == null) {
+        return new HashMap<>();
+      }
+      try {
+        return new HashMap<>(pendingChangeEnvs.get(PREFETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException | CancellationException e) {
+        LOGGER.log(Level.WARNING, "Unable to prefetch the Gerrit change details", e);
+      }
+      return new HashMap<>();
+    }
+  }
+
+  /**
+   * Compute the GERRIT_* variables of a patch-set.
+   *
+   * @param change the change, with at least the revision of the patch-set and detailed accounts.
+   * @param patchSetNum the patch-set number.
+   * @param gerritURI the Gerrit URI used to build the change URL.
+   * @return the change environment variables.
+   */
+  static Map<String, String> changeEnvsOf(ChangeInfo change, int patchSetNum, GerritURI gerritURI) {
+    Map<String, String> changeEnvs = new HashMap<>();
+    changeEnvs.put("GERRIT_CHANGE_NUMBER", Integer.toString(change._number));
+    changeEnvs.put("GERRIT_PATCHSET_NUMBER", Integer.toString(patchSetNum));
+    changeEnvs.put(
+        "GERRIT_CHANGE_PRIVATE_STATE",
+        change.isPrivate != null ? Boolean.toString(change.isPrivate) : "false");
+    changeEnvs.put(
+        "GERRIT_CHANGE_WIP_STATE",
+        change.workInProgress != null ? Boolean.toString(change.workInProgress) : "false");
+    changeEnvs.put("GERRIT_CHANGE_SUBJECT", change.subject);
+    changeEnvs.put("GERRIT_CHANGE_URL", gerritURI.setPath("" + change._number).toASCIIString());
+    changeEnvs.put("GERRIT_BRANCH", change.branch);
+    changeEnvs.put("GERRIT_TOPIC", Strings.nullToEmpty(change.topic));
+    changeEnvs.put("GERRIT_CHANGE_ID", change.id);
+    changeEnvs.put("GERRIT_REVERTED_CHANGE_NUMBER", integerString(change.revertOf));
+
+    Map.Entry<String, RevisionInfo> patchSetInfo =
+        change
+            .revisions
+            .entrySet()
+            .stream()
+            .filter(entry -> entry.getValue()._number == patchSetNum)
+            .findFirst()
+            .get();
+
+    changeEnvs.put("GERRIT_REFNAME", patchSetInfo.getValue().ref);
+    changeEnvs.put("GERRIT_REFSPEC", patchSetInfo.getValue().ref);
+    Optional.ofNullable(patchSetInfo.getValue().kind)
+        .ifPresent(kind -> changeEnvs.put("GERRIT_PATCHSET_KIND", kind.toString()));
+    changeEnvs.put("GERRIT_PATCHSET_REVISION", patchSetInfo.getKey());
+    changeEnvs.put("GERRIT_CHANGE_OWNER", change.owner.name + " <" + change.owner.email + ">");
+    changeEnvs.put("GERRIT_CHANGE_OWNER_NAME", change.owner.name);
+    changeEnvs.put("GERRIT_CHANGE_OWNER_EMAIL", change.owner.email);
+
+    AccountInfo uploader = patchSetInfo.getValue().uploader;
+    changeEnvs.put("GERRIT_PATCHSET_UPLOADER", uploader.name + " <" + uploader.email + ">");
+    changeEnvs.put("GERRIT_PATCHSET_UPLOADER_NAME", uploader.name);
+    changeEnvs.put("GERRIT_PATCHSET_UPLOADER_EMAIL", uploader.email);
+    return changeEnvs;
   }
 
   @Override
   public void buildEnvironmentFor(
       @Nonnull Run r, @Nonnull EnvVars envs, @Nonnull TaskListener listener)
       throws IOException, InterruptedException {
-    ItemGroup jobParent = r.getParent().getParent();
-    if (!(jobParent instanceof WorkflowMultiBranchProject)) {
-      return;
-    }
-
-    WorkflowMultiBranchProject multiBranchProject = (WorkflowMultiBranchProject) jobParent;
-    List<BranchSource> sources = multiBranchProject.getSources();
-    if (sources.isEmpty() || !(sources.get(0).getSource() instanceof GerritSCMSource)) {
+    GerritSCMSource gerritSCMSource = getGerritSCMSource(r.getParent());
+    if (gerritSCMSource == null) {
       return;
     }
 
     WorkflowJob workflowJob = (WorkflowJob) r.getParent();
-
-    GerritSCMSource gerritSCMSource =
-        (GerritSCMSource) multiBranchProject.getSources().get(0).getSource();
     GerritURI gerritURI = gerritSCMSource.getGerritURI();
 
     envs.put("GERRIT_CREDENTIALS_ID", gerritSCMSource.getCredentialsId());
@@ -135,26 +194,64 @@ public class GerritEnvironmentContributor extends EnvironmentContributor {
     String displayName = workflowJob.getDisplayName();
     Matcher matcher = REF_PATTERN.matcher(displayName);
     if (matcher.find()) {
+      int changeNumber = Integer.parseInt(matcher.group("changeNum"));
       int patchSetNum = Integer.parseInt(matcher.group("patchSet"));
 
-      Map<String, String> changeEnvs;
-      List<ChangeInfoInvisibleAction> changeInfos = r.getActions(ChangeInfoInvisibleAction.class);
-      if (changeInfos.isEmpty()) {
-        int changeNumber = Integer.parseInt(matcher.group("changeNum"));
-        Optional<ChangeInfo> changeInfo =
-            gerritSCMSource.getChangeInfo(changeNumber, gerritURI.getProject());
-        ChangeInfoInvisibleAction changeInfoAction =
-            new ChangeInfoInvisibleAction(changeInfo, patchSetNum, gerritURI);
-        r.addAction(changeInfoAction);
+      ChangeInfoInvisibleAction changeInfoAction = r.getAction(ChangeInfoInvisibleAction.class);
+      Map<String, String> changeEnvs =
+          changeInfoAction == null ? Collections.emptyMap() : changeInfoAction.getChangeEnvs();
+      if (changeEnvs.isEmpty()) {
+        SCMHead head = SCMHead.HeadByItem.findHead(workflowJob);
+        Map<String, String> scannedChangeEnvs = getScannedChangeEnvs(head, patchSetNum);
+        if (scannedChangeEnvs.isEmpty()) {
+          Optional<ChangeInfo> changeInfo =
+              gerritSCMSource.getChangeInfo(changeNumber, gerritURI.getProject());
+          changeInfoAction = new ChangeInfoInvisibleAction(changeInfo, patchSetNum, gerritURI);
+        } else {
+          changeInfoAction = new ChangeInfoInvisibleAction(scannedChangeEnvs);
+        }
+        r.replaceAction(changeInfoAction);
         changeEnvs = changeInfoAction.getChangeEnvs();
-      } else {
-        changeEnvs = changeInfos.get(0).getChangeEnvs();
       }
 
       envs.putAll(changeEnvs);
     }
   }
 
+  /**
+   * Get the Gerrit source of a multi-branch pipeline job.
+   *
+   * @param job the job.
+   * @return the Gerrit source or null if the job is not a branch of a Gerrit multi-branch project.
+   */
+  @CheckForNull
+  static GerritSCMSource getGerritSCMSource(Job<?, ?> job) {
+    if (!(job instanceof WorkflowJob) || !(job.getParent() instanceof WorkflowMultiBranchProject)) {
+      return null;
+    }
+
+    List<BranchSource> sources = ((WorkflowMultiBranchProject) job.getParent()).getSources();
+    if (sources.isEmpty() || !(sources.get(0).getSource() instanceof GerritSCMSource)) {
+      return null;
+    }
+    return (GerritSCMSource) sources.get(0).getSource();
+  }
+
+  /**
+   * Get the change environment captured when the head was discovered.
+   *
+   * @param head the head of the job.
+   * @param patchSetNum the patch-set number of the build.
+   * @return the GERRIT_* variables or an empty map if the head has none for the patch-set.
+   */
+  static Map<String, String> getScannedChangeEnvs(SCMHead head, int patchSetNum) {
+    if (head instanceof ChangeSCMHead
+        && ((ChangeSCMHead) head).getPatchSetNumber() == patchSetNum) {
+      return ((ChangeSCMHead) head).getChangeEnvs();
+    }
+    return Collections.emptyMap();
+  }
+
   private String booleanString(Boolean booleanValue) {
     return Optional.ofNullable(booleanValue).orElse(Boolean.FALSE).toString();
   }
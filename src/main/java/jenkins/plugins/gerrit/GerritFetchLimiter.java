@@ -0,0 +1,244 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.model.TaskListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Jenkins-wide limit on the git fetches of the cache repositories running at the same time, so
+ * that the scans started together, e.g. at startup or when an organization folder is indexed, do
+ * not saturate the controller and the Gerrit servers.
+ *
+ * <p>The fetches waiting for a slot queue by Gerrit server. Each server is served in order of
+ * arrival, and the free slots go round-robin to the servers with fetches waiting, so that a server
+ * with many projects does not hold back the others.
+ */
+public class GerritFetchLimiter {
+  public static final int DEFAULT_MAX_CONCURRENT_FETCHES = 4;
+
+  private static final GerritFetchLimiter limiter =
+      new GerritFetchLimiter(DEFAULT_MAX_CONCURRENT_FETCHES);
+
+  private final Map<String, Server> servers = new HashMap<>();
+  private final Deque<Server> waitingServers = new ArrayDeque<>();
+
+  private int maxConcurrent;
+  private int running;
+
+  GerritFetchLimiter(int maxConcurrent) {
+    this.maxConcurrent = maxConcurrent;
+  }
+
+  public static GerritFetchLimiter get() {
+    return limiter;
+  }
+
+  /**
+   * Applies a new limit, 0 for no limit. Fetches already running keep their slots, and the fetches
+   * waiting get the slots the new limit frees.
+   */
+  public static void configure(int maxConcurrentFetches) {
+    limiter.setMaxConcurrent(maxConcurrentFetches);
+  }
+
+  synchronized void setMaxConcurrent(int maxConcurrent) {
+    this.maxConcurrent = maxConcurrent;
+    grantFreeSlots();
+  }
+
+  /**
+   * Waits for a fetch slot, and logs how long it took. The returned slot must be closed once the
+   * fetch completes.
+   *
+   * @param server the Gerrit server fetched from, identified by its scheme, host and port
+   */
+  public Slot acquire(String server, TaskListener listener) throws InterruptedException {
+    long start = System.nanoTime();
+    Waiter waiter = new Waiter();
+    Server queue;
+    long waited;
+    String usage;
+    synchronized (this) {
+      queue = servers.computeIfAbsent(server, Server::new);
+      if (queue.waiters.isEmpty()) {
+        waitingServers.add(queue);
+      }
+      queue.waiters.add(waiter);
+      grantFreeSlots();
+      try {
+        while (!waiter.granted) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        if (waiter.granted) {
+          release();
+        } else {
+          queue.waiters.remove(waiter);
+          if (queue.waiters.isEmpty()) {
+            waitingServers.remove(queue);
+          }
+        }
+        throw e;
+      }
+
+      waited = System.nanoTime() - start;
+      queue.running++;
+      queue.fetches++;
+      queue.totalWaitNanos += waited;
+      queue.maxWaitNanos = Math.max(queue.maxWaitNanos, waited);
+      usage = maxConcurrent > 0 ? running + " of " + maxConcurrent + " in use" : "no limit";
+    }
+    listener
+        .getLogger()
+        .format(
+            "Waited %d ms for a git fetch slot (%s)%n",
+            TimeUnit.NANOSECONDS.toMillis(waited),
+            usage);
+    return () -> {
+      synchronized (this) {
+        queue.running--;
+        release();
+      }
+    };
+  }
+
+  /** Identifies the Gerrit server of a remote by its scheme, host and port. */
+  public static String serverOf(URIish remote) {
+    String scheme = remote.getScheme() == null ? "ssh" : remote.getScheme();
+    String host = remote.getHost() == null ? "local" : remote.getHost();
+    return scheme + "://" + host + (remote.getPort() > 0 ? ":" + remote.getPort() : "");
+  }
+
+  private void release() {
+    running--;
+    grantFreeSlots();
+  }
+
+  /** Gives the free slots round-robin to the servers, to their oldest fetch waiting. */
+  private void grantFreeSlots() {
+    boolean granted = false;
+    while (!waitingServers.isEmpty() && (maxConcurrent <= 0 || running < maxConcurrent)) {
+      Server next = waitingServers.poll();
+      next.waiters.poll().granted = true;
+      running++;
+      granted = true;
+      if (!next.waiters.isEmpty()) {
+        waitingServers.add(next);
+      }
+    }
+    if (granted) {
+      notifyAll();
+    }
+  }
+
+  /** The statistics of the servers fetched from so far, ordered by server. */
+  public Collection<Stats> all() {
+    List<Stats> all = new ArrayList<>();
+    synchronized (this) {
+      for (Server server : servers.values()) {
+        all.add(new Stats(server));
+      }
+    }
+    all.sort(Comparator.comparing(Stats::getServer));
+    return all;
+  }
+
+  public synchronized int getRunning() {
+    return running;
+  }
+
+  public synchronized int getQueued() {
+    return servers.values().stream().mapToInt(server -> server.waiters.size()).sum();
+  }
+
+  /** A fetch slot, released when closed. */
+  public interface Slot extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /** The queue-wait statistics of the fetches from a Gerrit server. */
+  public static class Stats {
+    private final String server;
+    private final long fetches;
+    private final int running;
+    private final int queued;
+    private final long averageWaitMillis;
+    private final long maxWaitMillis;
+
+    Stats(Server server) {
+      this.server = server.name;
+      this.fetches = server.fetches;
+      this.running = server.running;
+      this.queued = server.waiters.size();
+      this.averageWaitMillis =
+          server.fetches == 0
+              ? 0
+              : TimeUnit.NANOSECONDS.toMillis(server.totalWaitNanos / server.fetches);
+      this.maxWaitMillis = TimeUnit.NANOSECONDS.toMillis(server.maxWaitNanos);
+    }
+
+    public String getServer() {
+      return server;
+    }
+
+    public long getFetches() {
+      return fetches;
+    }
+
+    public int getRunning() {
+      return running;
+    }
+
+    public int getQueued() {
+      return queued;
+    }
+
+    public long getAverageWaitMillis() {
+      return averageWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+  }
+
+  private static class Server {
+    private final String name;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private int running;
+    private long fetches;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    Server(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class Waiter {
+    private boolean granted;
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Extension;
+import java.util.Collection;
+import jenkins.model.GlobalConfiguration;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Global configuration of the {@link GerritFetchLimiter} limit on the git fetches of the scans,
+ * with its current statistics.
+ */
+@Extension
+@Symbol("gerritFetchLimits")
+public class GerritFetchLimits extends GlobalConfiguration {
+  private int maxConcurrentFetches = GerritFetchLimiter.DEFAULT_MAX_CONCURRENT_FETCHES;
+
+  public GerritFetchLimits() {
+    load();
+    apply();
+  }
+
+  public int getMaxConcurrentFetches() {
+    return maxConcurrentFetches;
+  }
+
+  @DataBoundSetter
+  public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+    this.maxConcurrentFetches = maxConcurrentFetches;
+  }
+
+  public Collection<GerritFetchLimiter.Stats> getFetches() {
+    return GerritFetchLimiter.get().all();
+  }
+
+  @Override
+  public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+    req.bindJSON(this, json);
+    save();
+    apply();
+    return true;
+  }
+
+  private void apply() {
+    GerritFetchLimiter.configure(maxConcurrentFetches);
+  }
+}
@@ -18,12 +18,20 @@ public class GerritProjectEvent {
   public final GerritProjectName project;
   public final RefUpdateProjectName refUpdate;
   public final String type;
+  /** Set by the project lifecycle events, e.g. project-created. */
+  public final String projectName;
 
   public GerritProjectEvent(
       GerritProjectName project, RefUpdateProjectName refUpdate, String type) {
+    this(project, refUpdate, type, null);
+  }
+
+  public GerritProjectEvent(
+      GerritProjectName project, RefUpdateProjectName refUpdate, String type, String projectName) {
     this.project = project;
     this.refUpdate = refUpdate;
     this.type = type;
+    this.projectName = projectName;
   }
 
   public String getProjectName() {
@@ -33,7 +41,7 @@ public class GerritProjectEvent {
     if (refUpdate != null) {
       return refUpdate.project;
     }
-    return null;
+    return projectName;
   }
 
   @Override
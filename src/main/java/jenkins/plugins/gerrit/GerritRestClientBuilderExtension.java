@@ -0,0 +1,361 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.urswolfer.gerrit.client.rest.GerritAuthData;
+import com.urswolfer.gerrit.client.rest.http.HttpClientBuilderExtension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Applies the Jenkins-wide REST policies to every request of the Gerrit clients: the {@link
+ * GerritRestLimiter} and the {@link GerritCircuitBreaker} of the target server, and retries with
+ * jittered exponential backoff.
+ *
+ * <p>Failed idempotent requests are retried on I/O errors, any request is retried when Gerrit
+ * answers 429 or 503 because it was not processed. Nothing is retried while the breaker is open.
+ */
+class GerritRestClientBuilderExtension extends HttpClientBuilderExtension {
+  static final int DEFAULT_MAX_RETRIES = 3;
+
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final long BASE_BACKOFF_MILLIS = 500;
+  private static final long MAX_BACKOFF_MILLIS = 10_000;
+  private static final String PENDING_BREAKER = "gerrit.circuitBreaker";
+  private static final String LIMIT_EXCEEDED = "gerrit.limitExceeded";
+  private static final String PENDING_PERMIT = "gerrit.restPermit";
+
+  static final GerritRestClientBuilderExtension INSTANCE = new GerritRestClientBuilderExtension();
+
+  static final HttpRequestInterceptor ADMISSION = new Admission();
+  static final HttpResponseInterceptor RESPONSE_CHECK = new ResponseCheck();
+  static final HttpRequestExecutor REQUEST_EXECUTOR = new GuardedRequestExecutor();
+  static final HttpRequestRetryHandler RETRY_HANDLER = new BackoffRetryHandler();
+  static final ServiceUnavailableRetryStrategy SERVICE_UNAVAILABLE_RETRY =
+      new BackoffServiceUnavailableRetryStrategy();
+
+  private static volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+  static void configureRetries(int maxRetries) {
+    GerritRestClientBuilderExtension.maxRetries = Math.max(0, maxRetries);
+  }
+
+  @Override
+  public HttpClientBuilder extend(HttpClientBuilder httpClientBuilder, GerritAuthData authData) {
+    HttpClientBuilder builder = super.extend(httpClientBuilder, authData);
+    builder
+        .addInterceptorLast(ADMISSION)
+        .addInterceptorLast(RESPONSE_CHECK)
+        .setRequestExecutor(REQUEST_EXECUTOR)
+        .setRetryHandler(RETRY_HANDLER)
+        .setServiceUnavailableRetryStrategy(SERVICE_UNAVAILABLE_RETRY);
+    return builder;
+  }
+
+  private static String server(HttpContext context) {
+    HttpHost target = HttpCoreContext.adapt(context).getTargetHost();
+    return target == null ? "unknown" : target.toURI();
+  }
+
+  /**
+   * Reports the outcome of the call admitted by {@link Admission}: {@code null} when it tells
+   * nothing about the server health.
+   */
+  private static void report(HttpContext context, Boolean failure) {
+    Object breaker = context.removeAttribute(PENDING_BREAKER);
+    if (!(breaker instanceof GerritCircuitBreaker)) {
+      return;
+    }
+    if (failure == null) {
+      ((GerritCircuitBreaker) breaker).onCancel();
+    } else if (failure) {
+      ((GerritCircuitBreaker) breaker).onFailure();
+    } else {
+      ((GerritCircuitBreaker) breaker).onSuccess();
+    }
+  }
+
+  /** Gives back the limiter permit of the current attempt, if it still holds one. */
+  private static void releasePermit(HttpContext context) {
+    Object permit = context.removeAttribute(PENDING_PERMIT);
+    if (permit instanceof OncePermit) {
+      ((OncePermit) permit).close();
+    }
+  }
+
+  private static boolean isServerFailure(int status) {
+    return status == SC_TOO_MANY_REQUESTS
+        || status == HttpStatus.SC_INTERNAL_SERVER_ERROR
+        || status == HttpStatus.SC_BAD_GATEWAY
+        || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+        || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+  }
+
+  private static boolean isCancellation(IOException exception) {
+    return exception instanceof InterruptedIOException
+        && !(exception instanceof SocketTimeoutException)
+        && !(exception instanceof ConnectTimeoutException);
+  }
+
+  /** A random time up to an exponentially growing bound, and at least the minimum given. */
+  private static long backoffMillis(int executionCount, long minMillis) {
+    long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(executionCount, 16));
+    long millis = Math.max(minMillis, ThreadLocalRandom.current().nextLong(bound + 1));
+    return Math.min(millis, MAX_BACKOFF_MILLIS);
+  }
+
+  /** Sleeps for the backoff time of an attempt, unless interrupted. */
+  private static boolean backoff(int executionCount, long minMillis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(backoffMillis(executionCount, minMillis));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Fails fast when the breaker of the target server is open, then waits for the rate limiter.
+   * Runs before a pooled connection is leased, so that waiting requests do not hold one.
+   */
+  private static class Admission implements HttpRequestInterceptor {
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws IOException {
+      releasePermit(context);
+      GerritCircuitBreaker breaker = GerritCircuitBreaker.forServer(server(context));
+      breaker.beforeCall();
+      context.setAttribute(PENDING_BREAKER, breaker);
+      GerritRestLimiter.Permit permit;
+      try {
+        permit = GerritRestLimiter.forServer(server(context)).acquire();
+      } catch (IOException e) {
+        report(context, null);
+        context.setAttribute(LIMIT_EXCEEDED, Boolean.TRUE);
+        throw e;
+      }
+      context.setAttribute(PENDING_PERMIT, new OncePermit(permit));
+    }
+  }
+
+  /**
+   * Reports the response status to the breaker and keeps the limiter permit of a successful
+   * response until its entity is consumed or closed. Error responses give it back at once, since
+   * callers often close them without reading the entity.
+   */
+  private static class ResponseCheck implements HttpResponseInterceptor {
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+      int status = response.getStatusLine().getStatusCode();
+      report(context, isServerFailure(status));
+      Object permit = context.getAttribute(PENDING_PERMIT);
+      HttpEntity entity = response.getEntity();
+      if (entity == null || status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+        releasePermit(context);
+      } else if (permit instanceof OncePermit) {
+        response.setEntity(new PermitReleasingEntity(entity, (OncePermit) permit));
+      }
+    }
+  }
+
+  /** Gives back the permit of an attempt that failed before its response could be read. */
+  private static class GuardedRequestExecutor extends HttpRequestExecutor {
+    @Override
+    public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+        throws IOException, HttpException {
+      try {
+        return super.execute(request, conn, context);
+      } catch (IOException | HttpException | RuntimeException e) {
+        releasePermit(context);
+        throw e;
+      }
+    }
+  }
+
+  /** A limiter permit that can be released from several places but only once. */
+  private static class OncePermit implements EofSensorWatcher {
+    private final GerritRestLimiter.Permit permit;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    OncePermit(GerritRestLimiter.Permit permit) {
+      this.permit = permit;
+    }
+
+    void close() {
+      if (released.compareAndSet(false, true)) {
+        permit.close();
+      }
+    }
+
+    @Override
+    public boolean eofDetected(InputStream wrapped) {
+      close();
+      return true;
+    }
+
+    @Override
+    public boolean streamClosed(InputStream wrapped) {
+      close();
+      return true;
+    }
+
+    @Override
+    public boolean streamAbort(InputStream wrapped) {
+      close();
+      return true;
+    }
+  }
+
+  /** Releases the limiter permit when the response content is fully read, closed or aborted. */
+  private static class PermitReleasingEntity extends HttpEntityWrapper {
+    private final OncePermit permit;
+
+    PermitReleasingEntity(HttpEntity entity, OncePermit permit) {
+      super(entity);
+      this.permit = permit;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      try {
+        return new EofSensorInputStream(super.getContent(), permit);
+      } catch (IOException | RuntimeException e) {
+        permit.close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+      try {
+        super.writeTo(outStream);
+      } finally {
+        permit.close();
+      }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void consumeContent() throws IOException {
+      try {
+        super.consumeContent();
+      } finally {
+        permit.close();
+      }
+    }
+  }
+
+  /** Reports connection and I/O errors to the breaker, then retries idempotent requests. */
+  private static class BackoffRetryHandler extends StandardHttpRequestRetryHandler {
+    BackoffRetryHandler() {
+      super(Integer.MAX_VALUE, false);
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+      releasePermit(context);
+      report(context, isCancellation(exception) ? null : Boolean.TRUE);
+      return executionCount <= maxRetries
+          && !(exception instanceof GerritUnavailableException)
+          && context.getAttribute(LIMIT_EXCEEDED) == null
+          && !GerritCircuitBreaker.forServer(server(context)).isOpen()
+          && super.retryRequest(exception, executionCount, context)
+          && backoff(executionCount, 0);
+    }
+  }
+
+  /**
+   * Retries the requests that Gerrit did not process. The backoff is handed to the retry executor
+   * through {@link #getRetryInterval()}, which sleeps after closing the discarded response so that
+   * its connection goes back to the pool.
+   */
+  private static class BackoffServiceUnavailableRetryStrategy
+      implements ServiceUnavailableRetryStrategy {
+    /** The backoff of the retry just decided on this thread, as getRetryInterval has no context. */
+    private static final ThreadLocal<Long> retryInterval = new ThreadLocal<>();
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+      retryInterval.remove();
+      int status = response.getStatusLine().getStatusCode();
+      boolean retry =
+          (status == SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE)
+              && executionCount <= maxRetries
+              && isRepeatable(HttpCoreContext.adapt(context).getRequest())
+              && !GerritCircuitBreaker.forServer(server(context)).isOpen();
+      if (retry) {
+        retryInterval.set(backoffMillis(executionCount, retryAfterMillis(response)));
+      }
+      return retry;
+    }
+
+    @Override
+    public long getRetryInterval() {
+      Long millis = retryInterval.get();
+      retryInterval.remove();
+      return millis == null ? 0 : millis;
+    }
+
+    /** Whether the request can be sent again: the retry executor drops it silently otherwise. */
+    private static boolean isRepeatable(HttpRequest request) {
+      if (!(request instanceof HttpEntityEnclosingRequest)) {
+        return true;
+      }
+      HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      return entity == null || entity.isRepeatable();
+    }
+
+    private static long retryAfterMillis(HttpResponse response) {
+      Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+      if (retryAfter != null) {
+        try {
+          return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.getValue().trim()));
+        } catch (NumberFormatException e) {
+          // An HTTP date, fall back to the computed backoff
+        }
+      }
+      return 0;
+    }
+  }
+}
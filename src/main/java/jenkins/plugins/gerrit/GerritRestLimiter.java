@@ -0,0 +1,242 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Jenkins-wide limits on the REST calls made to a single Gerrit server: a token bucket caps the
+ * request rate and a semaphore the number of requests in flight, whether they come from scans,
+ * checks queries or pipeline steps.
+ */
+public class GerritRestLimiter {
+  public static final double DEFAULT_REQUESTS_PER_SECOND = 25;
+  public static final int DEFAULT_BURST = 50;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+  public static final int DEFAULT_MAX_WAIT_SECONDS = 120;
+
+  private static final int UNLIMITED_IN_FLIGHT = 1_000_000;
+
+  private static final ConcurrentMap<String, GerritRestLimiter> limiters =
+      new ConcurrentHashMap<>();
+
+  private static volatile Settings settings =
+      new Settings(
+          DEFAULT_REQUESTS_PER_SECOND,
+          DEFAULT_BURST,
+          DEFAULT_MAX_IN_FLIGHT,
+          DEFAULT_MAX_WAIT_SECONDS);
+
+  private final String server;
+  private final ResizableSemaphore inFlight;
+  private volatile Settings limits;
+
+  private double tokens;
+  private long lastRefillNanos;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  GerritRestLimiter(String server, Settings limits) {
+    this.server = server;
+    this.limits = limits;
+    this.inFlight = new ResizableSemaphore(capacity(limits));
+    this.tokens = limits.burst;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Applies new limits to the limiters in place, so that the requests in flight count against the
+   * new limits. Requests already waiting keep the maximum wait they started with.
+   */
+  public static void configure(
+      double requestsPerSecond, int burst, int maxInFlight, int maxWaitSeconds) {
+    settings = new Settings(requestsPerSecond, burst, maxInFlight, maxWaitSeconds);
+    for (GerritRestLimiter limiter : limiters.values()) {
+      limiter.apply(settings);
+    }
+  }
+
+  private synchronized void apply(Settings newLimits) {
+    inFlight.resize(capacity(limits), capacity(newLimits));
+    tokens = Math.min(tokens, newLimits.burst);
+    limits = newLimits;
+  }
+
+  private static int capacity(Settings limits) {
+    return limits.maxInFlight > 0 ? limits.maxInFlight : UNLIMITED_IN_FLIGHT;
+  }
+
+  /** Returns the limiter of a Gerrit server, identified by its scheme, host and port. */
+  public static GerritRestLimiter forServer(String server) {
+    return limiters.computeIfAbsent(server, s -> new GerritRestLimiter(s, settings));
+  }
+
+  /** The limiters used so far, ordered by server. */
+  public static Collection<GerritRestLimiter> all() {
+    List<GerritRestLimiter> all = new ArrayList<>(limiters.values());
+    all.sort(Comparator.comparing(GerritRestLimiter::getServer));
+    return all;
+  }
+
+  /**
+   * Waits for a rate token and a free in-flight slot. The returned permit must be closed once the
+   * request completes.
+   *
+   * @throws IOException if the request could not be admitted within the maximum wait time
+   */
+  public Permit acquire() throws IOException {
+    Settings limits = this.limits;
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(limits.maxWaitSeconds);
+    try {
+      long waitNanos = reserveToken();
+      if (waitNanos > 0) {
+        throttled.increment();
+        if (start + waitNanos > deadline) {
+          refundToken();
+          rejected.increment();
+          throw new IOException(
+              String.format(
+                  "Gerrit REST calls to %s are over the limit of %.1f requests/s",
+                  server, limits.requestsPerSecond));
+        }
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+      if (!inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        rejected.increment();
+        throw new IOException(
+            String.format(
+                "Gerrit REST calls to %s are over the limit of %d requests in flight",
+                server, limits.maxInFlight));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a Gerrit REST slot");
+    } finally {
+      long waited = System.nanoTime() - start;
+      requests.increment();
+      totalWaitNanos.add(waited);
+      maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+    return inFlight::release;
+  }
+
+  /**
+   * Takes a token from the bucket, possibly going into debt, and returns how long the caller has
+   * to wait for the token to be actually available.
+   */
+  private synchronized long reserveToken() {
+    if (limits.requestsPerSecond <= 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    tokens =
+        Math.min(
+            limits.burst, tokens + (now - lastRefillNanos) * limits.requestsPerSecond / 1e9);
+    lastRefillNanos = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / limits.requestsPerSecond * 1e9);
+  }
+
+  private synchronized void refundToken() {
+    tokens += 1;
+  }
+
+  public String getServer() {
+    return server;
+  }
+
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  public long getThrottled() {
+    return throttled.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public int getInFlight() {
+    return capacity(limits) - inFlight.availablePermits();
+  }
+
+  public int getQueued() {
+    return inFlight.getQueueLength();
+  }
+
+  public long getAverageWaitMillis() {
+    long count = requests.sum();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / count);
+  }
+
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  /** An admitted request, released when closed. */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /** A fair semaphore whose number of permits can change while some are held. */
+  private static class ResizableSemaphore extends Semaphore {
+    private static final long serialVersionUID = 1L;
+
+    ResizableSemaphore(int permits) {
+      super(permits, true);
+    }
+
+    void resize(int from, int to) {
+      if (to > from) {
+        release(to - from);
+      } else if (to < from) {
+        // Permits held above the new capacity are absorbed as they are released
+        reducePermits(from - to);
+      }
+    }
+  }
+
+  static class Settings {
+    final double requestsPerSecond;
+    final int burst;
+    final int maxInFlight;
+    final int maxWaitSeconds;
+
+    Settings(double requestsPerSecond, int burst, int maxInFlight, int maxWaitSeconds) {
+      this.requestsPerSecond = requestsPerSecond;
+      this.burst = Math.max(1, burst);
+      this.maxInFlight = maxInFlight;
+      this.maxWaitSeconds = Math.max(0, maxWaitSeconds);
+    }
+  }
+}
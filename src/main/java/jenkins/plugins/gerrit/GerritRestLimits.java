@@ -0,0 +1,150 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.Extension;
+import java.util.Collection;
+import jenkins.model.GlobalConfiguration;
+import jenkins.plugins.gerrit.GerritCircuitBreaker.StepPolicy;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Global configuration of the {@link GerritRestLimiter} limits, the {@link GerritCircuitBreaker}
+ * thresholds and the retries, with their current statistics.
+ */
+@Extension
+@Symbol("gerritRestLimits")
+public class GerritRestLimits extends GlobalConfiguration {
+  private double requestsPerSecond = GerritRestLimiter.DEFAULT_REQUESTS_PER_SECOND;
+  private int burst = GerritRestLimiter.DEFAULT_BURST;
+  private int maxInFlight = GerritRestLimiter.DEFAULT_MAX_IN_FLIGHT;
+  private int maxWaitSeconds = GerritRestLimiter.DEFAULT_MAX_WAIT_SECONDS;
+  private int maxRetries = GerritRestClientBuilderExtension.DEFAULT_MAX_RETRIES;
+  private int failureRatePercent = GerritCircuitBreaker.DEFAULT_FAILURE_RATE_PERCENT;
+  private int minimumCalls = GerritCircuitBreaker.DEFAULT_MINIMUM_CALLS;
+  private int openSeconds = GerritCircuitBreaker.DEFAULT_OPEN_SECONDS;
+  private StepPolicy stepPolicy = StepPolicy.FAIL_FAST;
+
+  public GerritRestLimits() {
+    load();
+    apply();
+  }
+
+  public double getRequestsPerSecond() {
+    return requestsPerSecond;
+  }
+
+  @DataBoundSetter
+  public void setRequestsPerSecond(double requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  @DataBoundSetter
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  @DataBoundSetter
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public int getMaxWaitSeconds() {
+    return maxWaitSeconds;
+  }
+
+  @DataBoundSetter
+  public void setMaxWaitSeconds(int maxWaitSeconds) {
+    this.maxWaitSeconds = maxWaitSeconds;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  @DataBoundSetter
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  public int getFailureRatePercent() {
+    return failureRatePercent;
+  }
+
+  @DataBoundSetter
+  public void setFailureRatePercent(int failureRatePercent) {
+    this.failureRatePercent = failureRatePercent;
+  }
+
+  public int getMinimumCalls() {
+    return minimumCalls;
+  }
+
+  @DataBoundSetter
+  public void setMinimumCalls(int minimumCalls) {
+    this.minimumCalls = minimumCalls;
+  }
+
+  public int getOpenSeconds() {
+    return openSeconds;
+  }
+
+  @DataBoundSetter
+  public void setOpenSeconds(int openSeconds) {
+    this.openSeconds = openSeconds;
+  }
+
+  public StepPolicy getStepPolicy() {
+    return stepPolicy;
+  }
+
+  @DataBoundSetter
+  public void setStepPolicy(StepPolicy stepPolicy) {
+    this.stepPolicy = stepPolicy;
+  }
+
+  public Collection<GerritCircuitBreaker> getBreakers() {
+    return GerritCircuitBreaker.all();
+  }
+
+  public Collection<GerritRestLimiter> getLimiters() {
+    return GerritRestLimiter.all();
+  }
+
+  @Override
+  public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+    req.bindJSON(this, json);
+    save();
+    apply();
+    return true;
+  }
+
+  private void apply() {
+    GerritRestLimiter.configure(requestsPerSecond, burst, maxInFlight, maxWaitSeconds);
+    GerritRestClientBuilderExtension.configureRetries(maxRetries);
+    GerritCircuitBreaker.configure(failureRatePercent, minimumCalls, openSeconds, stepPolicy);
+  }
+}
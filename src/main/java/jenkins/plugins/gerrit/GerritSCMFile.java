@@ -0,0 +1,72 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nonnull;
+import jenkins.scm.api.SCMFile;
+
+/** A file read through the Gerrit REST API by a {@link GerritSCMFileSystem}. */
+public class GerritSCMFile extends SCMFile {
+  private final GerritSCMFileSystem fs;
+
+  GerritSCMFile(@Nonnull GerritSCMFileSystem fs) {
+    this.fs = fs;
+  }
+
+  private GerritSCMFile(@Nonnull GerritSCMFile parent, @Nonnull String name) {
+    super(parent, name);
+    this.fs = parent.fs;
+  }
+
+  @Nonnull
+  @Override
+  protected SCMFile newChild(@Nonnull String name, boolean assumeIsDirectory) {
+    return new GerritSCMFile(this, name);
+  }
+
+  @Nonnull
+  @Override
+  public Iterable<SCMFile> children() throws IOException {
+    throw new IOException("Gerrit cannot list the files of " + getPath());
+  }
+
+  @Override
+  public long lastModified() {
+    return 0L;
+  }
+
+  @Nonnull
+  @Override
+  protected Type type() throws IOException, InterruptedException {
+    if (isRoot()) {
+      return Type.DIRECTORY;
+    }
+    return fs.content(getPath()) == null ? Type.NONEXISTENT : Type.REGULAR_FILE;
+  }
+
+  @Nonnull
+  @Override
+  public InputStream content() throws IOException, InterruptedException {
+    byte[] content = fs.content(getPath());
+    if (content == null) {
+      throw new FileNotFoundException(getPath());
+    }
+    return new ByteArrayInputStream(content);
+  }
+}
@@ -0,0 +1,343 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.projects.BranchApi;
+import com.google.gerrit.extensions.restapi.BinaryResult;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.scm.SCM;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.plugins.git.GitSCMFileSystem;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMFileSystem;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Reads the files of a change or a branch through the Gerrit REST API, so that loading a {@code
+ * Jenkinsfile} needs no git fetch.
+ *
+ * <p>Gerrit can only serve file contents, not directory listings: directories cannot be listed and
+ * are reported as nonexistent. Revisions that Gerrit cannot serve are read from the git cache
+ * repository instead, which always has the file contents as the blobless fetches use a cache of
+ * their own. Either way, contents go through the {@link GerritContentCache}.
+ */
+public class GerritSCMFileSystem extends SCMFileSystem {
+  private static final Logger LOGGER = Logger.getLogger(GerritSCMFileSystem.class.getName());
+
+  private static final int INDEX_SIZE =
+      Math.max(0, Integer.getInteger("gerrit.fileSystem.cacheSize", 10_000));
+
+  /** An indexed lookup of a file that does not exist. */
+  private static final String NONEXISTENT = "";
+
+  /** The blob ids of the files read so far, by commit and path, as they never change. */
+  private static final Map<String, String> blobIds =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+              return size() > INDEX_SIZE;
+            }
+          });
+
+  private final String project;
+  private final String commit;
+  private final ContentReader reader;
+
+  GerritSCMFileSystem(
+      @Nonnull SCMRevision revision, String project, String commit, ContentReader reader) {
+    super(revision);
+    this.project = project;
+    this.commit = commit;
+    this.reader = reader;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (reader instanceof Closeable) {
+      ((Closeable) reader).close();
+    }
+  }
+
+  @Override
+  public long lastModified() {
+    // Unknown without an extra REST call, and not needed to load files
+    return 0L;
+  }
+
+  @Nonnull
+  @Override
+  public SCMFile getRoot() {
+    return new GerritSCMFile(this);
+  }
+
+  /**
+   * Returns the content of a file, or {@code null} when there is no such file.
+   *
+   * @param path the path of the file, relative to the repository root.
+   */
+  @CheckForNull
+  byte[] content(String path) throws IOException, InterruptedException {
+    GerritContentCache cache = GerritContentCache.get();
+    String key = commit + ":" + path;
+    String blobId = blobIds.get(key);
+    if (NONEXISTENT.equals(blobId)) {
+      return null;
+    }
+    if (blobId != null) {
+      byte[] content = cache.get(project, blobId);
+      if (content != null) {
+        return content;
+      }
+    }
+
+    byte[] content = reader.read(path);
+    if (content == null) {
+      blobIds.put(key, NONEXISTENT);
+      return null;
+    }
+    blobId = GerritContentCache.blobId(content);
+    blobIds.put(key, blobId);
+    cache.put(project, blobId, content);
+    return content;
+  }
+
+  @FunctionalInterface
+  interface ContentReader {
+    /** Returns the content of a file, or {@code null} when there is no such file. */
+    @CheckForNull
+    byte[] read(String path) throws IOException, InterruptedException;
+  }
+
+  /** Reads the files of a patch-set, identified by its number or its commit. */
+  static GerritSCMFileSystem ofChange(
+      GerritApi gerritApi, String project, SCMRevision rev, int changeNumber, String revisionId) {
+    return new GerritSCMFileSystem(
+        rev,
+        project,
+        revisionId,
+        path ->
+            read(
+                () ->
+                    gerritApi
+                        .changes()
+                        .id(changeNumber)
+                        .revision(revisionId)
+                        .file(path)
+                        .content(),
+                path));
+  }
+
+  /** Reads the files of a branch, which must be at the {@code tip} commit. */
+  static GerritSCMFileSystem ofBranch(
+      GerritApi gerritApi, String project, SCMRevision rev, String branchName, String tip)
+      throws IOException {
+    BranchApi branch;
+    try {
+      branch = gerritApi.projects().name(project).branch(Constants.R_HEADS + branchName);
+    } catch (RestApiException e) {
+      throw new IOException("Unable to read branch " + branchName + " from Gerrit", e);
+    }
+    return new GerritSCMFileSystem(rev, project, tip, path -> read(() -> branch.file(path), path));
+  }
+
+  /** Reads the Base64 encoded content answered by Gerrit. */
+  private static byte[] decode(BinaryResult result) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    result.writeTo(encoded);
+    try {
+      return Base64.getMimeDecoder().decode(encoded.toByteArray());
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unexpected file content encoding", e);
+    }
+  }
+
+  private static byte[] read(RestCall call, String path) throws IOException {
+    try (BinaryResult result = call.content()) {
+      return decode(result);
+    } catch (ResourceNotFoundException e) {
+      return null;
+    } catch (RestApiException e) {
+      throw new IOException("Unable to read " + path + " from Gerrit", e);
+    }
+  }
+
+  /**
+   * Reads the files from the git cache repository, looking the blob up in the {@link
+   * GerritContentCache} before loading it.
+   */
+  static class GitContentReader implements ContentReader, Closeable {
+    private final GitSCMFileSystem fileSystem;
+    private final String project;
+    private final ObjectId commit;
+
+    GitContentReader(GitSCMFileSystem fileSystem, String project, String commit) {
+      this.fileSystem = fileSystem;
+      this.project = project;
+      this.commit = ObjectId.fromString(commit);
+    }
+
+    @Override
+    public byte[] read(String path) throws IOException, InterruptedException {
+      return fileSystem.invoke(repository -> read(repository, project, commit, path));
+    }
+
+    @CheckForNull
+    static byte[] read(Repository repository, String project, ObjectId commit, String path)
+        throws IOException {
+      try (RevWalk walk = new RevWalk(repository);
+          TreeWalk treeWalk =
+              TreeWalk.forPath(repository, path, walk.parseCommit(commit).getTree())) {
+        if (treeWalk == null) {
+          return null;
+        }
+        FileMode fileMode = treeWalk.getFileMode(0);
+        if (fileMode != FileMode.REGULAR_FILE && fileMode != FileMode.EXECUTABLE_FILE) {
+          return null;
+        }
+        ObjectId blob = treeWalk.getObjectId(0);
+        byte[] cached = GerritContentCache.get().get(project, blob.name());
+        if (cached != null) {
+          return cached;
+        }
+        return repository.open(blob, Constants.OBJ_BLOB).getBytes();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      fileSystem.close();
+    }
+  }
+
+  @FunctionalInterface
+  private interface RestCall {
+    BinaryResult content() throws RestApiException;
+  }
+
+  /** Builds the file systems of the heads discovered by the Gerrit SCM sources. */
+  @Extension(ordinal = 100)
+  public static class BuilderImpl extends SCMFileSystem.Builder {
+
+    @Override
+    public boolean supports(SCM source) {
+      // The Gerrit project and credentials are only known from the SCM source
+      return false;
+    }
+
+    @Override
+    public boolean supports(SCMSource source) {
+      return source instanceof AbstractGerritSCMSource;
+    }
+
+    @Override
+    public SCMFileSystem build(@Nonnull Item owner, @Nonnull SCM scm, SCMRevision rev) {
+      return null;
+    }
+
+    @Override
+    public SCMFileSystem build(@Nonnull SCMSource source, @Nonnull SCMHead head, SCMRevision rev)
+        throws IOException, InterruptedException {
+      if (!(source instanceof AbstractGerritSCMSource)) {
+        return null;
+      }
+      AbstractGerritSCMSource gerritSource = (AbstractGerritSCMSource) source;
+      GerritURI gerritURI = gerritSource.getGerritURI();
+      GerritApi gerritApi = gerritSource.createGerritApi(FakeTaskListener.INSTANCE, gerritURI);
+      if (gerritApi == null) {
+        return null;
+      }
+      String project = gerritURI.getProject();
+      String commit = commitOf(rev);
+
+      if (head instanceof ChangeSCMHead) {
+        ChangeSCMHead change = (ChangeSCMHead) head;
+        // Gerrit accepts the commit as revision id, which pins the exact patch-set
+        String revisionId = commit != null ? commit : change.getRev();
+        if (rev == null) {
+          rev = new ChangeSCMRevision(change, change.getRev());
+        }
+        return ofChange(gerritApi, project, rev, change.getChangeNumber(), revisionId);
+      }
+
+      String tip;
+      try {
+        tip =
+            gerritApi
+                .projects()
+                .name(project)
+                .branch(Constants.R_HEADS + head.getName())
+                .get()
+                .revision;
+      } catch (RestApiException e) {
+        LOGGER.log(Level.FINE, "Unable to read branch " + head.getName() + " from Gerrit", e);
+        return null;
+      }
+      if (commit == null || commit.equals(tip)) {
+        if (rev == null) {
+          rev = new AbstractGitSCMSource.SCMRevisionImpl(head, tip);
+        }
+        return ofBranch(gerritApi, project, rev, head.getName(), tip);
+      }
+
+      // Gerrit reads branch files at the tip only, older revisions come from the cache repository
+      SCMFileSystem gitFileSystem = new GitSCMFileSystem.BuilderImpl().build(source, head, rev);
+      if (!(gitFileSystem instanceof GitSCMFileSystem)) {
+        return gitFileSystem;
+      }
+      return new GerritSCMFileSystem(
+          rev,
+          project,
+          commit,
+          new GitContentReader((GitSCMFileSystem) gitFileSystem, project, commit));
+    }
+
+    @CheckForNull
+    private static String commitOf(@CheckForNull SCMRevision rev) {
+      if (rev instanceof ChangeSCMRevision) {
+        return ((ChangeSCMRevision) rev).getPatchsetHash();
+      }
+      if (rev instanceof AbstractGitSCMSource.SCMRevisionImpl) {
+        return ((AbstractGitSCMSource.SCMRevisionImpl) rev).getHash();
+      }
+      return null;
+    }
+  }
+}
@@ -24,31 +24,47 @@ import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredenti
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.common.ProjectInfo;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.restapi.RestApiException;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.model.Item;
 import hudson.model.Queue;
 import hudson.model.queue.Tasks;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.NamingThreadFactory;
+import hudson.util.Secret;
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMNavigator;
 import jenkins.scm.api.SCMNavigatorDescriptor;
+import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceObserver;
 import jenkins.scm.api.trait.SCMNavigatorRequest;
+import jenkins.scm.api.trait.SCMNavigatorTrait;
 import jenkins.scm.api.trait.SCMSourceTrait;
-import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
 import jenkins.scm.api.trait.SCMTrait;
+import jenkins.scm.api.trait.SCMTraitDescriptor;
 import jenkins.scm.impl.form.NamedArrayList;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.transport.URIish;
@@ -59,10 +75,19 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 public class GerritSCMNavigator extends SCMNavigator {
+  private static final int PREPARE_THREADS =
+      Math.max(1, Integer.getInteger("gerrit.navigator.prepareThreads", 4));
+
+  /** Shared by all the scans so that source preparation stays bounded across organizations. */
+  private static final ExecutorService prepareExecutor =
+      Executors.newFixedThreadPool(
+          PREPARE_THREADS,
+          new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit navigator sources"));
 
   @CheckForNull private String serverUrl;
   private boolean insecureHttps;
   @CheckForNull private String credentialsId;
+  @CheckForNull private Secret apiKey;
   @Nonnull private List<? extends SCMTrait<?>> traits;
 
   public GerritSCMNavigator() {
@@ -99,6 +124,36 @@ public class GerritSCMNavigator extends SCMNavigator {
   @Override
   public void visitSources(@Nonnull SCMSourceObserver observer)
       throws IOException, InterruptedException {
+    visitProjects(
+        observer,
+        (gerritApi, request) ->
+            new PagedCodeProjectsRequest(gerritApi).withListFilter(request::filter));
+  }
+
+  /**
+   * Visits a single project, e.g. the one of a project lifecycle event, without listing the other
+   * projects of the server.
+   */
+  @Override
+  public void visitSource(@Nonnull String sourceName, @Nonnull SCMSourceObserver observer)
+      throws IOException, InterruptedException {
+    visitProjects(
+        observer,
+        (gerritApi, request) -> {
+          try {
+            ProjectInfo projectInfo = gerritApi.projects().name(sourceName).get();
+            projectInfo.name = ofNullable(projectInfo.name).orElse(sourceName);
+            return Collections.singletonList(projectInfo);
+          } catch (ResourceNotFoundException e) {
+            return Collections.emptyList();
+          } catch (RestApiException e) {
+            throw new IOException("Unable to read project " + sourceName, e);
+          }
+        });
+  }
+
+  private void visitProjects(@Nonnull SCMSourceObserver observer, ProjectLister projectLister)
+      throws IOException, InterruptedException {
     GerritURI gerritURI;
     GerritApi gerritApi;
     try {
@@ -122,13 +177,130 @@ public class GerritSCMNavigator extends SCMNavigator {
                   .withRequest(request)
                   .build();
 
-      PagedCodeProjectsRequest projectsRequest = new PagedCodeProjectsRequest(gerritApi);
-      for (ProjectInfo projectInfo : projectsRequest) {
-        boolean stop = request.process(projectInfo.name, sourceLambda, null);
-        if (stop) {
-          break;
+      MarkerFileProbe markerFileProbe =
+          request.markerFile() == null
+              ? null
+              : new MarkerFileProbe(
+                  gerritApi, serverUrl, request.markerFile(), request.markerFileHeadOnly());
+
+      // Sources are prepared concurrently, a bounded window ahead, but still handed over to the
+      // observer one at a time and in the order of the project list. Preparing includes probing
+      // the marker file, so the probes share the same bound.
+      Deque<PreparedSource> window = new ArrayDeque<>();
+      Iterator<ProjectInfo> projects = projectLister.list(gerritApi, request).iterator();
+      try {
+        while (projects.hasNext()) {
+          ProjectInfo projectInfo = projects.next();
+          if (request.isExcluded(projectInfo)) {
+            continue;
+          }
+          window.add(prepare(request, projectInfo.name, sourceLambda, markerFileProbe));
+          if (window.size() >= PREPARE_THREADS && process(observer, request, window.poll())) {
+            return;
+          }
+        }
+        while (!window.isEmpty()) {
+          if (process(observer, request, window.poll())) {
+            return;
+          }
+        }
+      } finally {
+        window.forEach(prepared -> prepared.cancel());
+        // Stops the prefetch of the next projects page when the scan stops early
+        if (projects instanceof Closeable) {
+          ((Closeable) projects).close();
         }
-        checkInterrupt();
+      }
+    }
+  }
+
+  private static PreparedSource prepare(
+      SCMNavigatorRequest request,
+      String projectName,
+      SCMNavigatorRequest.SourceLambda lambda,
+      @CheckForNull MarkerFileProbe markerFileProbe) {
+    if (request.isExcluded(projectName)) {
+      return new PreparedSource(projectName, null);
+    }
+    return new PreparedSource(
+        projectName,
+        prepareExecutor.submit(
+            () -> {
+              SCMSource source = lambda.create(projectName);
+              if (markerFileProbe == null) {
+                return source;
+              }
+              return markerFileProbe.isPresent(projectName, MarkerFileProbe.branchFilter(source))
+                  ? source
+                  : null;
+            }));
+  }
+
+  /** Hands a prepared source over to the observer, returning whether the scan should stop. */
+  private boolean process(
+      SCMSourceObserver observer, GerritSCMNavigatorRequest request, PreparedSource prepared)
+      throws IOException, InterruptedException {
+    boolean stop = false;
+    if (!prepared.isExcluded()) {
+      SCMSource source = prepared.get();
+      if (source != null) {
+        stop = request.process(prepared.projectName, name -> source, null);
+      } else {
+        observer
+            .getListener()
+            .getLogger()
+            .format(
+                "Skipping %s: no %s on %s%n",
+                prepared.projectName,
+                request.markerFile(),
+                request.markerFileHeadOnly() ? "its HEAD branch" : "the branches it builds");
+      }
+    }
+    checkInterrupt();
+    return stop;
+  }
+
+  private interface ProjectLister {
+    Iterable<ProjectInfo> list(GerritApi gerritApi, GerritSCMNavigatorRequest request)
+        throws IOException;
+  }
+
+  private static class PreparedSource {
+    private final String projectName;
+    private final Future<SCMSource> source;
+
+    PreparedSource(String projectName, Future<SCMSource> source) {
+      this.projectName = projectName;
+      this.source = source;
+    }
+
+    boolean isExcluded() {
+      return source == null;
+    }
+
+    /** Returns the source, or {@code null} when the project has no marker file. */
+    @CheckForNull
+    SCMSource get() throws IOException, InterruptedException {
+      if (source == null) {
+        throw new IllegalStateException("No source prepared for excluded project " + projectName);
+      }
+      try {
+        return source.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+          throw (InterruptedException) cause;
+        }
+        throw new IOException("Could not prepare the source of " + projectName, cause);
+      }
+    }
+
+    void cancel() {
+      if (source != null) {
+        source.cancel(true);
       }
     }
   }
@@ -220,8 +392,13 @@ public class GerritSCMNavigator extends SCMNavigator {
           .includeCurrentValue(credentialsId);
     }
 
-    public List<NamedArrayList<? extends SCMSourceTraitDescriptor>> getTraitsDescriptorLists() {
-      return delegate.getTraitsDescriptorLists();
+    public List<NamedArrayList<? extends SCMTraitDescriptor<?>>> getTraitsDescriptorLists() {
+      List<NamedArrayList<? extends SCMTraitDescriptor<?>>> result = new ArrayList<>();
+      result.add(
+          new NamedArrayList<>(
+              "Projects", SCMNavigatorTrait._for(this, GerritSCMNavigatorContext.class, null)));
+      result.addAll(delegate.getTraitsDescriptorLists());
+      return result;
     }
 
     public List<SCMSourceTrait> getTraitsDefaults() {
@@ -258,6 +435,17 @@ public class GerritSCMNavigator extends SCMNavigator {
     this.credentialsId = credentialsId;
   }
 
+  /** The key that the project lifecycle events of the webhook must provide, if any. */
+  @CheckForNull
+  public Secret getApiKey() {
+    return apiKey;
+  }
+
+  @DataBoundSetter
+  public void setApiKey(Secret apiKey) {
+    this.apiKey = apiKey;
+  }
+
   @Nonnull
   public List<? extends SCMTrait<?>> getTraits() {
     return traits;
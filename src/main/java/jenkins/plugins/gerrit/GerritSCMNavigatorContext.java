@@ -14,13 +14,82 @@
 
 package jenkins.plugins.gerrit;
 
+import com.google.gerrit.extensions.client.ProjectState;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.plugins.gerrit.traits.ProjectNameFilterTrait;
 import jenkins.scm.api.SCMNavigator;
 import jenkins.scm.api.SCMSourceObserver;
 import jenkins.scm.api.trait.SCMNavigatorContext;
 
 public class GerritSCMNavigatorContext
     extends SCMNavigatorContext<GerritSCMNavigatorContext, GerritSCMNavigatorRequest> {
+  @CheckForNull private ProjectNameFilterTrait.Mode projectNameFilterMode;
+  @CheckForNull private String projectNameFilter;
+  @CheckForNull private ProjectState projectState;
+  @CheckForNull private String markerFile;
+  private boolean markerFileHeadOnly;
+
+  /**
+   * Asks Gerrit for the projects whose name matches a filter. Gerrit accepts a single name filter,
+   * the last one wins.
+   */
+  @NonNull
+  public GerritSCMNavigatorContext withProjectNameFilter(
+      @NonNull ProjectNameFilterTrait.Mode mode, @NonNull String filter) {
+    this.projectNameFilterMode = mode;
+    this.projectNameFilter = filter;
+    return this;
+  }
+
+  /** Asks Gerrit for the projects in a given state only. */
+  @NonNull
+  public GerritSCMNavigatorContext withProjectState(@CheckForNull ProjectState state) {
+    this.projectState = state;
+    return this;
+  }
+
+  /**
+   * Skips the projects where none of the branches accepted by the source filters contains a file,
+   * checked through the REST API before a source is created for them.
+   */
+  @NonNull
+  public GerritSCMNavigatorContext withMarkerFile(@CheckForNull String markerFile) {
+    this.markerFile = markerFile;
+    return this;
+  }
+
+  /** Looks for the marker file on the HEAD branch only. */
+  @NonNull
+  public GerritSCMNavigatorContext withMarkerFileHeadOnly(boolean headOnly) {
+    this.markerFileHeadOnly = headOnly;
+    return this;
+  }
+
+  @CheckForNull
+  public ProjectNameFilterTrait.Mode projectNameFilterMode() {
+    return projectNameFilterMode;
+  }
+
+  @CheckForNull
+  public String projectNameFilter() {
+    return projectNameFilter;
+  }
+
+  @CheckForNull
+  public ProjectState projectState() {
+    return projectState;
+  }
+
+  @CheckForNull
+  public String markerFile() {
+    return markerFile;
+  }
+
+  public boolean markerFileHeadOnly() {
+    return markerFileHeadOnly;
+  }
+
   @NonNull
   @Override
   public GerritSCMNavigatorRequest newRequest(
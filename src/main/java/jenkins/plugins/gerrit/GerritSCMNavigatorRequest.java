@@ -14,13 +14,24 @@
 
 package jenkins.plugins.gerrit;
 
+import com.google.gerrit.extensions.api.projects.Projects;
+import com.google.gerrit.extensions.client.ProjectState;
+import com.google.gerrit.extensions.common.ProjectInfo;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.plugins.gerrit.traits.ProjectNameFilterTrait;
 import jenkins.scm.api.SCMNavigator;
 import jenkins.scm.api.SCMSourceObserver;
 import jenkins.scm.api.trait.SCMNavigatorContext;
 import jenkins.scm.api.trait.SCMNavigatorRequest;
 
 public class GerritSCMNavigatorRequest extends SCMNavigatorRequest {
+  @CheckForNull private final ProjectNameFilterTrait.Mode projectNameFilterMode;
+  @CheckForNull private final String projectNameFilter;
+  @CheckForNull private final ProjectState projectState;
+  @CheckForNull private final String markerFile;
+  private final boolean markerFileHeadOnly;
+
   /**
    * Constructor.
    *
@@ -33,5 +44,63 @@ public class GerritSCMNavigatorRequest extends SCMNavigatorRequest {
       @NonNull SCMNavigatorContext<?, ?> context,
       @NonNull SCMSourceObserver observer) {
     super(source, context, observer);
+    GerritSCMNavigatorContext gerritContext = (GerritSCMNavigatorContext) context;
+    this.projectNameFilterMode = gerritContext.projectNameFilterMode();
+    this.projectNameFilter = gerritContext.projectNameFilter();
+    this.projectState = gerritContext.projectState();
+    this.markerFile = gerritContext.markerFile();
+    this.markerFileHeadOnly = gerritContext.markerFileHeadOnly();
+  }
+
+  /**
+   * Adds the project filters of the navigator traits to a projects list request, so that Gerrit
+   * only sends the projects that can be built.
+   */
+  @NonNull
+  public Projects.ListRequest filter(@NonNull Projects.ListRequest listRequest) {
+    if (projectNameFilterMode != null && projectNameFilter != null) {
+      switch (projectNameFilterMode) {
+        case PREFIX:
+          listRequest.withPrefix(projectNameFilter);
+          break;
+        case REGEX:
+          listRequest.withRegex(projectNameFilter);
+          break;
+        case SUBSTRING:
+          listRequest.withSubstring(projectNameFilter);
+          break;
+        default:
+          break;
+      }
+    }
+    if (projectState != null) {
+      listRequest.withState(projectState);
+    }
+    return listRequest;
+  }
+
+  /**
+   * Returns the file that one of the branches of a project must contain for the project to be
+   * built.
+   *
+   * @return the marker file, or {@code null} to build all the projects.
+   */
+  @CheckForNull
+  public String markerFile() {
+    return markerFile;
+  }
+
+  /** Whether the marker file is only looked for on the HEAD branch. */
+  public boolean markerFileHeadOnly() {
+    return markerFileHeadOnly;
+  }
+
+  /** Checks the filters that Gerrit may not have applied, returning whether to skip a project. */
+  public boolean isExcluded(@NonNull ProjectInfo project) {
+    if (projectState != null
+        && projectState != (project.state == null ? ProjectState.ACTIVE : project.state)) {
+      return true;
+    }
+    return isExcluded(project.name);
   }
 }
@@ -14,9 +14,14 @@
 
 package jenkins.plugins.gerrit;
 
+import com.google.gerrit.extensions.common.ChangeInfo;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import jenkins.plugins.gerrit.traits.FilterChecksTrait.ChecksQueryOperator;
 import jenkins.plugins.git.GitSCMSourceContext;
 import jenkins.scm.api.SCMHeadObserver;
@@ -30,6 +35,11 @@ public class GerritSCMSourceContext
   @NonNull private boolean filterForPendingChecks = false;
   @NonNull private String checksQueryString = "";
   @NonNull private String changesQueryFilter = "";
+  @NonNull private Map<Integer, ChangeInfo> openChanges = Collections.emptyMap();
+  private boolean restDiscovery = false;
+  private boolean shallowFetch = false;
+  private boolean bloblessFetch = false;
+  private boolean protocolV2 = false;
 
   public GerritSCMSourceContext(SCMSourceCriteria criteria, SCMHeadObserver observer) {
     super(criteria, observer);
@@ -101,6 +111,118 @@ public class GerritSCMSourceContext
     return checksQueryString;
   }
 
+  /**
+   * Defines the open changes returned by the changes query of the current scan.
+   *
+   * @param changes the open changes.
+   * @return {@code this} for method chaining.
+   */
+  @NonNull
+  public GerritSCMSourceContext withOpenChanges(List<ChangeInfo> changes) {
+    Map<Integer, ChangeInfo> changesByNumber = new HashMap<>();
+    for (ChangeInfo change : changes) {
+      changesByNumber.put(change._number, change);
+    }
+    openChanges = changesByNumber;
+    return this;
+  }
+
+  /**
+   * Returns the open changes returned by the changes query of the current scan.
+   *
+   * @return the open changes indexed by change number.
+   */
+  @NonNull
+  public final Map<Integer, ChangeInfo> openChanges() {
+    return openChanges;
+  }
+
+  /**
+   * Defines whether branches and changes should be discovered through the Gerrit REST API only,
+   * without fetching them in the cache repository of the controller.
+   *
+   * @param restDiscovery whether the REST API only should be used.
+   * @return {@code this} for method chaining.
+   */
+  @NonNull
+  public GerritSCMSourceContext wantRestDiscovery(boolean restDiscovery) {
+    this.restDiscovery = restDiscovery;
+    return this;
+  }
+
+  /**
+   * Returns true, if branches and changes should be discovered through the Gerrit REST API only.
+   *
+   * @return whether the REST API only should be used for discovery.
+   */
+  public final boolean restDiscovery() {
+    return restDiscovery;
+  }
+
+  /**
+   * Defines whether the cache repository should only fetch the tips of the branches and changes.
+   *
+   * @param shallowFetch whether the fetches should have depth 1.
+   * @return {@code this} for method chaining.
+   */
+  @NonNull
+  public GerritSCMSourceContext wantShallowFetch(boolean shallowFetch) {
+    this.shallowFetch = shallowFetch;
+    return this;
+  }
+
+  /**
+   * Returns true, if the cache repository should only fetch the tips of the branches and changes.
+   *
+   * @return whether the fetches should have depth 1.
+   */
+  public final boolean shallowFetch() {
+    return shallowFetch;
+  }
+
+  /**
+   * Defines whether the cache repository should fetch the commits and trees without the files.
+   *
+   * @param bloblessFetch whether the fetches should leave out the file contents.
+   * @return {@code this} for method chaining.
+   */
+  @NonNull
+  public GerritSCMSourceContext wantBloblessFetch(boolean bloblessFetch) {
+    this.bloblessFetch = bloblessFetch;
+    return this;
+  }
+
+  /**
+   * Returns true, if the cache repository should fetch the commits and trees without the files.
+   *
+   * @return whether the fetches should leave out the file contents.
+   */
+  public final boolean bloblessFetch() {
+    return bloblessFetch;
+  }
+
+  /**
+   * Defines whether the cache repository should fetch with git protocol v2, which only lists the
+   * refs matching the refspecs.
+   *
+   * @param protocolV2 whether the fetches should use protocol v2.
+   * @return {@code this} for method chaining.
+   */
+  @NonNull
+  public GerritSCMSourceContext wantProtocolV2(boolean protocolV2) {
+    this.protocolV2 = protocolV2;
+    return this;
+  }
+
+  /**
+   * Returns true, if the cache repository should fetch with git protocol v2.
+   *
+   * @return whether the fetches should use protocol v2.
+   */
+  public final boolean protocolV2() {
+    return protocolV2;
+  }
+
   @NonNull
   @Override
   public GerritSCMSourceRequest newRequest(
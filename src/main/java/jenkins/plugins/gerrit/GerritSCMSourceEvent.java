@@ -0,0 +1,118 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import hudson.util.Secret;
+import java.net.URISyntaxException;
+import java.util.Objects;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceEvent;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * A project created, deleted or whose HEAD branch moved, so that organization folders add, remove
+ * or refresh the affected project only instead of scanning the whole server.
+ */
+public class GerritSCMSourceEvent extends SCMSourceEvent<GerritProjectEvent> {
+  @CheckForNull private final String serverUrl;
+  @CheckForNull private final String apiKey;
+
+  /**
+   * @param serverUrl the Gerrit server the event comes from, or {@code null} for any server.
+   * @param apiKey the API key sent along with the event.
+   */
+  public GerritSCMSourceEvent(
+      @Nonnull Type type,
+      @Nonnull GerritProjectEvent payload,
+      @CheckForNull String origin,
+      @CheckForNull String serverUrl,
+      @CheckForNull String apiKey) {
+    super(type, payload, origin);
+    this.serverUrl = StringUtils.trimToNull(serverUrl);
+    this.apiKey = apiKey;
+  }
+
+  /** Maps a Gerrit project lifecycle event type to an event type, or {@code null}. */
+  @CheckForNull
+  static Type typeOf(@CheckForNull String gerritEventType) {
+    if (gerritEventType == null) {
+      return null;
+    }
+    switch (gerritEventType) {
+      case "project-created":
+        return Type.CREATED;
+      case "project-deleted":
+        return Type.REMOVED;
+      case "project-head-updated":
+        return Type.UPDATED;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public boolean isMatch(@Nonnull SCMNavigator navigator) {
+    if (!(navigator instanceof GerritSCMNavigator)) {
+      return false;
+    }
+    GerritSCMNavigator gerritNavigator = (GerritSCMNavigator) navigator;
+    Secret navigatorApiKey = gerritNavigator.getApiKey();
+    if (!Secret.toString(navigatorApiKey).isEmpty()
+        && !Objects.equals(apiKey, navigatorApiKey.getPlainText())) {
+      return false;
+    }
+    return isFromServerOf(gerritNavigator.getServerUrl());
+  }
+
+  @Nonnull
+  @Override
+  public String getSourceName() {
+    return getPayload().getProjectName();
+  }
+
+  @Override
+  public boolean isMatch(@Nonnull SCMSource source) {
+    if (!(source instanceof GerritSCMSource)) {
+      return false;
+    }
+    String remote = ((GerritSCMSource) source).getRemote();
+    return getPayload().matches(remote) && isFromServerOf(remote);
+  }
+
+  @Override
+  public String description() {
+    return getPayload().toString();
+  }
+
+  /** Compares the hosts only, as sources may use another scheme than the navigator. */
+  private boolean isFromServerOf(@CheckForNull String url) {
+    if (serverUrl == null) {
+      return true;
+    }
+    if (url == null) {
+      return false;
+    }
+    try {
+      String host = new URIish(url).getHost();
+      return host != null && host.equalsIgnoreCase(new URIish(serverUrl).getHost());
+    } catch (URISyntaxException e) {
+      return false;
+    }
+  }
+}
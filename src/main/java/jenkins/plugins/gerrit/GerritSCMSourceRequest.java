@@ -14,6 +14,7 @@
 
 package jenkins.plugins.gerrit;
 
+import com.google.gerrit.extensions.common.ChangeInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.plugins.checks.api.PendingChecksInfo;
 import com.google.gerrit.plugins.checks.client.GerritChecksApi;
@@ -34,6 +35,8 @@ public class GerritSCMSourceRequest extends GitSCMSourceRequest {
 
   private final Map<String, HashSet<PendingChecksInfo>> patchsetWithPendingChecks;
 
+  private final Map<Integer, ChangeInfo> openChanges;
+
   public GerritSCMSourceRequest(
       GerritSCMSource source, GerritSCMSourceContext context, TaskListener listener) {
     super(source, context, listener);
@@ -42,12 +45,17 @@ public class GerritSCMSourceRequest extends GitSCMSourceRequest {
         filterForPendingChecks
             ? getChangesWithPendingChecks(source, context, listener)
             : new HashMap<String, HashSet<PendingChecksInfo>>();
+    this.openChanges = context.openChanges();
   }
 
   public Map<String, HashSet<PendingChecksInfo>> getPatchsetWithPendingChecks() {
     return patchsetWithPendingChecks;
   }
 
+  public Map<Integer, ChangeInfo> getOpenChanges() {
+    return openChanges;
+  }
+
   private GerritChecksApi getGerritChecksApi(GerritSCMSource source, TaskListener listener)
       throws IOException {
     try {
@@ -0,0 +1,50 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import java.io.IOException;
+
+/** A REST call that was not sent because the {@link GerritCircuitBreaker} of its server is open. */
+public class GerritUnavailableException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterMillis;
+
+  public GerritUnavailableException(String message, long retryAfterMillis) {
+    super(message);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /** How long until the server can be tried again. */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  /** Finds a {@link GerritUnavailableException} in the causes of a failure. */
+  public static GerritUnavailableException find(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof GerritUnavailableException) {
+        return (GerritUnavailableException) t;
+      }
+      for (Throwable suppressed : t.getSuppressed()) {
+        GerritUnavailableException unavailable = find(suppressed);
+        if (unavailable != null) {
+          return unavailable;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -37,6 +37,8 @@ import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.servlet.http.HttpServletRequest;
 import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMSourceEvent;
 import jenkins.scm.api.SCMSourceOwner;
 import org.acegisecurity.Authentication;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
@@ -59,7 +61,10 @@ public class GerritWebHook implements UnprotectedRootAction {
           "change-restored",
           "patchset-created",
           "private-state-changed",
-          "wip-state-changed");
+          "wip-state-changed",
+          "project-created",
+          "project-deleted",
+          "project-head-updated");
 
   @Override
   public String getIconFileName() {
@@ -82,6 +87,7 @@ public class GerritWebHook implements UnprotectedRootAction {
     String jobName = req.getParameter("jobName");
     boolean isJobNameNullOrEmpty = Strings.isNullOrEmpty(jobName);
     String apiKeyParam = req.getParameter("apiKey");
+    String serverUrlParam = req.getParameter("serverUrl");
 
     getBody(req)
         .ifPresent(
@@ -94,6 +100,12 @@ public class GerritWebHook implements UnprotectedRootAction {
 
               log.info("GerritWebHook invoked by user '{}' for event: {}", username, projectEvent);
 
+              SCMEvent.Type lifecycleType = GerritSCMSourceEvent.typeOf(projectEvent.type);
+              if (lifecycleType != null) {
+                fireSourceEvent(lifecycleType, projectEvent, req, serverUrlParam, apiKeyParam);
+                return;
+              }
+
               try (ACLContext acl = ACL.as(ACL.SYSTEM)) {
                 List<WorkflowMultiBranchProject> jenkinsItems =
                     getJenkinsInstance()
@@ -162,6 +174,26 @@ public class GerritWebHook implements UnprotectedRootAction {
     scmJob.onSCMSourceUpdated(gerritSCMSource);
   }
 
+  /**
+   * Lets the organization folders of the server add, remove or refresh the project of a lifecycle
+   * event, without scanning all the other projects.
+   */
+  private void fireSourceEvent(
+      SCMEvent.Type type,
+      GerritProjectEvent projectEvent,
+      HttpServletRequest req,
+      String serverUrlParam,
+      String apiKeyParam) {
+    if (projectEvent.getProjectName() == null) {
+      log.warn("Ignoring {} without a project name", projectEvent);
+      return;
+    }
+    log.info("Firing SCM {} event for project {}", type, projectEvent.getProjectName());
+    SCMSourceEvent.fireNow(
+        new GerritSCMSourceEvent(
+            type, projectEvent, SCMEvent.originOf(req), serverUrlParam, apiKeyParam));
+  }
+
   @VisibleForTesting
   Optional<GerritProjectEvent> getBody(HttpServletRequest req) throws IOException {
     try (InputStreamReader is =
@@ -0,0 +1,80 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.urswolfer.gerrit.client.rest.GerritAuthData;
+import com.urswolfer.gerrit.client.rest.http.HttpClientBuilderExtension;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keeps track of the HTTP requests issued by the Gerrit clients of a single step execution, so
+ * that they can all be aborted when the step is stopped or times out.
+ *
+ * <p>Once {@link #abortAll()} has been called, any further request fails before reaching Gerrit.
+ */
+public class InFlightRequests extends HttpClientBuilderExtension
+    implements HttpRequestInterceptor {
+  private final List<HttpUriRequest> requests = new ArrayList<>();
+  private boolean aborted;
+
+  @Override
+  public HttpClientBuilder extend(HttpClientBuilder httpClientBuilder, GerritAuthData authData) {
+    HttpClientBuilder builder = super.extend(httpClientBuilder, authData);
+    builder.addInterceptorFirst(this);
+    return builder;
+  }
+
+  @Override
+  public void process(HttpRequest request, HttpContext context)
+      throws HttpException, IOException {
+    HttpRequest original =
+        request instanceof HttpRequestWrapper
+            ? ((HttpRequestWrapper) request).getOriginal()
+            : request;
+    synchronized (this) {
+      if (aborted) {
+        throw new RequestAbortedException("Request aborted: " + request.getRequestLine());
+      }
+      if (original instanceof HttpUriRequest) {
+        requests.add((HttpUriRequest) original);
+      }
+    }
+  }
+
+  /** Aborts the requests still in flight and rejects any further one. */
+  public void abortAll() {
+    List<HttpUriRequest> toAbort;
+    synchronized (this) {
+      aborted = true;
+      toAbort = new ArrayList<>(requests);
+      requests.clear();
+    }
+    toAbort.forEach(HttpUriRequest::abort);
+  }
+
+  public synchronized boolean isAborted() {
+    return aborted;
+  }
+}
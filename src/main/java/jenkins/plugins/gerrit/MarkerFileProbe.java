@@ -0,0 +1,184 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.projects.BranchInfo;
+import com.google.gerrit.extensions.api.projects.ProjectApi;
+import com.google.gerrit.extensions.restapi.BinaryResult;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Tells through the REST API whether a project contains a marker file, such as a {@code
+ * Jenkinsfile}, without cloning the repository. The file is looked for on the branches accepted by
+ * the head filters of the source of the project, HEAD first, or on the HEAD branch only.
+ *
+ * <p>The answers are cached by branch and SHA-1, so that rescans only list the branch tips as long
+ * as they do not move.
+ */
+class MarkerFileProbe {
+  private static final Logger LOGGER = Logger.getLogger(MarkerFileProbe.class.getName());
+
+  private static final int CACHE_SIZE =
+      Math.max(1, Integer.getInteger("gerrit.markerFile.cacheSize", 10_000));
+  private static final int MAX_BRANCHES =
+      Math.max(1, Integer.getInteger("gerrit.markerFile.maxBranches", 50));
+
+  private static final Map<String, Probed> cache =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, Probed>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Probed> eldest) {
+              return size() > CACHE_SIZE;
+            }
+          });
+
+  private final GerritApi gerritApi;
+  private final String server;
+  private final String markerFile;
+  private final boolean headOnly;
+
+  MarkerFileProbe(GerritApi gerritApi, String server, String markerFile, boolean headOnly) {
+    this.gerritApi = gerritApi;
+    this.server = server;
+    this.markerFile = markerFile;
+    this.headOnly = headOnly;
+  }
+
+  /** Accepts the branch names that the head filters of a source let through. */
+  static Predicate<String> branchFilter(SCMSource source) {
+    List<SCMHeadPrefilter> prefilters =
+        new GerritSCMSourceContext(null, SCMHeadObserver.none())
+            .withTraits(source.getTraits())
+            .prefilters();
+    return name -> {
+      SCMHead head = new SCMHead(name);
+      return prefilters.stream().noneMatch(prefilter -> prefilter.isExcluded(source, head));
+    };
+  }
+
+  /**
+   * Returns whether one of the branches accepted by {@code branchFilter} contains the marker file.
+   * Projects that cannot be probed, or have more than {@code gerrit.markerFile.maxBranches}
+   * accepted branches without the file, are assumed to contain it, so that their source decides.
+   */
+  boolean isPresent(String projectName, Predicate<String> branchFilter)
+      throws InterruptedException {
+    ProjectApi project;
+    String head;
+    List<BranchInfo> branches;
+    try {
+      project = gerritApi.projects().name(projectName);
+      head = project.head();
+      branches =
+          headOnly
+              ? Collections.singletonList(project.branch(head).get())
+              : AbstractGerritSCMSource.listBranches(project);
+    } catch (ResourceNotFoundException e) {
+      // No HEAD branch: an empty project has nothing to build
+      return false;
+    } catch (RestApiException e) {
+      checkInterrupt(e);
+      LOGGER.log(Level.FINE, "Could not list the branches of " + projectName, e);
+      return true;
+    }
+
+    List<BranchInfo> candidates = new ArrayList<>();
+    for (BranchInfo branch : branches) {
+      if (!branch.ref.startsWith(Constants.R_HEADS)) {
+        continue;
+      }
+      boolean isHead = branch.ref.equals(head);
+      if (headOnly
+          ? !isHead
+          : !branchFilter.test(branch.ref.substring(Constants.R_HEADS.length()))) {
+        continue;
+      }
+      candidates.add(isHead ? 0 : candidates.size(), branch);
+    }
+    int probed = 0;
+    for (BranchInfo branch : candidates) {
+      if (probed++ >= MAX_BRANCHES) {
+        LOGGER.log(
+            Level.FINE,
+            "No {0} in the first {1} branches of {2}, assuming it is in the others",
+            new Object[] {markerFile, MAX_BRANCHES, projectName});
+        return true;
+      }
+      if (isPresent(project, projectName, branch)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isPresent(ProjectApi project, String projectName, BranchInfo branch)
+      throws InterruptedException {
+    String key = server + "::" + projectName + "::" + branch.ref + "::" + markerFile;
+    Probed probed = cache.get(key);
+    if (probed != null && Objects.equals(probed.revision, branch.revision)) {
+      return probed.present;
+    }
+
+    boolean present;
+    try (BinaryResult content = project.branch(branch.ref).file(markerFile)) {
+      present = content != null;
+    } catch (ResourceNotFoundException e) {
+      present = false;
+    } catch (Exception e) {
+      checkInterrupt(e);
+      LOGGER.log(
+          Level.FINE, "Could not probe " + markerFile + " in " + projectName + " " + branch.ref, e);
+      return true;
+    }
+    cache.put(key, new Probed(branch.revision, present));
+    return present;
+  }
+
+  private static void checkInterrupt(Exception e) throws InterruptedException {
+    if (Thread.interrupted()) {
+      InterruptedException interrupted = new InterruptedException();
+      interrupted.initCause(e);
+      throw interrupted;
+    }
+  }
+
+  private static class Probed {
+    private final String revision;
+    private final boolean present;
+
+    Probed(String revision, boolean present) {
+      this.revision = revision;
+      this.present = present;
+    }
+  }
+}
@@ -18,51 +18,96 @@ import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.api.projects.Projects;
 import com.google.gerrit.extensions.common.ProjectInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.Closeable;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
 
 /**
  * Allows to iterate on a Gerrit instance's projects in a computation-wise and memory-wise
  * performant manner. Computation-wise because it will try to fetch as few projects as possible
  * considering the consumer needs. Memory-wise because it will not hold more in-memory projects than
- * the configured chunk size.
+ * the current and the next chunk.
  *
  * <p>Those optimizations should also allow to reduce the pressure on the Gerrit instance resources.
+ *
+ * <p>The next chunk is fetched in the background while the current one is consumed, and the chunk
+ * size doubles at every chunk up to {@code gerrit.projects.maxChunkSize}, so that large instances
+ * are listed in a few requests without making small ones pay for a big first page.
  */
 public class PagedCodeProjectsRequest implements Iterable<ProjectInfo> {
 
-  private static final int CHUNK_DEFAULT_MAX_SIZE = 20;
+  private static final int CHUNK_DEFAULT_INITIAL_SIZE = 20;
+  private static final int CHUNK_DEFAULT_MAX_SIZE =
+      Math.max(CHUNK_DEFAULT_INITIAL_SIZE, Integer.getInteger("gerrit.projects.maxChunkSize", 500));
+  private static final int PREFETCH_THREADS =
+      Integer.getInteger("gerrit.projects.prefetchThreads", 4);
+
+  private static final ExecutorService prefetchExecutor =
+      Executors.newFixedThreadPool(
+          PREFETCH_THREADS,
+          new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit projects prefetch"));
 
   private final GerritApi gerritApi;
+  private final int chunkInitialSize;
   private final int chunkMaxSize;
+  private UnaryOperator<Projects.ListRequest> listFilter = UnaryOperator.identity();
 
   public PagedCodeProjectsRequest(GerritApi gerritApi) {
-    this(gerritApi, CHUNK_DEFAULT_MAX_SIZE);
+    this(gerritApi, CHUNK_DEFAULT_INITIAL_SIZE, CHUNK_DEFAULT_MAX_SIZE);
   }
 
+  /** Lists the projects in chunks of a fixed size. */
   public PagedCodeProjectsRequest(GerritApi gerritApi, int chunkMaxSize) {
+    this(gerritApi, chunkMaxSize, chunkMaxSize);
+  }
+
+  public PagedCodeProjectsRequest(GerritApi gerritApi, int chunkInitialSize, int chunkMaxSize) {
     this.gerritApi = gerritApi;
-    this.chunkMaxSize = chunkMaxSize;
+    this.chunkInitialSize = Math.max(1, chunkInitialSize);
+    this.chunkMaxSize = Math.max(this.chunkInitialSize, chunkMaxSize);
+  }
+
+  /** Narrows down every list request, so that Gerrit only sends the wanted projects. */
+  public PagedCodeProjectsRequest withListFilter(UnaryOperator<Projects.ListRequest> listFilter) {
+    this.listFilter = listFilter;
+    return this;
   }
 
   @Override
   public Iterator<ProjectInfo> iterator() {
-    return new ProjectIterator(gerritApi, chunkMaxSize);
+    return new ProjectIterator(gerritApi, listFilter, chunkInitialSize, chunkMaxSize);
   }
 
-  private static class ProjectIterator implements Iterator<ProjectInfo> {
+  /** Iterates on the projects. Closing it cancels the fetch of the next chunk, if any. */
+  private static class ProjectIterator implements Iterator<ProjectInfo>, Closeable {
 
     private final GerritApi gerritApi;
+    private final UnaryOperator<Projects.ListRequest> listFilter;
     private final int chunkMaxSize;
 
-    private Projects.ListRequest listRequest;
-    private Iterator<ProjectInfo> chunkIterator;
-    private boolean moreChunkToFetch = true;
-
-    public ProjectIterator(GerritApi gerritApi, int chunkMaxSize) {
+    private Iterator<ProjectInfo> chunkIterator = Collections.emptyIterator();
+    private Future<List<ProjectInfo>> nextChunk;
+    private int nextChunkStart;
+    private int nextChunkSize;
+    private boolean started;
+
+    public ProjectIterator(
+        GerritApi gerritApi,
+        UnaryOperator<Projects.ListRequest> listFilter,
+        int chunkInitialSize,
+        int chunkMaxSize) {
       this.gerritApi = gerritApi;
+      this.listFilter = listFilter;
       this.chunkMaxSize = chunkMaxSize;
+      this.nextChunkSize = chunkInitialSize;
     }
 
     @Override
@@ -76,36 +121,63 @@ public class PagedCodeProjectsRequest implements Iterable<ProjectInfo> {
     }
 
     private Iterator<ProjectInfo> getChunkIterator() {
-      if (chunkIterator != null && chunkIterator.hasNext()) {
+      if (chunkIterator.hasNext()) {
         return chunkIterator;
       }
-      if (!moreChunkToFetch) {
-        return Collections.emptyIterator();
+      if (!started) {
+        started = true;
+        prefetch();
+      }
+      if (nextChunk == null) {
+        return chunkIterator;
       }
 
-      List<ProjectInfo> nextChunk;
+      List<ProjectInfo> chunk;
       try {
-        if (listRequest != null) {
-          listRequest.withStart(listRequest.getStart() + chunkMaxSize);
-        } else {
-          listRequest = createListRequest();
-        }
-        nextChunk = listRequest.get();
-      } catch (RestApiException e) {
+        chunk = nextChunk.get();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      } catch (InterruptedException e) {
+        nextChunk.cancel(true);
+        Thread.currentThread().interrupt();
         throw new IllegalStateException(e);
+      } finally {
+        nextChunk = null;
       }
-      moreChunkToFetch = nextChunk.size() >= chunkMaxSize;
-      chunkIterator = nextChunk.iterator();
+
+      if (chunk.size() >= nextChunkSize) {
+        nextChunkStart += chunk.size();
+        nextChunkSize = Math.min(chunkMaxSize, nextChunkSize * 2);
+        prefetch();
+      }
+      chunkIterator = chunk.iterator();
       return chunkIterator;
     }
 
-    private Projects.ListRequest createListRequest() {
-      return gerritApi
-          .projects()
-          .list()
-          // Setting the type even if it is not used by the implementation ...
-          .withType(Projects.ListRequest.FilterType.CODE)
-          .withLimit(chunkMaxSize);
+    @Override
+    public void close() {
+      started = true;
+      chunkIterator = Collections.emptyIterator();
+      if (nextChunk != null) {
+        nextChunk.cancel(true);
+        nextChunk = null;
+      }
+    }
+
+    private void prefetch() {
+      Projects.ListRequest listRequest = createListRequest(nextChunkStart, nextChunkSize);
+      nextChunk = prefetchExecutor.submit(listRequest::get);
+    }
+
+    private Projects.ListRequest createListRequest(int start, int limit) {
+      return listFilter.apply(
+          gerritApi
+              .projects()
+              .list()
+              // Setting the type even if it is not used by the implementation ...
+              .withType(Projects.ListRequest.FilterType.CODE)
+              .withStart(start)
+              .withLimit(limit));
     }
   }
 }
@@ -0,0 +1,97 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import hudson.Extension;
+import jenkins.plugins.gerrit.GerritSCMSource;
+import jenkins.plugins.gerrit.GerritSCMSourceContext;
+import jenkins.plugins.git.GitSCMBuilder;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMBuilder;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Fetches only what discovery needs in the cache repository of the controller: the tips of the
+ * branches and changes, and optionally their commits and trees without the file contents.
+ */
+public class PartialFetchTrait extends SCMSourceTrait {
+  private final boolean shallow;
+  private final boolean blobless;
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public PartialFetchTrait(boolean shallow, boolean blobless) {
+    this.shallow = shallow;
+    this.blobless = blobless;
+  }
+
+  /**
+   * Returns whether the fetches have depth 1.
+   *
+   * @return whether the fetches have depth 1.
+   */
+  public boolean isShallow() {
+    return shallow;
+  }
+
+  /**
+   * Returns whether the fetches leave out the file contents.
+   *
+   * @return whether the fetches use the {@code blob:none} filter.
+   */
+  public boolean isBlobless() {
+    return blobless;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMSourceContext<?, ?> context) {
+    GerritSCMSourceContext ctx = (GerritSCMSourceContext) context;
+    ctx.wantShallowFetch(shallow);
+    ctx.wantBloblessFetch(blobless);
+  }
+
+  /** Our descriptor. */
+  @Extension
+  public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.PartialFetchTrait_displayName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMBuilder> getBuilderClass() {
+      return GitSCMBuilder.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSourceContext> getContextClass() {
+      return GerritSCMSourceContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSource> getSourceClass() {
+      return GerritSCMSource.class;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import jenkins.plugins.gerrit.GerritSCMNavigator;
+import jenkins.plugins.gerrit.GerritSCMNavigatorContext;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.trait.SCMNavigatorContext;
+import jenkins.scm.api.trait.SCMNavigatorTrait;
+import jenkins.scm.api.trait.SCMNavigatorTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Lists only the projects with a marker file, typically the {@code Jenkinsfile}, on one of the
+ * branches accepted by the head filters of their source, or on their HEAD branch only when asked
+ * to. The file is looked up through the REST API before any source is created, so that the
+ * projects that cannot be built are never cloned.
+ */
+public class ProjectMarkerFileFilterTrait extends SCMNavigatorTrait {
+  public static final String DEFAULT_MARKER_FILE = "Jenkinsfile";
+
+  private final String markerFile;
+  private boolean headOnly;
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public ProjectMarkerFileFilterTrait(String markerFile) {
+    this.markerFile = StringUtils.defaultIfBlank(markerFile, DEFAULT_MARKER_FILE).trim();
+  }
+
+  /**
+   * Returns the path of the marker file, relative to the repository root.
+   *
+   * @return the path of the marker file.
+   */
+  public String getMarkerFile() {
+    return markerFile;
+  }
+
+  /**
+   * Returns whether the marker file is only looked for on the HEAD branch, which is cheaper but
+   * skips the projects that have it on other branches only.
+   *
+   * @return true to check the HEAD branch only.
+   */
+  public boolean isHeadOnly() {
+    return headOnly;
+  }
+
+  @DataBoundSetter
+  public void setHeadOnly(boolean headOnly) {
+    this.headOnly = headOnly;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMNavigatorContext<?, ?> context) {
+    ((GerritSCMNavigatorContext) context)
+        .withMarkerFile(markerFile)
+        .withMarkerFileHeadOnly(headOnly);
+  }
+
+  /** Our descriptor. */
+  @Extension
+  @Selection
+  public static class DescriptorImpl extends SCMNavigatorTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.ProjectMarkerFileFilterTrait_displayName();
+    }
+
+    public FormValidation doCheckMarkerFile(@QueryParameter String value) {
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error(Messages.ProjectMarkerFileFilterTrait_emptyMarkerFile());
+      }
+      return FormValidation.ok();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigatorContext> getContextClass() {
+      return GerritSCMNavigatorContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigator> getNavigatorClass() {
+      return GerritSCMNavigator.class;
+    }
+  }
+}
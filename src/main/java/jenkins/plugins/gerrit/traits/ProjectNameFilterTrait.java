@@ -0,0 +1,164 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nonnull;
+import jenkins.plugins.gerrit.GerritSCMNavigator;
+import jenkins.plugins.gerrit.GerritSCMNavigatorContext;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.trait.SCMNavigatorContext;
+import jenkins.scm.api.trait.SCMNavigatorTrait;
+import jenkins.scm.api.trait.SCMNavigatorTraitDescriptor;
+import jenkins.scm.api.trait.SCMSourcePrefilter;
+import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Lists only the projects whose name matches a prefix, a regular expression or a substring. The
+ * filter is sent to Gerrit with the projects list request, so that the other projects are neither
+ * transferred nor turned into sources, and also checked locally for the projects reported by
+ * events.
+ */
+public class ProjectNameFilterTrait extends SCMNavigatorTrait {
+
+  public enum Mode {
+    PREFIX,
+    REGEX,
+    SUBSTRING
+  }
+
+  private final Mode mode;
+  private final String pattern;
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public ProjectNameFilterTrait(Mode mode, String pattern) {
+    this.mode = mode;
+    this.pattern = pattern;
+  }
+
+  /**
+   * Returns how the pattern is matched.
+   *
+   * @return how the pattern is matched.
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Returns the project name pattern.
+   *
+   * @return the project name pattern.
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMNavigatorContext<?, ?> context) {
+    if (mode == null || StringUtils.isEmpty(pattern)) {
+      return;
+    }
+    ((GerritSCMNavigatorContext) context).withProjectNameFilter(mode, pattern);
+    context.withPrefilter(new ProjectNamePrefilter(mode, pattern));
+  }
+
+  /** Applies the filter to the project names that did not come from a Gerrit list request. */
+  static class ProjectNamePrefilter extends SCMSourcePrefilter {
+    private final Mode mode;
+    private final String pattern;
+    private final Pattern regex;
+
+    ProjectNamePrefilter(Mode mode, String pattern) {
+      this.mode = mode;
+      this.pattern = pattern;
+      this.regex = mode == Mode.REGEX ? Pattern.compile(pattern) : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isExcluded(@Nonnull SCMNavigator source, @Nonnull String projectName) {
+      switch (mode) {
+        case PREFIX:
+          return !projectName.startsWith(pattern);
+        case REGEX:
+          return !regex.matcher(projectName).matches();
+        case SUBSTRING:
+          return !projectName.toLowerCase(Locale.ROOT).contains(pattern.toLowerCase(Locale.ROOT));
+        default:
+          return false;
+      }
+    }
+  }
+
+  /** Our descriptor. */
+  @Extension
+  @Selection
+  public static class DescriptorImpl extends SCMNavigatorTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.ProjectNameFilterTrait_displayName();
+    }
+
+    public ListBoxModel doFillModeItems() {
+      ListBoxModel items = new ListBoxModel();
+
+      items.add(Messages.ProjectNameFilterTrait_prefix(), Mode.PREFIX.name());
+      items.add(Messages.ProjectNameFilterTrait_regex(), Mode.REGEX.name());
+      items.add(Messages.ProjectNameFilterTrait_substring(), Mode.SUBSTRING.name());
+
+      return items;
+    }
+
+    public FormValidation doCheckPattern(
+        @QueryParameter String mode, @QueryParameter String value) {
+      if (StringUtils.isEmpty(value)) {
+        return FormValidation.warning(Messages.ProjectNameFilterTrait_emptyPattern());
+      }
+      if (Mode.REGEX.name().equals(mode)) {
+        try {
+          Pattern.compile(value);
+        } catch (PatternSyntaxException e) {
+          return FormValidation.error(e.getMessage());
+        }
+      }
+      return FormValidation.ok();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigatorContext> getContextClass() {
+      return GerritSCMNavigatorContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigator> getNavigatorClass() {
+      return GerritSCMNavigator.class;
+    }
+  }
+}
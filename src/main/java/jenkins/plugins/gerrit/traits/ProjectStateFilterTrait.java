@@ -0,0 +1,87 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import com.google.gerrit.extensions.client.ProjectState;
+import hudson.Extension;
+import hudson.util.ListBoxModel;
+import jenkins.plugins.gerrit.GerritSCMNavigator;
+import jenkins.plugins.gerrit.GerritSCMNavigatorContext;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.trait.SCMNavigatorContext;
+import jenkins.scm.api.trait.SCMNavigatorTrait;
+import jenkins.scm.api.trait.SCMNavigatorTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/** Lists only the projects in a given state, filtered by Gerrit in the projects list request. */
+public class ProjectStateFilterTrait extends SCMNavigatorTrait {
+  private final ProjectState state;
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public ProjectStateFilterTrait(ProjectState state) {
+    this.state = state;
+  }
+
+  /**
+   * Returns the state of the projects to list.
+   *
+   * @return the state of the projects to list.
+   */
+  public ProjectState getState() {
+    return state;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMNavigatorContext<?, ?> context) {
+    ((GerritSCMNavigatorContext) context).withProjectState(state);
+  }
+
+  /** Our descriptor. */
+  @Extension
+  @Selection
+  public static class DescriptorImpl extends SCMNavigatorTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.ProjectStateFilterTrait_displayName();
+    }
+
+    public ListBoxModel doFillStateItems() {
+      ListBoxModel items = new ListBoxModel();
+
+      items.add(Messages.ProjectStateFilterTrait_active(), ProjectState.ACTIVE.name());
+      items.add(Messages.ProjectStateFilterTrait_readOnly(), ProjectState.READ_ONLY.name());
+      items.add(Messages.ProjectStateFilterTrait_hidden(), ProjectState.HIDDEN.name());
+
+      return items;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigatorContext> getContextClass() {
+      return GerritSCMNavigatorContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMNavigator> getNavigatorClass() {
+      return GerritSCMNavigator.class;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import hudson.Extension;
+import jenkins.plugins.gerrit.GerritSCMSource;
+import jenkins.plugins.gerrit.GerritSCMSourceContext;
+import jenkins.plugins.git.GitSCMBuilder;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMBuilder;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Fetches the cache repository with git protocol v2. Git then only asks for the refs matching the
+ * refspecs, i.e. the branches and the patch-sets of the open changes, instead of reading an
+ * advertisement of all the refs of the project, which grows with every patch-set ever uploaded.
+ */
+public class ProtocolV2FetchTrait extends SCMSourceTrait {
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public ProtocolV2FetchTrait() {}
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMSourceContext<?, ?> context) {
+    ((GerritSCMSourceContext) context).wantProtocolV2(true);
+  }
+
+  /** Our descriptor. */
+  @Extension
+  public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.ProtocolV2FetchTrait_displayName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMBuilder> getBuilderClass() {
+      return GitSCMBuilder.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSourceContext> getContextClass() {
+      return GerritSCMSourceContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSource> getSourceClass() {
+      return GerritSCMSource.class;
+    }
+  }
+}
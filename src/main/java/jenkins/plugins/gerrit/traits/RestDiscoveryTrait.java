@@ -0,0 +1,75 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.traits;
+
+import hudson.Extension;
+import jenkins.plugins.gerrit.GerritSCMSource;
+import jenkins.plugins.gerrit.GerritSCMSourceContext;
+import jenkins.plugins.git.GitSCMBuilder;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMBuilder;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Discovery;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Discovers the branches and the open changes through the Gerrit REST API only. Scans, revision
+ * lookups and the criteria checks do not fetch anything in the cache repository of the
+ * controller: the {@code Jenkinsfile} and the other probed files are read one by one from Gerrit.
+ */
+public class RestDiscoveryTrait extends SCMSourceTrait {
+
+  /** Constructor for stapler. */
+  @DataBoundConstructor
+  public RestDiscoveryTrait() {}
+
+  /** {@inheritDoc} */
+  @Override
+  protected void decorateContext(SCMSourceContext<?, ?> context) {
+    ((GerritSCMSourceContext) context).wantRestDiscovery(true);
+  }
+
+  /** Our descriptor. */
+  @Extension
+  @Discovery
+  public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDisplayName() {
+      return Messages.RestDiscoveryTrait_displayName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMBuilder> getBuilderClass() {
+      return GitSCMBuilder.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSourceContext> getContextClass() {
+      return GerritSCMSourceContext.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends SCMSource> getSourceClass() {
+      return GerritSCMSource.class;
+    }
+  }
+}
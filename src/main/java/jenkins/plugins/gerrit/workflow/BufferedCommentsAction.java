@@ -0,0 +1,284 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.changes.NotifyHandling;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.api.changes.RevisionApi;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.plugins.gerrit.GerritApiBuilder;
+import jenkins.plugins.gerrit.GerritChange;
+
+/**
+ * Comments of a run buffered by {@code gerritComment buffered: true}, waiting to be published in a
+ * single review by {@code gerritFlushComments}, the next {@code gerritReview} or the end of the
+ * run.
+ *
+ * <p>Comments are grouped by the GERRIT_* environment they were created with, so that each group
+ * can be published to its own change even after the pipeline has left the {@code withEnv} block.
+ */
+public class BufferedCommentsAction extends InvisibleAction {
+  static final int MAX_BUFFERED_COMMENTS =
+      Integer.getInteger("gerrit.comments.maxBuffered", 5000);
+  static final int COMMENTS_CHUNK_SIZE =
+      Math.max(1, Integer.getInteger("gerrit.comments.chunkSize", 500));
+
+  private static final String[] CHANGE_ENV_VARS = {
+    "GERRIT_API_URL",
+    "GERRIT_CHANGE_URL",
+    "GERRIT_API_INSECURE_HTTPS",
+    "GERRIT_CREDENTIALS_ID",
+    "GERRIT_PROJECT",
+    "GERRIT_CHANGE_NUMBER",
+    "GERRIT_PATCHSET_NUMBER",
+    "BRANCH_NAME"
+  };
+
+  private final List<Batch> batches = new ArrayList<>();
+  private int dropped;
+
+  /** Returns the buffer of the run, creating it if needed. */
+  static BufferedCommentsAction of(Run<?, ?> run) {
+    synchronized (run) {
+      BufferedCommentsAction action = run.getAction(BufferedCommentsAction.class);
+      if (action == null) {
+        action = new BufferedCommentsAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /** Extracts the part of a build environment that identifies the target change. */
+  static TreeMap<String, String> changeEnv(Map<String, String> envVars) {
+    TreeMap<String, String> changeEnv = new TreeMap<>();
+    for (String name : CHANGE_ENV_VARS) {
+      String value = envVars.get(name);
+      if (value != null) {
+        changeEnv.put(name, value);
+      }
+    }
+    return changeEnv;
+  }
+
+  /**
+   * Buffers a comment for the change identified by {@code changeEnv}.
+   *
+   * @return false if the buffer is full and the comment has been dropped
+   */
+  synchronized boolean add(
+      TreeMap<String, String> changeEnv, String path, int line, String message) {
+    if (size() >= MAX_BUFFERED_COMMENTS) {
+      dropped++;
+      return false;
+    }
+    Batch batch = null;
+    for (Batch b : batches) {
+      if (b.changeEnv.equals(changeEnv)) {
+        batch = b;
+        break;
+      }
+    }
+    if (batch == null) {
+      batch = new Batch(changeEnv);
+      batches.add(batch);
+    }
+    batch.comments.add(new Comment(path, line, message));
+    return true;
+  }
+
+  /** Removes and returns the comments buffered for the change identified by {@code changeEnv}. */
+  synchronized Batch take(TreeMap<String, String> changeEnv) {
+    for (Iterator<Batch> it = batches.iterator(); it.hasNext(); ) {
+      Batch batch = it.next();
+      if (batch.changeEnv.equals(changeEnv)) {
+        it.remove();
+        return batch;
+      }
+    }
+    return null;
+  }
+
+  /** Removes and returns all the buffered comments. */
+  synchronized List<Batch> takeAll() {
+    List<Batch> all = new ArrayList<>(batches);
+    batches.clear();
+    return all;
+  }
+
+  /** Puts back comments that could not be published. */
+  synchronized void restore(Batch batch) {
+    batches.add(0, batch);
+  }
+
+  /** Puts back, in order, the batches that still have comments to publish. */
+  synchronized void restoreAll(List<Batch> unpublished) {
+    List<Batch> restored = new ArrayList<>();
+    for (Batch batch : unpublished) {
+      if (!batch.comments.isEmpty()) {
+        restored.add(batch);
+      }
+    }
+    batches.addAll(0, restored);
+  }
+
+  synchronized int size() {
+    return batches.stream().mapToInt(b -> b.comments.size()).sum();
+  }
+
+  synchronized int getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Publishes a review together with buffered comments. When there are more comments than
+   * {@code gerrit.comments.chunkSize}, the first chunk goes with the review and the others are
+   * published as additional comment-only reviews.
+   *
+   * <p>Published comments are removed from the batch, so that on failure only the remaining ones
+   * need to be {@link #restore restored}.
+   */
+  static void publish(RevisionApi revision, ReviewInput review, Batch batch, PrintStream logger)
+      throws RestApiException {
+    if (batch == null || batch.comments.isEmpty()) {
+      revision.review(review);
+      return;
+    }
+
+    List<Comment> comments = batch.comments;
+    int chunks = (comments.size() + COMMENTS_CHUNK_SIZE - 1) / COMMENTS_CHUNK_SIZE;
+    logger.format(
+        "Gerrit review publishing %d buffered comments in %d request(s)%n",
+        comments.size(), chunks);
+    ReviewInput chunkReview = review;
+    while (!comments.isEmpty()) {
+      if (chunkReview == null) {
+        chunkReview = new ReviewInput();
+        chunkReview.tag = review.tag;
+        chunkReview.notify = review.notify;
+      }
+      List<Comment> chunk = comments.subList(0, Math.min(comments.size(), COMMENTS_CHUNK_SIZE));
+      chunkReview.comments = toCommentInputs(chunk);
+      revision.review(chunkReview);
+      chunk.clear();
+      chunkReview = null;
+    }
+  }
+
+  /**
+   * Splits a review and buffered comments into the reviews to post in order, the same way as
+   * {@link #publish}, for the outbox to deliver them.
+   */
+  static List<ReviewInput> reviews(ReviewInput review, Batch batch) {
+    List<ReviewInput> reviews = new ArrayList<>();
+    reviews.add(review);
+    if (batch == null) {
+      return reviews;
+    }
+    List<Comment> comments = batch.comments;
+    for (int from = 0; from < comments.size(); from += COMMENTS_CHUNK_SIZE) {
+      ReviewInput chunkReview = review;
+      if (from > 0) {
+        chunkReview = new ReviewInput();
+        chunkReview.tag = review.tag;
+        chunkReview.notify = review.notify;
+        reviews.add(chunkReview);
+      }
+      chunkReview.comments =
+          toCommentInputs(
+              comments.subList(from, Math.min(comments.size(), from + COMMENTS_CHUNK_SIZE)));
+    }
+    return reviews;
+  }
+
+  /**
+   * Publishes a batch in comment-only reviews. Published comments are removed from the batch, so
+   * that on failure the caller can restore or queue the remaining ones.
+   */
+  static void flush(Run<?, ?> run, Batch batch, GerritApiBuilder apiBuilder, PrintStream logger)
+      throws Exception {
+    GerritApi gerritApi =
+        apiBuilder.logger(logger).environment(batch.changeEnv, run).requireAuthentication().build();
+    GerritChange change = new GerritChange(batch.changeEnv, logger);
+    if (gerritApi == null || !change.valid()) {
+      logger.format("Gerrit review discarding %d buffered comments%n", batch.comments.size());
+      batch.comments.clear();
+      return;
+    }
+    publish(
+        GerritReviewStep.getChangeApi(gerritApi, change).revision(change.getRevision()),
+        commentsReview(),
+        batch,
+        logger);
+  }
+
+  /** The review carrying only buffered comments. */
+  static ReviewInput commentsReview() {
+    ReviewInput review = new ReviewInput();
+    review.tag = "autogenerated:jenkins";
+    String notifyProp = System.getProperty("gerrit.notify");
+    if (notifyProp != null) {
+      review.notify = NotifyHandling.valueOf(notifyProp);
+    }
+    return review;
+  }
+
+  private static Map<String, List<ReviewInput.CommentInput>> toCommentInputs(
+      List<Comment> comments) {
+    Map<String, List<ReviewInput.CommentInput>> commentInputs = new LinkedHashMap<>();
+    for (Comment comment : comments) {
+      ReviewInput.CommentInput input = new ReviewInput.CommentInput();
+      input.path = comment.path;
+      if (comment.line > 0) {
+        input.line = comment.line;
+      }
+      input.message = comment.message;
+      commentInputs.computeIfAbsent(comment.path, p -> new ArrayList<>()).add(input);
+    }
+    return commentInputs;
+  }
+
+  /** The comments buffered for one change. */
+  static class Batch {
+    final TreeMap<String, String> changeEnv;
+    final List<Comment> comments = new ArrayList<>();
+
+    Batch(TreeMap<String, String> changeEnv) {
+      this.changeEnv = changeEnv;
+    }
+  }
+
+  static class Comment {
+    final String path;
+    final int line;
+    final String message;
+
+    Comment(String path, int line, String message) {
+      this.path = path;
+      this.line = line;
+      this.message = message;
+    }
+  }
+}
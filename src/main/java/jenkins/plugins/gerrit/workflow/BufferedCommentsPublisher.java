@@ -0,0 +1,125 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.LogTaskListener;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import jenkins.plugins.gerrit.GerritApiBuilder;
+import jenkins.plugins.gerrit.GerritChange;
+import jenkins.util.Timer;
+
+/**
+ * Publishes the comments still buffered when a run completes. They are published in the
+ * background, so that completing the run does not wait for Gerrit, and the outcome is logged to
+ * the Jenkins log since the build log is closed by then. Comments that cannot be published are
+ * queued in the {@link GerritOutbox}, which retries them.
+ */
+@Extension
+public class BufferedCommentsPublisher extends RunListener<Run<?, ?>> {
+  private static final Logger LOGGER = Logger.getLogger(BufferedCommentsPublisher.class.getName());
+
+  @Override
+  public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+    BufferedCommentsAction bufferedComments = run.getAction(BufferedCommentsAction.class);
+    if (bufferedComments == null) {
+      return;
+    }
+    if (bufferedComments.getDropped() > 0) {
+      listener
+          .getLogger()
+          .format(
+              "Gerrit review dropped %d comments over the limit of %d buffered comments%n",
+              bufferedComments.getDropped(), BufferedCommentsAction.MAX_BUFFERED_COMMENTS);
+    }
+    List<BufferedCommentsAction.Batch> batches = bufferedComments.takeAll();
+    if (batches.isEmpty()) {
+      return;
+    }
+    listener
+        .getLogger()
+        .format(
+            "Gerrit review publishing %d buffered comments in the background%n",
+            batches.stream().mapToInt(batch -> batch.comments.size()).sum());
+    Timer.get().submit(() -> publish(run, batches));
+  }
+
+  private static void publish(Run<?, ?> run, List<BufferedCommentsAction.Batch> batches) {
+    PrintStream logger = new LogTaskListener(LOGGER, Level.FINE).getLogger();
+    boolean queued = false;
+    for (BufferedCommentsAction.Batch batch : batches) {
+      try {
+        BufferedCommentsAction.flush(run, batch, new GerritApiBuilder(), logger);
+      } catch (Exception e) {
+        LOGGER.log(
+            Level.WARNING, "Unable to publish buffered comments of " + run.getFullDisplayName(), e);
+        queued |= enqueue(run, batch);
+      }
+    }
+    if (queued) {
+      GerritOutbox.get().deliverSoon();
+    }
+    // The buffer of the run is now empty
+    try {
+      run.save();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save " + run.getFullDisplayName(), e);
+    }
+  }
+
+  /** Hands the comments left in a batch to the outbox, logging them as lost if it refuses them. */
+  private static boolean enqueue(Run<?, ?> run, BufferedCommentsAction.Batch batch) {
+    int comments = batch.comments.size();
+    if (comments == 0) {
+      return false;
+    }
+    try {
+      GerritOutbox.get()
+          .enqueue(
+              run,
+              batch.changeEnv,
+              new GerritChange(batch.changeEnv, null),
+              BufferedCommentsAction.reviews(BufferedCommentsAction.commentsReview(), batch));
+      LOGGER.log(
+          Level.INFO,
+          "Gerrit outbox queued {0} buffered comments of {1}",
+          new Object[] {comments, run.getFullDisplayName()});
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logLost(run, comments, e);
+    } catch (IOException | RuntimeException e) {
+      logLost(run, comments, e);
+    }
+    return false;
+  }
+
+  private static void logLost(Run<?, ?> run, int comments, Exception e) {
+    LOGGER.log(
+        Level.WARNING,
+        String.format(
+            "Lost %d buffered comments of %s, the Gerrit outbox refused them",
+            comments, run.getFullDisplayName()),
+        e);
+  }
+}
@@ -0,0 +1,349 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import hudson.remoting.VirtualChannel;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Streams a SARIF or checkstyle report on the agent that holds it, and returns only the findings
+ * to publish: duplicates are dropped and at most {@code maxPerFile} findings per file and {@code
+ * maxFindings} overall are kept, so memory stays bounded whatever the size of the report.
+ */
+class FindingsParser extends MasterToSlaveFileCallable<FindingsParser.Findings> {
+  private static final long serialVersionUID = 1L;
+
+  enum Format {
+    SARIF,
+    CHECKSTYLE;
+
+    static Format of(String format, String fileName) {
+      if (format != null && !format.isEmpty()) {
+        return valueOf(format.toUpperCase(Locale.ROOT));
+      }
+      return fileName.toLowerCase(Locale.ROOT).endsWith(".xml") ? CHECKSTYLE : SARIF;
+    }
+  }
+
+  private final Format format;
+  private final String workspace;
+  private final int maxPerFile;
+  private final int maxFindings;
+
+  FindingsParser(Format format, String workspace, int maxPerFile, int maxFindings) {
+    this.format = format;
+    this.workspace = workspace;
+    this.maxPerFile = maxPerFile;
+    this.maxFindings = maxFindings;
+  }
+
+  @Override
+  public Findings invoke(File report, VirtualChannel channel) throws IOException {
+    Collector collector = new Collector();
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(report.toPath()))) {
+      if (format == Format.CHECKSTYLE) {
+        parseCheckstyle(in, collector);
+      } else {
+        parseSarif(in, collector);
+      }
+    }
+    return collector.findings;
+  }
+
+  private void parseCheckstyle(InputStream in, Collector collector) throws IOException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      XMLStreamReader xml = factory.createXMLStreamReader(in);
+      try {
+        String fileName = null;
+        while (xml.hasNext()) {
+          if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          if ("file".equals(xml.getLocalName())) {
+            fileName = xml.getAttributeValue(null, "name");
+          } else if ("error".equals(xml.getLocalName()) && fileName != null) {
+            collector.add(
+                fileName,
+                parseLine(xml.getAttributeValue(null, "line")),
+                xml.getAttributeValue(null, "severity"),
+                xml.getAttributeValue(null, "source"),
+                xml.getAttributeValue(null, "message"));
+          }
+        }
+      } finally {
+        xml.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Invalid checkstyle report", e);
+    }
+  }
+
+  private void parseSarif(InputStream in, Collector collector) throws IOException {
+    try (JsonReader json = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("runs".equals(json.nextName())) {
+          json.beginArray();
+          while (json.hasNext()) {
+            parseSarifRun(json, collector);
+          }
+          json.endArray();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    } catch (IllegalStateException e) {
+      throw new IOException("Invalid SARIF report", e);
+    }
+  }
+
+  private void parseSarifRun(JsonReader json, Collector collector) throws IOException {
+    json.beginObject();
+    while (json.hasNext()) {
+      if ("results".equals(json.nextName())) {
+        json.beginArray();
+        while (json.hasNext()) {
+          parseSarifResult(json, collector);
+        }
+        json.endArray();
+      } else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+  }
+
+  private void parseSarifResult(JsonReader json, Collector collector) throws IOException {
+    String ruleId = null;
+    String level = null;
+    String message = null;
+    String uri = null;
+    int line = 0;
+    json.beginObject();
+    while (json.hasNext()) {
+      switch (json.nextName()) {
+        case "ruleId":
+          ruleId = nextString(json);
+          break;
+        case "level":
+          level = nextString(json);
+          break;
+        case "message":
+          message = readProperty(json, "text");
+          break;
+        case "locations":
+          json.beginArray();
+          while (json.hasNext()) {
+            if (uri == null) {
+              SarifLocation location = parseSarifLocation(json);
+              uri = location.uri;
+              line = location.line;
+            } else {
+              json.skipValue();
+            }
+          }
+          json.endArray();
+          break;
+        default:
+          json.skipValue();
+      }
+    }
+    json.endObject();
+    if (uri != null) {
+      collector.add(uri, line, level, ruleId, message);
+    }
+  }
+
+  private SarifLocation parseSarifLocation(JsonReader json) throws IOException {
+    SarifLocation location = new SarifLocation();
+    json.beginObject();
+    while (json.hasNext()) {
+      if ("physicalLocation".equals(json.nextName())) {
+        json.beginObject();
+        while (json.hasNext()) {
+          switch (json.nextName()) {
+            case "artifactLocation":
+              location.uri = readProperty(json, "uri");
+              break;
+            case "region":
+              location.line = parseLine(readProperty(json, "startLine"));
+              break;
+            default:
+              json.skipValue();
+          }
+        }
+        json.endObject();
+      } else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+    return location;
+  }
+
+  /** Reads a single scalar property of an object, skipping all the others. */
+  private static String readProperty(JsonReader json, String name) throws IOException {
+    if (json.peek() != JsonToken.BEGIN_OBJECT) {
+      json.skipValue();
+      return null;
+    }
+    String value = null;
+    json.beginObject();
+    while (json.hasNext()) {
+      if (name.equals(json.nextName())) {
+        value = nextString(json);
+      } else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+    return value;
+  }
+
+  private static String nextString(JsonReader json) throws IOException {
+    JsonToken token = json.peek();
+    if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+      return json.nextString();
+    }
+    json.skipValue();
+    return null;
+  }
+
+  private static int parseLine(String line) {
+    try {
+      return line == null ? 0 : Math.max(0, Integer.parseInt(line));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private String relativize(String path) {
+    String relative = path.replace('\\', '/');
+    if (relative.startsWith("file://")) {
+      relative = relative.substring("file://".length());
+    }
+    String root = workspace.replace('\\', '/');
+    if (!root.endsWith("/")) {
+      root += "/";
+    }
+    if (relative.startsWith(root)) {
+      relative = relative.substring(root.length());
+    } else if (relative.startsWith("/" + root)) {
+      relative = relative.substring(root.length() + 1);
+    }
+    while (relative.startsWith("./")) {
+      relative = relative.substring(2);
+    }
+    return relative;
+  }
+
+  private static class SarifLocation {
+    String uri;
+    int line;
+  }
+
+  /** Applies deduplication and limits while the report is being read. */
+  private class Collector {
+    private final Findings findings = new Findings();
+    private final Map<String, Set<String>> seen = new HashMap<>();
+
+    void add(String path, int line, String severity, String rule, String message) {
+      if (message == null || message.isEmpty()) {
+        return;
+      }
+      findings.total++;
+      String file = relativize(path);
+      String key = line + ":" + rule + ":" + message;
+      Set<String> fileSeen = seen.get(file);
+      if (fileSeen != null && fileSeen.contains(key)) {
+        findings.duplicates++;
+        return;
+      }
+      if (findings.kept >= maxFindings || (fileSeen != null && fileSeen.size() >= maxPerFile)) {
+        findings.dropped++;
+        return;
+      }
+      if (fileSeen == null) {
+        fileSeen = new HashSet<>();
+        seen.put(file, fileSeen);
+      }
+      fileSeen.add(key);
+      findings.kept++;
+      findings.byFile
+          .computeIfAbsent(file, f -> new ArrayList<>())
+          .add(new Finding(line, format(severity, rule, message)));
+    }
+
+    private String format(String severity, String rule, String message) {
+      StringBuilder text = new StringBuilder();
+      if (severity != null && !severity.isEmpty()) {
+        text.append('[').append(severity).append("] ");
+      }
+      if (rule != null && !rule.isEmpty()) {
+        text.append(rule).append(": ");
+      }
+      return text.append(message).toString();
+    }
+  }
+
+  /** The findings selected for publishing, with the counts of the ones left out. */
+  static class Findings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final LinkedHashMap<String, List<Finding>> byFile = new LinkedHashMap<>();
+    int total;
+    int kept;
+    int duplicates;
+    int dropped;
+  }
+
+  static class Finding implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int line;
+    final String message;
+
+    Finding(int line, String message) {
+      this.line = line;
+      this.message = message;
+    }
+  }
+}
@@ -14,53 +14,81 @@
 
 package jenkins.plugins.gerrit.workflow;
 
+import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.plugins.checks.api.CheckInput;
 import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.client.Checks;
 import com.google.gerrit.plugins.checks.client.GerritChecksApi;
+import hudson.EnvVars;
 import hudson.Extension;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import jenkins.model.Jenkins;
-import jenkins.plugins.gerrit.GerritApiBuilder;
 import jenkins.plugins.gerrit.GerritChange;
 import org.jenkinsci.plugins.workflow.steps.Step;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
-import org.jenkinsci.plugins.workflow.steps.SynchronousStepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 public class GerritCheckStep extends Step {
+  private static final int UPDATE_THREADS = Integer.getInteger("gerrit.checks.updateThreads", 8);
+
+  /** Shared by all gerritCheck steps so that concurrent updates stay bounded across builds. */
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          UPDATE_THREADS,
+          new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit checks updater"));
+
   private Map<String, String> checks;
   private String message = "";
   private String url;
+  private boolean outbox;
 
   @DataBoundConstructor
   public GerritCheckStep() {}
 
-  public class Execution extends SynchronousStepExecution<Void> {
+  public static class Execution extends GerritStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
+
     private final TaskListener listener;
     private final String consoleLogUri;
+    private final LinkedHashMap<String, String> checks;
+    private final String message;
+    private final String url;
+    private final boolean outbox;
 
-    protected Execution(StepContext context)
+    protected Execution(GerritCheckStep step, StepContext context)
         throws IOException, InterruptedException, URISyntaxException {
-      super(context);
+      super("gerritCheck", context);
       this.listener = getContext().get(TaskListener.class);
       this.consoleLogUri = getConsoleLogUri(context);
+      this.checks = step.checks == null ? null : new LinkedHashMap<>(step.checks);
+      this.message = step.message;
+      this.url = step.url;
+      this.outbox = step.outbox;
     }
 
     @Override
     protected Void run() throws Exception {
-      GerritChecksApi gerritChecksApi =
-          new GerritApiBuilder().stepContext(getContext()).requireAuthentication().buildChecksApi();
+      GerritChecksApi gerritChecksApi = apiBuilder().requireAuthentication().buildChecksApi();
       if (gerritChecksApi == null) {
         return null;
       }
@@ -71,24 +99,72 @@ public class GerritCheckStep extends Step {
             .format(
                 "Gerrit review change %d/%d checks %s (%s)%n",
                 change.getChangeId(), change.getRevision(), checks, message);
-        if (checks != null) {
+        if (checks != null && outbox) {
+          GerritOutbox gerritOutbox = GerritOutbox.get();
+          Run<?, ?> run = getContext().get(Run.class);
+          EnvVars envVars = getContext().get(EnvVars.class);
+          for (Map.Entry<String, String> check : checks.entrySet()) {
+            gerritOutbox.enqueue(run, envVars, change, checkInput(check));
+          }
+          gerritOutbox.deliverSoon();
+          listener.getLogger().println("Gerrit checks queued in the outbox");
+        } else if (checks != null) {
+          Checks patchSetChecks =
+              gerritChecksApi.checks().change(change.getChangeId()).patchSet(change.getRevision());
+          Map<String, Future<?>> updates = new LinkedHashMap<>();
           for (Map.Entry<String, String> check : checks.entrySet()) {
-            CheckInput input = new CheckInput();
-            input.checkerUuid = check.getKey();
-            input.state = CheckState.valueOf(check.getValue());
-            input.message = message;
-            input.url = url != null ? url : consoleLogUri;
-            input = setCheckTimestamps(input, input.state);
-            gerritChecksApi
-                .checks()
-                .change(change.getChangeId())
-                .patchSet(change.getRevision())
-                .update(input);
+            CheckInput checkInput = checkInput(check);
+            updates.put(
+                check.getKey(),
+                executor.submit(
+                    () -> {
+                      once("check " + check.getKey(), () -> patchSetChecks.update(checkInput));
+                      return null;
+                    }));
           }
+          awaitUpdates(updates);
         }
       }
       return null;
     }
+
+    private CheckInput checkInput(Map.Entry<String, String> check) {
+      CheckInput input = new CheckInput();
+      input.checkerUuid = check.getKey();
+      input.state = CheckState.valueOf(check.getValue());
+      input.message = message;
+      input.url = url != null ? url : consoleLogUri;
+      return setCheckTimestamps(input, input.state);
+    }
+
+    private void awaitUpdates(Map<String, Future<?>> updates)
+        throws InterruptedException, RestApiException {
+      List<Throwable> failures = new ArrayList<>();
+      try {
+        for (Map.Entry<String, Future<?>> update : updates.entrySet()) {
+          try {
+            update.getValue().get();
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            listener
+                .getLogger()
+                .format("Gerrit check %s could not be updated: %s%n", update.getKey(), cause);
+            failures.add(cause);
+          }
+        }
+      } finally {
+        updates.values().forEach(f -> f.cancel(true));
+      }
+
+      if (!failures.isEmpty()) {
+        RestApiException e =
+            new RestApiException(
+                String.format(
+                    "Could not update %d of %d Gerrit checks", failures.size(), updates.size()));
+        failures.forEach(e::addSuppressed);
+        throw e;
+      }
+    }
   }
 
   public Map<String, String> getChecks() {
@@ -118,12 +194,22 @@ public class GerritCheckStep extends Step {
     this.url = url;
   }
 
+  public boolean isOutbox() {
+    return outbox;
+  }
+
+  /** Queues the check updates in the {@link GerritOutbox} instead of waiting for Gerrit. */
+  @DataBoundSetter
+  public void setOutbox(boolean outbox) {
+    this.outbox = outbox;
+  }
+
   @Override
   public StepExecution start(StepContext stepContext) throws Exception {
-    return new Execution(stepContext);
+    return new Execution(this, stepContext);
   }
 
-  private String getConsoleLogUri(StepContext stepContext)
+  private static String getConsoleLogUri(StepContext stepContext)
       throws IOException, InterruptedException {
     String rootUrl = Jenkins.getInstance().getRootUrl();
     if (rootUrl == null) {
@@ -132,7 +218,7 @@ public class GerritCheckStep extends Step {
     return rootUrl + stepContext.get(Run.class).getUrl() + "console";
   }
 
-  private CheckInput setCheckTimestamps(CheckInput input, CheckState state) {
+  private static CheckInput setCheckTimestamps(CheckInput input, CheckState state) {
     Timestamp now = new Timestamp(System.currentTimeMillis());
     switch (state) {
       case RUNNING:
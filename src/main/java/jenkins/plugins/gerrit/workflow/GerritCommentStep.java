@@ -21,12 +21,12 @@ import com.google.gerrit.extensions.api.changes.DraftInput;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 import javax.annotation.Nonnull;
-import jenkins.plugins.gerrit.GerritApiBuilder;
 import jenkins.plugins.gerrit.GerritChange;
 import jenkins.plugins.gerrit.GerritVersion;
 import org.jenkinsci.plugins.workflow.steps.*;
@@ -38,6 +38,7 @@ public class GerritCommentStep extends Step {
   private String path;
   private int line;
   private String message;
+  private boolean buffered;
 
   @DataBoundConstructor
   public GerritCommentStep(String path, String message) {
@@ -54,21 +55,41 @@ public class GerritCommentStep extends Step {
     this.line = line;
   }
 
-  public class Execution extends SynchronousStepExecution<Void> {
-    private final TaskListener listener;
-    private final EnvVars envVars;
+  public boolean isBuffered() {
+    return buffered;
+  }
+
+  /**
+   * Buffers the comment in the run instead of creating a draft, so that it is published with the
+   * other buffered comments in a single review.
+   */
+  @DataBoundSetter
+  public void setBuffered(boolean buffered) {
+    this.buffered = buffered;
+  }
 
-    protected Execution(@Nonnull StepContext context) throws IOException, InterruptedException {
-      super(context);
+  public static class Execution extends GerritStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
 
-      this.envVars = context.get(EnvVars.class);
+    private final TaskListener listener;
+    private final String path;
+    private final int line;
+    private final String message;
+    private final boolean buffered;
+
+    protected Execution(GerritCommentStep step, @Nonnull StepContext context)
+        throws IOException, InterruptedException {
+      super("gerritComment", context);
       this.listener = getContext().get(TaskListener.class);
+      this.path = step.path;
+      this.line = step.line;
+      this.message = step.message;
+      this.buffered = step.buffered;
     }
 
     @Override
     protected Void run() throws Exception {
-      GerritApi gerritApi =
-          new GerritApiBuilder().stepContext(getContext()).requireAuthentication().build();
+      GerritApi gerritApi = apiBuilder().requireAuthentication().build();
       if (gerritApi == null) {
         return null;
       }
@@ -80,6 +101,10 @@ public class GerritCommentStep extends Step {
             .format(
                 "Gerrit review change %d/%d %s=%d (%s)%n",
                 change.getChangeId(), change.getRevision(), path, line, message);
+        if (buffered) {
+          buffer();
+          return null;
+        }
         DraftInput draftInput = new DraftInput();
         draftInput.path = path;
         draftInput.line = line;
@@ -88,9 +113,26 @@ public class GerritCommentStep extends Step {
       }
       return null;
     }
+
+    private void buffer() throws IOException, InterruptedException {
+      BufferedCommentsAction bufferedComments =
+          BufferedCommentsAction.of(getContext().get(Run.class));
+      if (!bufferedComments.add(
+          BufferedCommentsAction.changeEnv(getContext().get(EnvVars.class)),
+          path,
+          line,
+          message)) {
+        listener
+            .getLogger()
+            .format(
+                "Gerrit review comment dropped: more than %d buffered comments%n",
+                BufferedCommentsAction.MAX_BUFFERED_COMMENTS);
+      }
+    }
   }
 
-  private ChangeApi getChangeApi(GerritApi gerritApi, GerritChange change) throws RestApiException {
+  private static ChangeApi getChangeApi(GerritApi gerritApi, GerritChange change)
+      throws RestApiException {
     Changes changesApi = gerritApi.changes();
     return GerritVersion.isVersionBelow215(gerritApi)
         ? changesApi.id(change.getChangeId())
@@ -99,7 +141,7 @@ public class GerritCommentStep extends Step {
 
   @Override
   public StepExecution start(StepContext stepContext) throws Exception {
-    return new GerritCommentStep.Execution(stepContext);
+    return new GerritCommentStep.Execution(this, stepContext);
   }
 
   @Extension
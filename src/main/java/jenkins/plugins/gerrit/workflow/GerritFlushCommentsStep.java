@@ -0,0 +1,91 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/** Publishes the comments buffered by {@code gerritComment buffered: true} so far. */
+public class GerritFlushCommentsStep extends Step {
+
+  @DataBoundConstructor
+  public GerritFlushCommentsStep() {}
+
+  public static class Execution extends GerritStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
+
+    private final TaskListener listener;
+
+    protected Execution(@Nonnull StepContext context) throws IOException, InterruptedException {
+      super("gerritFlushComments", context);
+      this.listener = getContext().get(TaskListener.class);
+    }
+
+    @Override
+    protected Void run() throws Exception {
+      Run<?, ?> run = getContext().get(Run.class);
+      BufferedCommentsAction bufferedComments = run.getAction(BufferedCommentsAction.class);
+      if (bufferedComments == null) {
+        return null;
+      }
+      List<BufferedCommentsAction.Batch> batches = bufferedComments.takeAll();
+      for (int i = 0; i < batches.size(); i++) {
+        try {
+          BufferedCommentsAction.flush(run, batches.get(i), apiBuilder(), listener.getLogger());
+        } catch (Exception e) {
+          bufferedComments.restoreAll(batches.subList(i, batches.size()));
+          throw e;
+        }
+      }
+      return null;
+    }
+  }
+
+  @Override
+  public StepExecution start(StepContext stepContext) throws Exception {
+    return new Execution(stepContext);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends StepDescriptor {
+
+    @Override
+    public Set<Class<?>> getRequiredContext() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public String getFunctionName() {
+      return "gerritFlushComments";
+    }
+
+    @Nonnull
+    @Override
+    public String getDisplayName() {
+      return "Gerrit Publish Buffered Comments";
+    }
+  }
+}
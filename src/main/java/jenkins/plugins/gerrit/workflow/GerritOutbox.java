@@ -0,0 +1,561 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.plugins.checks.api.CheckInput;
+import com.google.gerrit.plugins.checks.client.GerritChecksApi;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+import com.urswolfer.gerrit.client.rest.http.HttpStatusException;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.ManagementLink;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.security.ACL;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.gerrit.GerritApiBuilder;
+import jenkins.plugins.gerrit.GerritChange;
+import jenkins.util.Timer;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Review and check updates queued by {@code gerritReview outbox: true} and {@code gerritCheck
+ * outbox: true}, persisted in JENKINS_HOME and delivered in the background.
+ *
+ * <p>The updates of a patch set are delivered in order: one that fails is retried with an
+ * exponential backoff and holds back the later ones. An update refused by Gerrit, or still failing
+ * after {@code gerrit.outbox.maxAttempts} attempts, is parked for an administrator to retry or
+ * delete. Queued votes and check states superseded by a newer update of the same label or checker
+ * are dropped before being sent.
+ *
+ * <p>Each change of the queue is appended to a journal next to the outbox file, which is compacted
+ * into the outbox file every {@code gerrit.outbox.compactEvery} changes.
+ */
+@Extension
+public class GerritOutbox extends ManagementLink implements Saveable {
+  private static final Logger LOGGER = Logger.getLogger(GerritOutbox.class.getName());
+
+  static final int MAX_ENTRIES = Integer.getInteger("gerrit.outbox.maxEntries", 10000);
+  static final int MAX_ATTEMPTS = Integer.getInteger("gerrit.outbox.maxAttempts", 20);
+  static final int COMPACT_EVERY = Integer.getInteger("gerrit.outbox.compactEvery", 1000);
+
+  private static final long BASE_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(15);
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private final List<Entry> entries = new ArrayList<>();
+  private long nextId = 1;
+  private long superseded;
+  /** The last journal record included in the outbox file. */
+  private long journalSeq;
+
+  private final transient AtomicBoolean delivering = new AtomicBoolean();
+  private transient Entry sending;
+  private transient int journaled;
+
+  public GerritOutbox() {
+    XmlFile file = getConfigFile();
+    if (file.exists()) {
+      try {
+        file.unmarshal(this);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to load the Gerrit outbox from " + file, e);
+      }
+    }
+    replayJournal();
+  }
+
+  public static GerritOutbox get() {
+    return Jenkins.getInstance().getExtensionList(GerritOutbox.class).get(0);
+  }
+
+  /** Queues reviews to post in order, all of them or none if the outbox is full. */
+  synchronized void enqueue(
+      Run<?, ?> run, Map<String, String> envVars, GerritChange change, List<ReviewInput> reviews)
+      throws IOException {
+    checkCapacity(reviews.size());
+    for (ReviewInput review : reviews) {
+      enqueue(run, envVars, change, review);
+    }
+  }
+
+  /** Queues a review, dropping the votes it overrides from the reviews still queued. */
+  synchronized void enqueue(
+      Run<?, ?> run, Map<String, String> envVars, GerritChange change, ReviewInput review)
+      throws IOException {
+    checkCapacity(1);
+    Entry entry = new Entry(nextId, run, envVars, change, review, null);
+    if (review.labels != null && !review.labels.isEmpty()) {
+      for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+        Entry queued = it.next();
+        if (queued.review != null
+            && queued.review.labels != null
+            && queued != sending
+            && !queued.parked
+            && queued.key.equals(entry.key)) {
+          queued.review.labels.keySet().removeAll(review.labels.keySet());
+          if (queued.isEmpty()) {
+            it.remove();
+            superseded++;
+            journal(new Removed(queued.id, true));
+          } else {
+            journal(new Put(queued));
+          }
+        }
+      }
+    }
+    add(entry);
+  }
+
+  /** Queues a check update, dropping the queued updates of the same checker. */
+  synchronized void enqueue(
+      Run<?, ?> run, Map<String, String> envVars, GerritChange change, CheckInput check)
+      throws IOException {
+    checkCapacity(1);
+    Entry entry = new Entry(nextId, run, envVars, change, null, check);
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+      Entry queued = it.next();
+      if (queued.check != null
+          && queued != sending
+          && !queued.parked
+          && queued.key.equals(entry.key)
+          && queued.check.checkerUuid.equals(check.checkerUuid)) {
+        it.remove();
+        superseded++;
+        journal(new Removed(queued.id, true));
+      }
+    }
+    add(entry);
+  }
+
+  private void checkCapacity(int added) throws AbortException {
+    if (entries.size() + added > MAX_ENTRIES) {
+      throw new AbortException(
+          String.format("The Gerrit outbox is full with %d queued updates", entries.size()));
+    }
+  }
+
+  private void add(Entry entry) throws IOException {
+    entries.add(entry);
+    nextId++;
+    journal(new Put(entry));
+  }
+
+  /** Delivers the queued updates in the background. */
+  void deliverSoon() {
+    Timer.get().submit(this::deliver);
+  }
+
+  /** Sends the updates that are due, unless another thread is already doing it. */
+  void deliver() {
+    if (!delivering.compareAndSet(false, true)) {
+      return;
+    }
+    SecurityContext previous = ACL.impersonate(ACL.SYSTEM);
+    try {
+      Set<String> heldBack = new HashSet<>();
+      Entry entry;
+      while ((entry = next(heldBack)) != null) {
+        Exception failure = null;
+        try {
+          send(entry);
+        } catch (Exception e) {
+          failure = e;
+        }
+        completed(entry, failure, heldBack);
+      }
+    } finally {
+      SecurityContextHolder.setContext(previous);
+      delivering.set(false);
+    }
+  }
+
+  private synchronized Entry next(Set<String> heldBack) {
+    long now = System.currentTimeMillis();
+    for (Entry entry : entries) {
+      if (entry.parked || heldBack.contains(entry.key)) {
+        continue;
+      }
+      if (entry.nextAttempt > now) {
+        heldBack.add(entry.key);
+        continue;
+      }
+      sending = entry;
+      return entry;
+    }
+    return null;
+  }
+
+  private synchronized void completed(Entry entry, Exception failure, Set<String> heldBack) {
+    sending = null;
+    Record record;
+    if (failure == null) {
+      entries.remove(entry);
+      record = new Removed(entry.id, false);
+    } else {
+      entry.attempts++;
+      entry.lastError = StringUtils.defaultString(failure.getMessage(), failure.toString());
+      if (isRefused(failure) || entry.attempts >= MAX_ATTEMPTS) {
+        entry.parked = true;
+        LOGGER.log(Level.WARNING, "Gerrit outbox parked the update " + entry, failure);
+      } else {
+        long backoff = BASE_BACKOFF_MILLIS << Math.min(entry.attempts - 1, 16);
+        entry.nextAttempt = System.currentTimeMillis() + Math.min(backoff, MAX_BACKOFF_MILLIS);
+        heldBack.add(entry.key);
+      }
+      record = new Put(entry);
+    }
+    try {
+      journal(record);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save the Gerrit outbox", e);
+    }
+  }
+
+  private static void send(Entry entry) throws Exception {
+    Run<?, ?> run = Run.fromExternalizableId(entry.runId);
+    if (run == null) {
+      throw new AbortException("Build " + entry.runId + " no longer exists");
+    }
+    GerritApiBuilder builder =
+        new GerritApiBuilder().environment(entry.changeEnv, run).requireAuthentication();
+    GerritChange change = new GerritChange(entry.changeEnv, null);
+    if (entry.review != null) {
+      GerritApi gerritApi = builder.build();
+      if (gerritApi == null) {
+        throw new AbortException("No Gerrit API configured for " + entry.getTarget());
+      }
+      GerritReviewStep.getChangeApi(gerritApi, change)
+          .revision(change.getRevision())
+          .review(entry.review);
+    } else {
+      GerritChecksApi gerritChecksApi = builder.buildChecksApi();
+      if (gerritChecksApi == null) {
+        throw new AbortException("No Gerrit API configured for " + entry.getTarget());
+      }
+      gerritChecksApi
+          .checks()
+          .change(change.getChangeId())
+          .patchSet(change.getRevision())
+          .update(entry.check);
+    }
+  }
+
+  /** Whether retrying the update cannot help. */
+  private static boolean isRefused(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof AbortException) {
+        return true;
+      }
+      if (t instanceof HttpStatusException) {
+        int status = ((HttpStatusException) t).getStatusCode();
+        return status >= 400 && status < 500 && status != 429;
+      }
+    }
+    return false;
+  }
+
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>(entries);
+  }
+
+  public synchronized long getSuperseded() {
+    return superseded;
+  }
+
+  @RequirePOST
+  public synchronized HttpResponse doRetry(@QueryParameter long id) throws IOException {
+    Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+    for (Entry entry : entries) {
+      if (entry.id == id) {
+        entry.parked = false;
+        entry.attempts = 0;
+        entry.nextAttempt = 0;
+        journal(new Put(entry));
+      }
+    }
+    deliverSoon();
+    return HttpResponses.redirectToDot();
+  }
+
+  @RequirePOST
+  public synchronized HttpResponse doDelete(@QueryParameter long id) throws IOException {
+    Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+    if (entries.removeIf(entry -> entry.id == id && entry != sending)) {
+      journal(new Removed(id, false));
+    }
+    return HttpResponses.redirectToDot();
+  }
+
+  /** Writes the whole outbox and empties the journal. */
+  @Override
+  public synchronized void save() throws IOException {
+    getConfigFile().write(this);
+    Files.deleteIfExists(getJournalFile().toPath());
+    journaled = 0;
+  }
+
+  /** Appends a change of the queue to the journal, compacting it when it has grown too long. */
+  private void journal(Record record) throws IOException {
+    if (journaled >= COMPACT_EVERY) {
+      save();
+      return;
+    }
+    record.seq = ++journalSeq;
+    StringWriter xml = new StringWriter();
+    Jenkins.XSTREAM2.marshal(record, new CompactWriter(xml));
+    // One record per line: line breaks can only occur in text and attribute values
+    String line = xml.toString().replace("\r", "&#13;").replace("\n", "&#10;") + "\n";
+    try (OutputStream out = new FileOutputStream(getJournalFile(), true)) {
+      out.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+    journaled++;
+  }
+
+  /** Applies the journal records written after the outbox file. */
+  private void replayJournal() {
+    File file = getJournalFile();
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Record record;
+        try {
+          record = (Record) Jenkins.XSTREAM2.fromXML(line);
+        } catch (RuntimeException e) {
+          // The last record may be incomplete if Jenkins stopped while writing it
+          LOGGER.log(Level.WARNING, "Ignoring the end of the Gerrit outbox journal " + file, e);
+          break;
+        }
+        if (record.seq > journalSeq) {
+          record.apply(this);
+          journalSeq = record.seq;
+          journaled++;
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read the Gerrit outbox journal " + file, e);
+    }
+  }
+
+  private XmlFile getConfigFile() {
+    File rootDir = Jenkins.getInstance().getRootDir();
+    return new XmlFile(Jenkins.XSTREAM2, new File(rootDir, getClass().getName() + ".xml"));
+  }
+
+  private File getJournalFile() {
+    return new File(Jenkins.getInstance().getRootDir(), getClass().getName() + ".journal");
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "notepad.png";
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Gerrit Outbox";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Review and check updates waiting to be delivered to Gerrit.";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "gerrit-outbox";
+  }
+
+  /** A change of the queue, written to the journal. */
+  private abstract static class Record {
+    long seq;
+
+    abstract void apply(GerritOutbox outbox);
+  }
+
+  /** An entry added to the queue or updated. */
+  private static class Put extends Record {
+    private final Entry entry;
+
+    Put(Entry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    void apply(GerritOutbox outbox) {
+      outbox.entries.removeIf(queued -> queued.id == entry.id);
+      int index = 0;
+      while (index < outbox.entries.size() && outbox.entries.get(index).id < entry.id) {
+        index++;
+      }
+      outbox.entries.add(index, entry);
+      outbox.nextId = Math.max(outbox.nextId, entry.id + 1);
+    }
+  }
+
+  /** An entry delivered, superseded or deleted. */
+  private static class Removed extends Record {
+    private final long id;
+    private final boolean superseded;
+
+    Removed(long id, boolean superseded) {
+      this.id = id;
+      this.superseded = superseded;
+    }
+
+    @Override
+    void apply(GerritOutbox outbox) {
+      if (outbox.entries.removeIf(queued -> queued.id == id) && superseded) {
+        outbox.superseded++;
+      }
+    }
+  }
+
+  /** A queued review or check update of a patch set. */
+  public static class Entry {
+    private final long id;
+    private final long created;
+    private final String runId;
+    private final TreeMap<String, String> changeEnv;
+    /** Identifies the patch set, across Gerrit servers, to deliver its updates in order. */
+    private final String key;
+
+    private final ReviewInput review;
+    private final CheckInput check;
+
+    private int attempts;
+    private long nextAttempt;
+    private String lastError;
+    private boolean parked;
+
+    Entry(
+        long id,
+        Run<?, ?> run,
+        Map<String, String> envVars,
+        GerritChange change,
+        ReviewInput review,
+        CheckInput check) {
+      this.id = id;
+      this.created = System.currentTimeMillis();
+      this.runId = run.getExternalizableId();
+      this.changeEnv = BufferedCommentsAction.changeEnv(envVars);
+      this.key =
+          String.format(
+              "%s %s %d/%d",
+              StringUtils.defaultString(
+                  changeEnv.get("GERRIT_API_URL"), changeEnv.get("GERRIT_CHANGE_URL")),
+              change.getProject(),
+              change.getChangeId(),
+              change.getRevision());
+      this.review = review;
+      this.check = check;
+    }
+
+    private boolean isEmpty() {
+      return (review.labels == null || review.labels.isEmpty())
+          && StringUtils.isEmpty(review.message)
+          && (review.comments == null || review.comments.isEmpty())
+          && (review.robotComments == null || review.robotComments.isEmpty());
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public Date getCreated() {
+      return new Date(created);
+    }
+
+    public String getRunId() {
+      return runId;
+    }
+
+    public String getTarget() {
+      GerritChange change;
+      try {
+        change = new GerritChange(changeEnv, null);
+      } catch (IOException | InterruptedException e) {
+        return key;
+      }
+      return String.format(
+          "%s %d/%d", change.getProject(), change.getChangeId(), change.getRevision());
+    }
+
+    public String getSummary() {
+      if (check != null) {
+        return String.format("check %s: %s", check.checkerUuid, check.state);
+      }
+      return String.format(
+          "review %s %s",
+          review.labels == null ? "{}" : review.labels,
+          StringUtils.abbreviate(StringUtils.defaultString(review.message), 80));
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public Date getNextAttempt() {
+      return nextAttempt == 0 ? null : new Date(nextAttempt);
+    }
+
+    public String getLastError() {
+      return lastError;
+    }
+
+    public boolean isParked() {
+      return parked;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("#%d %s %s", id, getTarget(), getSummary());
+    }
+  }
+}
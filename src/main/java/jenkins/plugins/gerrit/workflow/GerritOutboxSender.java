@@ -0,0 +1,40 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.util.concurrent.TimeUnit;
+
+/** Periodically delivers the updates of the {@link GerritOutbox} that are due for a retry. */
+@Extension
+public class GerritOutboxSender extends AsyncPeriodicWork {
+  private static final long PERIOD_SECONDS = Long.getLong("gerrit.outbox.period", 15);
+
+  public GerritOutboxSender() {
+    super("Gerrit outbox sender");
+  }
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.SECONDS.toMillis(PERIOD_SECONDS);
+  }
+
+  @Override
+  protected void execute(TaskListener listener) {
+    GerritOutbox.get().deliver();
+  }
+}
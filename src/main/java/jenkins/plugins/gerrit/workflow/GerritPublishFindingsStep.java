@@ -0,0 +1,259 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.changes.NotifyHandling;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.api.changes.ReviewInput.RobotCommentInput;
+import com.google.gerrit.extensions.api.changes.RevisionApi;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import jenkins.model.Jenkins;
+import jenkins.plugins.gerrit.GerritChange;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Publishes the findings of a SARIF or checkstyle report from the workspace as robot comments,
+ * in a few chunked reviews instead of one request per finding.
+ */
+public class GerritPublishFindingsStep extends Step {
+  private final String report;
+  private String format;
+  private String robotId = "jenkins";
+  private String message;
+  private int maxPerFile = 20;
+  private int maxFindings = 1000;
+
+  @DataBoundConstructor
+  public GerritPublishFindingsStep(String report) {
+    this.report = report;
+  }
+
+  public String getReport() {
+    return report;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  /** Either {@code sarif} or {@code checkstyle}, guessed from the report extension by default. */
+  @DataBoundSetter
+  public void setFormat(String format) {
+    this.format = format;
+  }
+
+  public String getRobotId() {
+    return robotId;
+  }
+
+  @DataBoundSetter
+  public void setRobotId(String robotId) {
+    this.robotId = robotId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @DataBoundSetter
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public int getMaxPerFile() {
+    return maxPerFile;
+  }
+
+  @DataBoundSetter
+  public void setMaxPerFile(int maxPerFile) {
+    this.maxPerFile = maxPerFile;
+  }
+
+  public int getMaxFindings() {
+    return maxFindings;
+  }
+
+  @DataBoundSetter
+  public void setMaxFindings(int maxFindings) {
+    this.maxFindings = maxFindings;
+  }
+
+  public static class Execution extends GerritStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
+
+    private final TaskListener listener;
+    private final String report;
+    private final FindingsParser.Format format;
+    private final String robotId;
+    private final String message;
+    private final int maxPerFile;
+    private final int maxFindings;
+
+    protected Execution(GerritPublishFindingsStep step, @Nonnull StepContext context)
+        throws IOException, InterruptedException {
+      super("gerritPublishFindings", context);
+      this.listener = getContext().get(TaskListener.class);
+      this.report = step.report;
+      try {
+        this.format = FindingsParser.Format.of(step.format, step.report);
+      } catch (IllegalArgumentException e) {
+        throw new AbortException("Unsupported findings format: " + step.format);
+      }
+      this.robotId = step.robotId;
+      this.message = step.message;
+      this.maxPerFile = step.maxPerFile;
+      this.maxFindings = step.maxFindings;
+    }
+
+    @Override
+    protected Void run() throws Exception {
+      GerritApi gerritApi = apiBuilder().requireAuthentication().build();
+      if (gerritApi == null) {
+        return null;
+      }
+
+      GerritChange change = new GerritChange(getContext());
+      if (!change.valid()) {
+        return null;
+      }
+
+      FilePath workspace = getContext().get(FilePath.class);
+      FilePath reportFile = workspace.child(report);
+      if (!reportFile.exists()) {
+        throw new AbortException("Findings report " + report + " not found in the workspace");
+      }
+      FindingsParser.Findings findings =
+          reportFile.act(
+              new FindingsParser(format, workspace.getRemote(), maxPerFile, maxFindings));
+      listener
+          .getLogger()
+          .format(
+              "Gerrit review change %d/%d publishing %d of %d findings from %s"
+                  + " (%d duplicates, %d over the limits)%n",
+              change.getChangeId(),
+              change.getRevision(),
+              findings.kept,
+              findings.total,
+              report,
+              findings.duplicates,
+              findings.dropped);
+      if (findings.kept == 0 && message == null) {
+        return null;
+      }
+
+      RevisionApi revision =
+          GerritReviewStep.getChangeApi(gerritApi, change).revision(change.getRevision());
+      Run<?, ?> run = getContext().get(Run.class);
+      String runUrl = getRunUrl(run);
+      List<Map<String, List<RobotCommentInput>>> chunks = chunk(findings, run, runUrl);
+      if (chunks.isEmpty()) {
+        chunks.add(Collections.emptyMap());
+      }
+      for (int i = 0; i < chunks.size(); i++) {
+        ReviewInput review = new ReviewInput();
+        if (i == 0) {
+          review.message = message;
+        }
+        review.tag = "autogenerated:jenkins";
+        String notifyProp = System.getProperty("gerrit.notify");
+        if (notifyProp != null) {
+          review.notify = NotifyHandling.valueOf(notifyProp);
+        }
+        review.robotComments = chunks.get(i).isEmpty() ? null : chunks.get(i);
+        once("review " + i, () -> revision.review(review));
+      }
+      return null;
+    }
+
+    private List<Map<String, List<RobotCommentInput>>> chunk(
+        FindingsParser.Findings findings, Run<?, ?> run, String runUrl) {
+      List<Map<String, List<RobotCommentInput>>> chunks = new ArrayList<>();
+      Map<String, List<RobotCommentInput>> chunk = new LinkedHashMap<>();
+      int chunkSize = 0;
+      for (Map.Entry<String, List<FindingsParser.Finding>> file : findings.byFile.entrySet()) {
+        for (FindingsParser.Finding finding : file.getValue()) {
+          if (chunkSize == BufferedCommentsAction.COMMENTS_CHUNK_SIZE) {
+            chunks.add(chunk);
+            chunk = new LinkedHashMap<>();
+            chunkSize = 0;
+          }
+          RobotCommentInput input = new RobotCommentInput();
+          input.path = file.getKey();
+          if (finding.line > 0) {
+            input.line = finding.line;
+          }
+          input.message = finding.message;
+          input.robotId = robotId;
+          input.robotRunId = run.getExternalizableId();
+          input.url = runUrl;
+          chunk.computeIfAbsent(file.getKey(), p -> new ArrayList<>()).add(input);
+          chunkSize++;
+        }
+      }
+      if (chunkSize > 0) {
+        chunks.add(chunk);
+      }
+      return chunks;
+    }
+
+    private static String getRunUrl(Run<?, ?> run) {
+      String rootUrl = Jenkins.getInstance().getRootUrl();
+      return rootUrl == null ? null : rootUrl + run.getUrl();
+    }
+  }
+
+  @Override
+  public StepExecution start(StepContext stepContext) throws Exception {
+    return new Execution(this, stepContext);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends StepDescriptor {
+
+    @Override
+    public Set<Class<?>> getRequiredContext() {
+      return Collections.singleton(FilePath.class);
+    }
+
+    @Override
+    public String getFunctionName() {
+      return "gerritPublishFindings";
+    }
+
+    @Nonnull
+    @Override
+    public String getDisplayName() {
+      return "Gerrit Publish Findings";
+    }
+  }
+}
@@ -19,17 +19,19 @@ import com.google.gerrit.extensions.api.changes.ChangeApi;
 import com.google.gerrit.extensions.api.changes.Changes;
 import com.google.gerrit.extensions.api.changes.NotifyHandling;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.api.changes.RevisionApi;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import javax.annotation.Nonnull;
-import jenkins.plugins.gerrit.GerritApiBuilder;
 import jenkins.plugins.gerrit.GerritChange;
 import jenkins.plugins.gerrit.GerritVersion;
 import org.jenkinsci.plugins.workflow.steps.*;
@@ -42,24 +44,37 @@ public class GerritReviewStep extends Step {
   private Map<String, Integer> labels;
   private String message = "";
   private Optional<NotifyHandling> notify = Optional.empty();
+  private boolean outbox;
 
   @DataBoundConstructor
   public GerritReviewStep() {}
 
-  public class Execution extends SynchronousStepExecution<Void> {
+  public static class Execution extends GerritStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
+
     private final TaskListener listener;
-    private final EnvVars envVars;
+    private final LinkedHashMap<String, Integer> labels;
+    private final String message;
+    private final NotifyHandling notify;
+    private final boolean outbox;
 
-    protected Execution(@Nonnull StepContext context) throws IOException, InterruptedException {
-      super(context);
-      this.envVars = context.get(EnvVars.class);
+    protected Execution(GerritReviewStep step, @Nonnull StepContext context)
+        throws IOException, InterruptedException {
+      super("gerritReview", context);
       this.listener = getContext().get(TaskListener.class);
+      if (step.labels == null && step.label != null) {
+        this.labels = new LinkedHashMap<>(Collections.singletonMap(step.label, step.score));
+      } else {
+        this.labels = step.labels == null ? null : new LinkedHashMap<>(step.labels);
+      }
+      this.message = step.message;
+      this.notify = step.notify.orElse(null);
+      this.outbox = step.outbox;
     }
 
     @Override
     protected Void run() throws Exception {
-      GerritApi gerritApi =
-          new GerritApiBuilder().stepContext(getContext()).requireAuthentication().build();
+      GerritApi gerritApi = apiBuilder().requireAuthentication().build();
       if (gerritApi == null) {
         return null;
       }
@@ -68,9 +83,6 @@ public class GerritReviewStep extends Step {
       if (change.valid()) {
         ReviewInput reviewInput = new ReviewInput().message(message);
         boolean negativeVote = false;
-        if (labels == null && label != null) {
-          labels = Collections.singletonMap(label, score);
-        }
         listener
             .getLogger()
             .format(
@@ -86,8 +98,8 @@ public class GerritReviewStep extends Step {
         }
         reviewInput.drafts = ReviewInput.DraftHandling.PUBLISH;
         reviewInput.tag = "autogenerated:jenkins";
-        if (notify.isPresent()) {
-          reviewInput.notify = notify.get();
+        if (notify != null) {
+          reviewInput.notify = notify;
         } else {
           String notifyProp = System.getProperty("gerrit.notify");
           if (notifyProp != null) {
@@ -96,13 +108,77 @@ public class GerritReviewStep extends Step {
             reviewInput.notify = NotifyHandling.OWNER;
           }
         }
-        getChangeApi(gerritApi, change).revision(change.getRevision()).review(reviewInput);
+        if (outbox) {
+          GerritOutbox gerritOutbox = GerritOutbox.get();
+          enqueueWithBufferedComments(gerritOutbox, change, reviewInput);
+          gerritOutbox.deliverSoon();
+          listener.getLogger().println("Gerrit review queued in the outbox");
+        } else {
+          publishWithBufferedComments(
+              getChangeApi(gerritApi, change).revision(change.getRevision()), reviewInput);
+        }
       }
       return null;
     }
+
+    private void enqueueWithBufferedComments(
+        GerritOutbox gerritOutbox, GerritChange change, ReviewInput reviewInput)
+        throws IOException, InterruptedException {
+      Run<?, ?> run = getContext().get(Run.class);
+      EnvVars envVars = getContext().get(EnvVars.class);
+      BufferedCommentsAction bufferedComments = run.getAction(BufferedCommentsAction.class);
+      BufferedCommentsAction.Batch batch =
+          bufferedComments == null
+              ? null
+              : bufferedComments.take(BufferedCommentsAction.changeEnv(envVars));
+      try {
+        gerritOutbox.enqueue(
+            run, envVars, change, BufferedCommentsAction.reviews(reviewInput, batch));
+      } catch (IOException | RuntimeException e) {
+        if (batch != null && !batch.comments.isEmpty()) {
+          bufferedComments.restore(batch);
+        }
+        throw e;
+      }
+    }
+
+    private void publishWithBufferedComments(RevisionApi revision, ReviewInput reviewInput)
+        throws IOException, InterruptedException, RestApiException {
+      BufferedCommentsAction bufferedComments =
+          getContext().get(Run.class).getAction(BufferedCommentsAction.class);
+      BufferedCommentsAction.Batch batch =
+          bufferedComments == null
+              ? null
+              : bufferedComments.take(
+                  BufferedCommentsAction.changeEnv(getContext().get(EnvVars.class)));
+      int buffered = batch == null ? 0 : batch.comments.size();
+      ReviewInput review = reviewInput;
+      if (isFinished("review")) {
+        // An earlier attempt posted the labels and message, only the comments are left
+        if (buffered == 0) {
+          return;
+        }
+        review = new ReviewInput();
+        review.tag = reviewInput.tag;
+        review.notify = reviewInput.notify;
+      }
+      try {
+        BufferedCommentsAction.publish(revision, review, batch, listener.getLogger());
+        markFinished("review");
+      } catch (RestApiException | RuntimeException e) {
+        if (batch != null && !batch.comments.isEmpty()) {
+          if (batch.comments.size() < buffered) {
+            markFinished("review");
+          }
+          bufferedComments.restore(batch);
+        }
+        throw e;
+      }
+    }
   }
 
-  private ChangeApi getChangeApi(GerritApi gerritApi, GerritChange change) throws RestApiException {
+  static ChangeApi getChangeApi(GerritApi gerritApi, GerritChange change)
+      throws RestApiException {
     Changes changesApi = gerritApi.changes();
     return GerritVersion.isVersionBelow215(gerritApi)
         ? changesApi.id(change.getChangeId())
@@ -147,6 +223,16 @@ public class GerritReviewStep extends Step {
     return notify;
   }
 
+  public boolean isOutbox() {
+    return outbox;
+  }
+
+  /** Queues the review in the {@link GerritOutbox} instead of waiting for Gerrit. */
+  @DataBoundSetter
+  public void setOutbox(boolean outbox) {
+    this.outbox = outbox;
+  }
+
   @Deprecated
   public String getLabel() {
     return label;
@@ -160,7 +246,7 @@ public class GerritReviewStep extends Step {
 
   @Override
   public StepExecution start(StepContext stepContext) throws Exception {
-    return new Execution(stepContext);
+    return new Execution(this, stepContext);
   }
 
   @Extension
@@ -0,0 +1,212 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import jenkins.plugins.gerrit.GerritApiBuilder;
+import jenkins.plugins.gerrit.GerritCircuitBreaker;
+import jenkins.plugins.gerrit.GerritCircuitBreaker.StepPolicy;
+import jenkins.plugins.gerrit.GerritUnavailableException;
+import jenkins.plugins.gerrit.InFlightRequests;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+/**
+ * Runs the Gerrit REST calls of a step on a bounded I/O pool instead of the CPS VM thread.
+ *
+ * <p>The step fails if it does not complete within {@code gerrit.steps.timeout} seconds. Stopping
+ * it, either on timeout or when the build is aborted, interrupts the worker and aborts the HTTP
+ * requests still in flight.
+ *
+ * <p>When the circuit breaker of the Gerrit server is open and the step policy is {@link
+ * StepPolicy#DEFER}, the step is rescheduled for when the breaker lets calls through and runs
+ * again, within the same timeout. The calls made through {@link #once} by the earlier attempts are
+ * not made again.
+ */
+abstract class GerritStepExecution<T> extends StepExecution {
+  private static final long serialVersionUID = 1L;
+
+  private static final int IO_THREADS = Integer.getInteger("gerrit.steps.ioThreads", 10);
+  private static final long TIMEOUT_SECONDS = Long.getLong("gerrit.steps.timeout", 300);
+
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          IO_THREADS, new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit step I/O"));
+
+  private final String functionName;
+
+  private transient InFlightRequests inFlightRequests;
+  private transient AtomicBoolean completed;
+  private transient Set<String> finishedCalls;
+  private transient volatile Future<?> task;
+  private transient volatile Future<?> timeout;
+
+  protected GerritStepExecution(String functionName, @Nonnull StepContext context) {
+    super(context);
+    this.functionName = functionName;
+  }
+
+  /** Performs the Gerrit calls of the step, using clients created by {@link #apiBuilder()}. */
+  protected abstract T run() throws Exception;
+
+  /**
+   * Makes a Gerrit call that must not be repeated, unless an earlier attempt of the step already
+   * made it before being deferred.
+   */
+  protected void once(String call, GerritCall gerritCall) throws Exception {
+    if (finishedCalls.contains(call)) {
+      return;
+    }
+    gerritCall.run();
+    finishedCalls.add(call);
+  }
+
+  protected boolean isFinished(String call) {
+    return finishedCalls.contains(call);
+  }
+
+  protected void markFinished(String call) {
+    finishedCalls.add(call);
+  }
+
+  /** Creates a builder whose clients can be aborted when the step is stopped. */
+  protected GerritApiBuilder apiBuilder() throws Exception {
+    return new GerritApiBuilder().stepContext(getContext()).inFlightRequests(inFlightRequests);
+  }
+
+  @Override
+  public boolean start() throws Exception {
+    inFlightRequests = new InFlightRequests();
+    completed = new AtomicBoolean();
+    finishedCalls = ConcurrentHashMap.newKeySet();
+    timeout =
+        Timer.get()
+            .schedule(
+                () ->
+                    stop(
+                        new TimeoutException(
+                            String.format(
+                                "%s did not complete within %d seconds",
+                                functionName, TIMEOUT_SECONDS))),
+                TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+    task = executor.submit(this::attempt);
+    return false;
+  }
+
+  /**
+   * Runs the step once. A deferred attempt is rescheduled on the Jenkins timer rather than waiting
+   * on the I/O pool, so that it does not hold a thread of the pool.
+   */
+  private void attempt() {
+    try {
+      T result = run();
+      if (completed.compareAndSet(false, true)) {
+        timeout.cancel(false);
+        getContext().onSuccess(result);
+      }
+    } catch (Throwable t) {
+      GerritUnavailableException unavailable = GerritUnavailableException.find(t);
+      if (unavailable != null
+          && GerritCircuitBreaker.getStepPolicy() == StepPolicy.DEFER
+          && defer(unavailable)) {
+        return;
+      }
+      if (completed.compareAndSet(false, true)) {
+        timeout.cancel(false);
+        getContext().onFailure(t);
+      }
+    }
+  }
+
+  private boolean defer(GerritUnavailableException unavailable) {
+    if (completed.get()) {
+      return false;
+    }
+    try {
+      getContext()
+          .get(TaskListener.class)
+          .getLogger()
+          .format(
+              "%s deferred by %d ms: %s%n",
+              functionName, unavailable.getRetryAfterMillis(), unavailable.getMessage());
+    } catch (Exception e) {
+      return false;
+    }
+    task =
+        Timer.get()
+            .schedule(
+                () -> {
+                  if (!completed.get()) {
+                    task = executor.submit(this::attempt);
+                  }
+                },
+                unavailable.getRetryAfterMillis(),
+                TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  @Override
+  public void stop(@Nonnull Throwable cause) {
+    if (completed == null || !completed.compareAndSet(false, true)) {
+      return;
+    }
+    inFlightRequests.abortAll();
+    if (task != null) {
+      task.cancel(true);
+    }
+    if (timeout != null) {
+      timeout.cancel(false);
+    }
+    getContext().onFailure(cause);
+  }
+
+  @Override
+  public void onResume() {
+    getContext()
+        .onFailure(
+            new Exception(
+                String.format(
+                    "%s was interrupted by a Jenkins restart and cannot be resumed",
+                    functionName)));
+  }
+
+  @Override
+  public String getStatus() {
+    Future<?> currentTask = task;
+    if (currentTask == null) {
+      return "not started";
+    }
+    return currentTask.isDone() ? "completed" : "waiting for Gerrit";
+  }
+
+  /** A Gerrit call made by a step. */
+  @FunctionalInterface
+  protected interface GerritCall {
+    void run() throws Exception;
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.model.TaskListener;
+import hudson.plugins.git.Branch;
+import hudson.util.StreamTaskListener;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.trait.RegexSCMHeadFilterTrait;
+import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.Test;
+
+public class BranchRefSpecsTest {
+  private static final List<String> BRANCHES =
+      Arrays.asList("master", "stable-3.8", "stable-3.9", "sandbox/jdoe/test");
+
+  private final TaskListener listener = new StreamTaskListener(System.out);
+
+  @Test
+  public void shouldFetchAllBranchesWithoutFilter() {
+    assertEquals(
+        Collections.singletonList("+refs/heads/*:refs/remotes/origin/*"),
+        narrow(Collections.emptyList()));
+  }
+
+  @Test
+  public void shouldTurnWildcardIncludesIntoRefSpecs() {
+    assertEquals(
+        Arrays.asList(
+            "+refs/heads/master:refs/remotes/origin/master",
+            "+refs/heads/stable-*:refs/remotes/origin/stable-*"),
+        narrow(Collections.singletonList(new WildcardSCMHeadFilterTrait("master stable-*", ""))));
+  }
+
+  @Test
+  public void shouldListTheBranchesMatchingOtherFilters() {
+    assertEquals(
+        Arrays.asList(
+            "+refs/heads/stable-3.8:refs/remotes/origin/stable-3.8",
+            "+refs/heads/stable-3.9:refs/remotes/origin/stable-3.9"),
+        narrow(Collections.singletonList(new RegexSCMHeadFilterTrait("stable-.*"))));
+  }
+
+  @Test
+  public void shouldListTheBranchesForWildcardExcludes() {
+    assertEquals(
+        Arrays.asList(
+            "+refs/heads/master:refs/remotes/origin/master",
+            "+refs/heads/stable-3.8:refs/remotes/origin/stable-3.8",
+            "+refs/heads/stable-3.9:refs/remotes/origin/stable-3.9"),
+        narrow(Collections.singletonList(new WildcardSCMHeadFilterTrait("*", "sandbox/*"))));
+  }
+
+  @Test
+  public void shouldFetchAllBranchesWhenTheListingFails() {
+    GerritSCMSource source = source(Collections.singletonList(new RegexSCMHeadFilterTrait("m.*")));
+    BranchRefSpecs refSpecs =
+        BranchRefSpecs.narrow(
+            source,
+            context(source),
+            () -> {
+              throw new IOException("unavailable");
+            },
+            listener);
+
+    assertEquals(
+        Collections.singletonList("+refs/heads/*:refs/remotes/origin/*"), toStrings(refSpecs));
+  }
+
+  @Test
+  public void shouldOnlyPruneTheBranchesDeletedOnTheServer() {
+    GerritSCMSource source =
+        source(Collections.singletonList(new RegexSCMHeadFilterTrait("stable-.*")));
+    BranchRefSpecs refSpecs =
+        BranchRefSpecs.narrow(source, context(source), () -> BRANCHES, listener);
+
+    assertEquals(
+        Collections.singletonList("origin/stable-3.7"),
+        refSpecs.staleBranches(
+            Arrays.asList(
+                new Branch("origin/master", ObjectId.zeroId()),
+                new Branch("origin/stable-3.7", ObjectId.zeroId()),
+                new Branch("origin/stable-3.9", ObjectId.zeroId()),
+                new Branch("origin/sandbox/jdoe/test", ObjectId.zeroId())),
+            "origin"));
+  }
+
+  private List<String> narrow(List<SCMSourceTrait> traits) {
+    GerritSCMSource source = source(traits);
+    return toStrings(BranchRefSpecs.narrow(source, context(source), () -> BRANCHES, listener));
+  }
+
+  private static GerritSCMSource source(List<SCMSourceTrait> traits) {
+    GerritSCMSource source = new GerritSCMSource("https://gerrit.example.com/a/project");
+    source.setTraits(traits);
+    return source;
+  }
+
+  private static GerritSCMSourceContext context(GerritSCMSource source) {
+    return new GerritSCMSourceContext(null, SCMHeadObserver.none()).withTraits(source.getTraits());
+  }
+
+  private static List<String> toStrings(BranchRefSpecs refSpecs) {
+    return refSpecs
+        .getRefSpecs()
+        .stream()
+        .map(RefSpec::toString)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import jenkins.plugins.gerrit.traits.PartialFetchTrait;
+import jenkins.scm.api.SCMHeadObserver;
+import org.eclipse.jgit.lib.Repository;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheFetchModeTest {
+  private static final String COMMAND =
+      "Command \"git fetch --tags --progress --depth=1 origin"
+          + " +refs/heads/*:refs/remotes/origin/*\" returned status code 128:\nstdout: \nstderr: ";
+
+  private static final Set<CacheFetchMode> BOTH =
+      EnumSet.of(CacheFetchMode.SHALLOW, CacheFetchMode.BLOBLESS);
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldTurnOffTheModeTheServerDoesNotSupport() {
+    assertEquals(
+        CacheFetchMode.SHALLOW,
+        CacheFetchMode.unsupportedBy(
+            error("fatal: Server does not support shallow clients"), BOTH));
+    assertEquals(
+        CacheFetchMode.BLOBLESS,
+        CacheFetchMode.unsupportedBy(
+            error("fatal: unknown repository extensions found:\n\tpartialclone"), BOTH));
+  }
+
+  @Test
+  public void shouldTurnOffProtocolV2Alone() {
+    assertEquals(
+        CacheFetchMode.PROTOCOL_V2,
+        CacheFetchMode.unsupportedBy(
+            error("fatal: expected flush after ref listing"), EnumSet.allOf(CacheFetchMode.class)));
+  }
+
+  @Test
+  public void shouldOnlyTurnOffAModeThatWasTried() {
+    assertNull(
+        CacheFetchMode.unsupportedBy(
+            error("fatal: Server does not support shallow clients"),
+            EnumSet.of(CacheFetchMode.BLOBLESS)));
+  }
+
+  @Test
+  public void shouldFailOnOtherErrors() {
+    assertNull(
+        CacheFetchMode.unsupportedBy(
+            error("fatal: unable to access 'https://gerrit/a/project/': Connection timed out"),
+            BOTH));
+    assertNull(
+        CacheFetchMode.unsupportedBy(
+            error("remote: Unauthorized\nfatal: Authentication failed for 'https://gerrit/'"),
+            BOTH));
+  }
+
+  @Test
+  public void shouldAskForThePartialFetchInTheContext() {
+    GerritSCMSourceContext context =
+        new GerritSCMSourceContext(null, SCMHeadObserver.none())
+            .withTraits(Collections.singletonList(new PartialFetchTrait(true, false)));
+
+    assertTrue(context.shallowFetch());
+    assertFalse(context.bloblessFetch());
+  }
+
+  @Test
+  public void shouldFetchInFullByDefault() {
+    GerritSCMSourceContext context = new GerritSCMSourceContext(null, SCMHeadObserver.none());
+
+    assertFalse(context.shallowFetch());
+    assertFalse(context.bloblessFetch());
+  }
+
+  @Test
+  public void shouldOnlySetTheProtocolVersionWhenConfigured() throws Exception {
+    GitClient client =
+        Git.with(TaskListener.NULL, new EnvVars())
+            .in(temporaryFolder.newFolder())
+            .using("jgit")
+            .getClient();
+    client.init();
+
+    AbstractGerritSCMSource.configureCacheFetch(client, "origin", false, null);
+    assertEquals(-1, protocolVersion(client));
+
+    AbstractGerritSCMSource.configureCacheFetch(client, "origin", false, 2);
+    assertEquals(2, protocolVersion(client));
+
+    AbstractGerritSCMSource.configureCacheFetch(client, "origin", false, 0);
+    assertEquals(0, protocolVersion(client));
+
+    AbstractGerritSCMSource.configureCacheFetch(client, "origin", false, null);
+    assertEquals(-1, protocolVersion(client));
+  }
+
+  private static int protocolVersion(GitClient client) throws Exception {
+    try (Repository repository = client.getRepository()) {
+      return repository.getConfig().getInt("protocol", null, "version", -1);
+    }
+  }
+
+  private static GitException error(String stderr) {
+    return new GitException(COMMAND + stderr);
+  }
+}
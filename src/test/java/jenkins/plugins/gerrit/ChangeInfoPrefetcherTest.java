@@ -0,0 +1,173 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_ACCOUNT_INFO_JOHN_DOE;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_BRANCH;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_CHANGE_ID_TRIPLET;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_CHANGE_NUMBER;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_CHANGE_REF_NAME;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_CHANGE_SUBJECT;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_PATCHSET_NUMBER;
+import static jenkins.plugins.gerrit.GerritEnvironmentContributorTest.TEST_PROJECT_NAME;
+
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.common.RevisionInfo;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jenkins.plugins.gerrit.GerritEnvironmentContributor.ChangeInfoInvisibleAction;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeInfoPrefetcherTest {
+  private static final String TEST_REVISION = "2ff60b01ab0e2305fdf8739cd884038091f2b888";
+
+  private final List<Integer> lookups = new CopyOnWriteArrayList<>();
+
+  private ExecutorService executor;
+  private GerritURI gerritURI;
+  private ChangeInfo changeInfo;
+
+  @Before
+  public void setup() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+    gerritURI = new GerritURI(new URIish("http://gerrit.mycompany.com/a/" + TEST_PROJECT_NAME));
+
+    RevisionInfo revision = new RevisionInfo();
+    revision._number = TEST_PATCHSET_NUMBER;
+    revision.ref = TEST_CHANGE_REF_NAME;
+    revision.uploader = TEST_ACCOUNT_INFO_JOHN_DOE;
+
+    changeInfo = new ChangeInfo();
+    changeInfo._number = TEST_CHANGE_NUMBER;
+    changeInfo.id = TEST_CHANGE_ID_TRIPLET;
+    changeInfo.branch = TEST_BRANCH;
+    changeInfo.subject = TEST_CHANGE_SUBJECT;
+    changeInfo.owner = TEST_ACCOUNT_INFO_JOHN_DOE;
+    changeInfo.revisions = Collections.singletonMap(TEST_REVISION, revision);
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldUseTheScannedChangeWithoutLookingItUp() {
+    Map<String, String> scannedChangeEnvs =
+        GerritEnvironmentContributor.changeEnvsOf(changeInfo, TEST_PATCHSET_NUMBER, gerritURI);
+
+    ChangeInfoInvisibleAction action =
+        ChangeInfoPrefetcher.prefetch(
+            changeHead(scannedChangeEnvs), gerritURI, this::lookup, executor);
+
+    assertThat(action.getChangeEnvs()).containsExactlyEntriesIn(scannedChangeEnvs);
+    assertThat(lookups).isEmpty();
+  }
+
+  @Test
+  public void shouldLookUpTheChangeWhenTheHeadWasNotScanned() {
+    ChangeInfoInvisibleAction action =
+        ChangeInfoPrefetcher.prefetch(
+            changeHead(Collections.emptyMap()), gerritURI, this::lookup, executor);
+
+    assertThat(action.getChangeEnvs())
+        .containsExactlyEntriesIn(
+            GerritEnvironmentContributor.changeEnvsOf(
+                changeInfo, TEST_PATCHSET_NUMBER, gerritURI));
+    assertThat(action.getChangeEnvs()).containsEntry("GERRIT_PATCHSET_REVISION", TEST_REVISION);
+    assertThat(lookups).containsExactly(TEST_CHANGE_NUMBER);
+  }
+
+  @Test
+  public void shouldHaveNoChangeEnvironmentWhenTheChangeIsNotFound() {
+    ChangeInfoInvisibleAction action =
+        ChangeInfoPrefetcher.prefetch(
+            changeHead(Collections.emptyMap()),
+            gerritURI,
+            (changeNumber, projectName) -> Optional.empty(),
+            executor);
+
+    assertThat(action.getChangeEnvs()).isEmpty();
+  }
+
+  @Test
+  public void shouldHaveNoChangeEnvironmentWhenTheLookupFails() {
+    ChangeInfoInvisibleAction action =
+        ChangeInfoPrefetcher.prefetch(
+            changeHead(Collections.emptyMap()),
+            gerritURI,
+            (changeNumber, projectName) -> {
+              throw new IOException("Gerrit unavailable");
+            },
+            executor);
+
+    assertThat(action.getChangeEnvs()).isEmpty();
+  }
+
+  @Test
+  public void shouldInterruptTheLookupWhenCancelled() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    ChangeInfoInvisibleAction action =
+        ChangeInfoPrefetcher.prefetch(
+            changeHead(Collections.emptyMap()),
+            gerritURI,
+            (changeNumber, projectName) -> {
+              started.countDown();
+              try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+              } catch (InterruptedException e) {
+                interrupted.countDown();
+              }
+              return Optional.of(changeInfo);
+            },
+            executor);
+
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    action.cancel();
+
+    assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(action.getChangeEnvs()).isEmpty();
+  }
+
+  private Optional<ChangeInfo> lookup(int changeNumber, String projectName) {
+    lookups.add(changeNumber);
+    assertThat(projectName).isEqualTo(TEST_PROJECT_NAME);
+    return Optional.of(changeInfo);
+  }
+
+  private ChangeSCMHead changeHead(Map<String, String> changeEnvs) {
+    return new ChangeSCMHead(
+        new AbstractMap.SimpleEntry<>(TEST_CHANGE_REF_NAME, ObjectId.fromString(TEST_REVISION)),
+        TEST_CHANGE_REF_NAME.substring("refs/changes/".length()),
+        new HashSet<>(),
+        changeEnvs);
+  }
+}
@@ -21,10 +21,15 @@ import com.google.gerrit.plugins.checks.api.CheckInfo;
 import com.google.gerrit.plugins.checks.api.CheckState;
 import com.google.gerrit.plugins.checks.client.Checks;
 import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.Date;
 import java.util.TimeZone;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.junit.Test;
 
 public class ChecksTest {
@@ -78,4 +83,26 @@ public class ChecksTest {
     assertEquals(created, checkInfo.created);
     assertEquals(updated, checkInfo.updated);
   }
+
+  @Test
+  public void shouldStreamResponseWithJsonPrefix() throws IOException {
+    String checksJsonResponse =
+        ")]}'\n"
+            + "{\n"
+            + "  \"checker_uuid\": \"test:my-checker\",\n"
+            + "  \"state\": \"RUNNING\",\n"
+            + "  \"created\": \"2021-09-05 10:11:12.123456789\"\n"
+            + "}";
+
+    CheckInfo checkInfo =
+        Checks.JsonBodyParser.parseResponse(
+            new StringEntity(checksJsonResponse, ContentType.APPLICATION_JSON),
+            new TypeToken<CheckInfo>() {}.getType());
+
+    assertNotNull(checkInfo);
+    assertEquals("test:my-checker", checkInfo.checkerUuid);
+    assertEquals(CheckState.RUNNING, checkInfo.state);
+    assertEquals(
+        Timestamp.from(Instant.parse("2021-09-05T10:11:12.123456789Z")), checkInfo.created);
+  }
 }
@@ -0,0 +1,236 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.Test;
+
+public class GerritCacheLockTest {
+  private static final String ALL_HEADS = "+refs/heads/*:refs/remotes/origin/*";
+  private static final String MASTER = "+refs/heads/master:refs/remotes/origin/master";
+
+  private final ReentrantLock gitLock = new ReentrantLock();
+  private final GerritCacheLock cacheLock = new GerritCacheLock(gitLock);
+  private final TaskListener listener = new StreamTaskListener(System.out);
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  @Test
+  public void shouldShareTheReadPhase() throws Exception {
+    cacheLock.lockShared();
+    Thread scan = new Thread(this::lockAndUnlockShared);
+    scan.start();
+    scan.join(10_000);
+
+    assertFalse(scan.isAlive());
+    assertFalse(cacheLock.tryLockExclusively());
+    cacheLock.unlockShared();
+    assertTrue(cacheLock.tryLockExclusively());
+    cacheLock.unlockExclusively();
+  }
+
+  @Test
+  public void shouldHoldTheGitPluginLockWhileShared() throws Exception {
+    cacheLock.lockShared();
+    assertTrue(gitLock.isLocked());
+    assertFalse(gitLock.tryLock());
+
+    cacheLock.unlockShared();
+    while (gitLock.isLocked()) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void shouldKeepTheFetchedRefsLockedUntilProbed() throws Exception {
+    cacheLock.fetchThenLockShared(
+        request("prune", MASTER), listener, fetches::incrementAndGet, () -> true);
+
+    assertFalse(cacheLock.tryLockExclusively());
+    assertTrue(gitLock.isLocked());
+    Thread scan = new Thread(this::lockAndUnlockShared);
+    scan.start();
+    scan.join(10_000);
+    assertFalse(scan.isAlive());
+
+    cacheLock.unlockShared();
+    assertTrue(cacheLock.tryLockExclusively());
+    cacheLock.unlockExclusively();
+  }
+
+  @Test
+  public void shouldFetchAgainWhenTheReusedRefsAreMissing() throws Exception {
+    cacheLock.lockExclusively();
+    Thread first = startFetch(request("prune", MASTER));
+    Thread second =
+        startFetch(request("prune", MASTER), fetches::incrementAndGet, () -> false, failure());
+    cacheLock.unlockExclusively();
+    first.join();
+    second.join();
+
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void shouldReuseAQueuedFetchCoveringTheRefs() throws Exception {
+    cacheLock.lockExclusively();
+    Thread first = startFetch(request("prune", ALL_HEADS, MASTER));
+    Thread second = startFetch(request("prune", MASTER));
+    cacheLock.unlockExclusively();
+    first.join();
+    second.join();
+
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void shouldFetchAgainForOtherRefsOrOptions() throws Exception {
+    cacheLock.lockExclusively();
+    Thread first = startFetch(request("prune", MASTER));
+    Thread otherRefs = startFetch(request("prune", ALL_HEADS));
+    Thread otherOptions = startFetch(request("no-prune", MASTER));
+    cacheLock.unlockExclusively();
+    first.join();
+    otherRefs.join();
+    otherOptions.join();
+
+    assertEquals(3, fetches.get());
+  }
+
+  @Test
+  public void shouldNotReuseARunningFetch() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      cacheLock.fetchThenLockShared(
+          request("prune", MASTER), listener, fetches::incrementAndGet, () -> true);
+      cacheLock.unlockShared();
+    }
+
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void shouldGiveTheFetchFailureToTheScansReusingIt() throws Exception {
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    cacheLock.lockExclusively();
+    Thread first =
+        startFetch(
+            request("prune", MASTER),
+            () -> {
+              throw new IOException("unreachable");
+            },
+            () -> true,
+            failure());
+    Thread second =
+        startFetch(request("prune", MASTER), fetches::incrementAndGet, () -> true, failure);
+    cacheLock.unlockExclusively();
+    first.join();
+    second.join();
+
+    assertEquals(0, fetches.get());
+    assertTrue(failure.get() instanceof IOException);
+    assertEquals("unreachable", failure.get().getCause().getMessage());
+  }
+
+  @Test(timeout = 10_000)
+  public void shouldNotFetchInARetrieveNestedInAScan() throws Exception {
+    cacheLock.fetchThenLockShared(
+        request("prune", ALL_HEADS), listener, fetches::incrementAndGet, () -> true);
+    try {
+      cacheLock.fetchThenLockShared(
+          request("prune", MASTER), listener, fetches::incrementAndGet, () -> true);
+      cacheLock.unlockShared();
+    } finally {
+      cacheLock.unlockShared();
+    }
+
+    assertEquals(1, fetches.get());
+    assertTrue(cacheLock.tryLockExclusively());
+    cacheLock.unlockExclusively();
+  }
+
+  @Test(timeout = 10_000)
+  public void shouldFailANestedRetrieveOfRefsNotFetched() throws Exception {
+    cacheLock.fetchThenLockShared(
+        request("prune", MASTER), listener, fetches::incrementAndGet, () -> true);
+    try {
+      cacheLock.fetchThenLockShared(
+          request("prune", ALL_HEADS), listener, fetches::incrementAndGet, () -> false);
+      fail("Expected the nested fetch to be refused");
+    } catch (IOException e) {
+      assertEquals(1, fetches.get());
+    } finally {
+      cacheLock.unlockShared();
+    }
+
+    assertTrue(cacheLock.tryLockExclusively());
+    cacheLock.unlockExclusively();
+  }
+
+  private Thread startFetch(GerritCacheLock.FetchRequest request) throws InterruptedException {
+    return startFetch(request, fetches::incrementAndGet, () -> true, failure());
+  }
+
+  private Thread startFetch(
+      GerritCacheLock.FetchRequest request,
+      GerritCacheLock.Fetch fetch,
+      GerritCacheLock.Fetched fetched,
+      AtomicReference<Exception> failure)
+      throws InterruptedException {
+    Thread scan =
+        new Thread(
+            () -> {
+              try {
+                cacheLock.fetchThenLockShared(request, listener, fetch, fetched);
+                cacheLock.unlockShared();
+              } catch (IOException | InterruptedException e) {
+                failure.set(e);
+              }
+            });
+    scan.start();
+    // Queued for the exclusive lock or waiting for another fetch
+    while (scan.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    return scan;
+  }
+
+  private static AtomicReference<Exception> failure() {
+    return new AtomicReference<>();
+  }
+
+  private void lockAndUnlockShared() {
+    try {
+      cacheLock.lockShared();
+      cacheLock.unlockShared();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static GerritCacheLock.FetchRequest request(String options, String... refSpecs) {
+    return new GerritCacheLock.FetchRequest(options, new HashSet<>(Arrays.asList(refSpecs)), null);
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GerritCacheMaintenanceTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File cacheDir;
+
+  @Before
+  public void setup() throws Exception {
+    cacheDir = tmp.newFolder("git-cache");
+    git("init", "-q");
+    String tree = git("mktree");
+    String commit =
+        git(
+            "-c",
+            "user.name=Test",
+            "-c",
+            "user.email=test@example.com",
+            "commit-tree",
+            tree,
+            "-m",
+            "Initial commit");
+    for (String ref :
+        Arrays.asList(
+            "refs/remotes/origin/master",
+            "refs/remotes/origin/01/1/1",
+            "refs/remotes/origin/02/2/3")) {
+      git("update-ref", ref, commit);
+    }
+  }
+
+  @Test
+  public void shouldDeleteTheRefsOfClosedChangesAndPackTheRefs() throws Exception {
+    GerritCacheMaintenance.Result result =
+        GerritCacheMaintenance.maintain(
+            "git",
+            "https://gerrit.example.com/a/project",
+            cacheDir,
+            Collections.singleton("refs/remotes/origin/02/2/3"),
+            System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+
+    assertNull(result.getFailure());
+    assertEquals(1, result.getDeletedRefs());
+    assertEquals(
+        "refs/remotes/origin/02/2/3\nrefs/remotes/origin/master",
+        git("for-each-ref", "--format=%(refname)"));
+    assertTrue(new File(cacheDir, ".git/packed-refs").isFile());
+  }
+
+  @Test
+  public void shouldStopAfterTheTimeBudget() throws Exception {
+    GerritCacheMaintenance.Result result =
+        GerritCacheMaintenance.maintain(
+            "git",
+            "https://gerrit.example.com/a/project",
+            cacheDir,
+            Collections.emptySet(),
+            System.nanoTime() - 1);
+
+    assertTrue(result.getFailure().contains("time budget"));
+  }
+
+  @Test
+  public void shouldRemoveTheLocksLeftByAKilledCommand() throws Exception {
+    File gitDir = new File(cacheDir, ".git");
+    File[] locks = {
+      new File(gitDir, "packed-refs.lock"),
+      new File(gitDir, "gc.pid"),
+      new File(gitDir, "refs/remotes/origin/master.lock"),
+      new File(gitDir, "objects/info/commit-graphs/commit-graph-chain.lock")
+    };
+    for (File lock : locks) {
+      lock.getParentFile().mkdirs();
+      assertTrue(lock.createNewFile());
+    }
+
+    GerritCacheMaintenance.removeStaleLocks(gitDir);
+
+    for (File lock : locks) {
+      assertFalse(lock.getPath(), lock.exists());
+    }
+    assertEquals(
+        "refs/remotes/origin/01/1/1\nrefs/remotes/origin/02/2/3\nrefs/remotes/origin/master",
+        git("for-each-ref", "--format=%(refname)"));
+  }
+
+  @Test
+  public void shouldKeepTheRecentRefsOfEverySourceSharingTheCache() {
+    String cacheEntry = "git-" + tmp.getRoot().getName();
+    String remote = "https://gerrit.example.com/a/project";
+    GerritCacheMaintenance.recordScan(
+        cacheEntry, remote, "open", Collections.singleton("refs/remotes/origin/01/1/1"));
+    GerritCacheMaintenance.recordScan(
+        cacheEntry, remote, "mine", Collections.singleton("refs/remotes/origin/02/2/3"));
+
+    assertEquals(
+        new HashSet<>(Arrays.asList("refs/remotes/origin/01/1/1", "refs/remotes/origin/02/2/3")),
+        GerritCacheMaintenance.keptRefs(cacheEntry, System.currentTimeMillis()));
+    assertEquals(
+        Collections.emptySet(),
+        GerritCacheMaintenance.keptRefs(
+            cacheEntry, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(8)));
+    GerritCacheMaintenance.forget(cacheEntry);
+  }
+
+  @Test
+  public void shouldOnlyMaintainWithTheGitCommandLine() {
+    assertTrue(GerritCacheMaintenance.isCommandLine("/usr/bin/git"));
+    assertFalse(GerritCacheMaintenance.isCommandLine("jgit"));
+    assertFalse(GerritCacheMaintenance.isCommandLine("jgitapache"));
+  }
+
+  private String git(String... args) throws IOException, InterruptedException {
+    String[] command = new String[args.length + 1];
+    command[0] = "git";
+    System.arraycopy(args, 0, command, 1, args.length);
+    Process process =
+        new ProcessBuilder(command).directory(cacheDir).redirectErrorStream(true).start();
+    process.getOutputStream().close();
+    String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+    assertEquals(output, 0, process.waitFor());
+    return output.trim();
+  }
+}
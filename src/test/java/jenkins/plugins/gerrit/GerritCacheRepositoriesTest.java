@@ -0,0 +1,105 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GerritCacheRepositoriesTest {
+  private static final long NOW = System.currentTimeMillis();
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final TaskListener listener = new StreamTaskListener(System.out);
+
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedRepositories() throws Exception {
+    File caches = tmp.newFolder("caches");
+    File oldest = repository(caches, "git-oldest", 3);
+    File older = repository(caches, "git-older", 2);
+    File recent = repository(caches, "git-recent", 1);
+    File notGerrit = tmp.newFolder("caches", "git-other");
+
+    GerritCacheRepositories.evict(caches, 2500, listener);
+
+    assertFalse(oldest.exists());
+    assertTrue(older.exists());
+    assertTrue(recent.exists());
+    assertTrue(notGerrit.exists());
+    assertEquals(
+        "https://gerrit/git-recent,https://gerrit/git-older",
+        GerritCacheRepositories.getEntries()
+            .stream()
+            .map(GerritCacheRepositories.Entry::getRemote)
+            .collect(Collectors.joining(",")));
+  }
+
+  @Test
+  public void shouldNotEvictARepositoryInUse() throws Exception {
+    File caches = tmp.newFolder("caches");
+    File inUse = repository(caches, "git-in-use-" + NOW, 2);
+    File recent = repository(caches, "git-recent-" + NOW, 1);
+
+    // Held by another thread, like a running scan
+    Lock cacheLock = AbstractGerritSCMSource.cacheLockOf(inUse.getName());
+    Thread scan = new Thread(cacheLock::lock);
+    scan.start();
+    scan.join();
+
+    GerritCacheRepositories.evict(caches, 0, listener);
+
+    assertTrue(inUse.exists());
+    assertFalse(recent.exists());
+  }
+
+  @Test
+  public void shouldOnlyMeasureTheRepositoriesUsedSinceTheLastRun() throws Exception {
+    File caches = tmp.newFolder("caches");
+    File repository = repository(caches, "git-measured-" + NOW, 1);
+    GerritCacheRepositories.evict(caches, Long.MAX_VALUE, listener);
+    long measured = GerritCacheRepositories.getDiskBytes();
+
+    FileUtils.writeByteArrayToFile(new File(repository, ".git/objects/other"), new byte[1000]);
+    GerritCacheRepositories.evict(caches, Long.MAX_VALUE, listener);
+    assertEquals(measured, GerritCacheRepositories.getDiskBytes());
+
+    GerritCacheRepositories.touch(repository, "https://gerrit/git-measured");
+    GerritCacheRepositories.evict(caches, Long.MAX_VALUE, listener);
+    assertTrue(GerritCacheRepositories.getDiskBytes() >= measured + 1000);
+  }
+
+  private static File repository(File caches, String name, int daysAgo) throws Exception {
+    File dir = new File(caches, name);
+    FileUtils.writeByteArrayToFile(new File(dir, ".git/objects/pack"), new byte[1000]);
+    File marker = new File(dir, ".git/" + GerritCacheRepositories.MARKER_FILE);
+    GerritCacheRepositories.touch(dir, "https://gerrit/" + name);
+    assertEquals(
+        "https://gerrit/" + name, FileUtils.readFileToString(marker, StandardCharsets.UTF_8));
+    assertTrue(marker.setLastModified(NOW - daysAgo * 86_400_000L));
+    return dir;
+  }
+}
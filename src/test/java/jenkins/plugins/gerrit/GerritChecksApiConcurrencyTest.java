@@ -0,0 +1,175 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.plugins.checks.api.CheckInfo;
+import com.google.gerrit.plugins.checks.client.Checks;
+import com.google.gerrit.plugins.checks.client.GerritChecksApi;
+import com.google.gerrit.plugins.checks.client.GerritChecksApiBuilder;
+import com.google.gerrit.plugins.checks.client.PendingChecks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockserver.junit.MockServerRule;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class GerritChecksApiConcurrencyTest {
+  private static final int THREADS = 16;
+  private static final int REQUESTS = 500;
+  private static final Pattern CHECK_PATH =
+      Pattern.compile("/a/changes/(\\d+)/revisions/(\\d+)/checks/(.+)");
+
+  @Rule public MockServerRule g = new MockServerRule(this);
+
+  private GerritChecksApi checksApi;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() throws Exception {
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/a/changes/.*"))
+        .callback(
+            httpRequest -> {
+              Matcher matcher = CHECK_PATH.matcher(httpRequest.getPath().getValue());
+              if (!matcher.matches()) {
+                return HttpResponse.response().withStatusCode(404);
+              }
+              return HttpResponse.response()
+                  .withStatusCode(200)
+                  .withBody(
+                      String.format(
+                          ")]}'\n"
+                              + "{\"change_number\":%s,\"patch_set_id\":%s,"
+                              + "\"checker_uuid\":\"%s\"}",
+                          matcher.group(1), matcher.group(2), matcher.group(3)));
+            });
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/a/plugins/checks/checks.pending/"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody(")]}'\n[]"));
+
+    checksApi =
+        new GerritChecksApiBuilder(new URIish("http://localhost:" + g.getPort()))
+            .setBasicAuthCredentials("USERNAME", "PASSWORD")
+            .build();
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    executor.shutdownNow();
+    checksApi.close();
+  }
+
+  @Test
+  public void sharedChecksShouldServeConcurrentRequests() throws Exception {
+    Checks checks = checksApi.checks();
+    List<Future<?>> results = new ArrayList<>();
+    for (int i = 0; i < REQUESTS; i++) {
+      int changeNumber = 1000 + i;
+      int patchSetNumber = 1 + i % 5;
+      String checkerUuid = "test:checker-" + i;
+      results.add(
+          executor.submit(
+              () -> {
+                CheckInfo checkInfo =
+                    checks.change(changeNumber).patchSet(patchSetNumber).get(checkerUuid);
+                assertEquals(changeNumber, checkInfo.changeNumber);
+                assertEquals(patchSetNumber, checkInfo.patchSetId);
+                assertEquals(checkerUuid, checkInfo.checkerUuid);
+                return null;
+              }));
+    }
+
+    for (Future<?> result : results) {
+      result.get();
+    }
+  }
+
+  @Test
+  public void derivedPendingChecksShouldNotShareQueries() throws Exception {
+    PendingChecks pendingChecks = checksApi.pendingChecks();
+    List<Future<?>> results = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      String checkerUuid = "test:checker-" + i;
+      results.add(executor.submit(() -> pendingChecks.checker(checkerUuid).list()));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+
+    for (int i = 0; i < THREADS; i++) {
+      g.getClient()
+          .verify(
+              HttpRequest.request()
+                  .withPath("/a/plugins/checks/checks.pending/")
+                  .withQueryStringParameter("query", "checker:test:checker-" + i),
+              VerificationTimes.once());
+    }
+  }
+
+  @Test
+  public void errorResponsesShouldNotKeepTheInFlightPermits() throws Exception {
+    GerritRestLimiter.configure(
+        0, GerritRestLimiter.DEFAULT_BURST, GerritRestLimiter.DEFAULT_MAX_IN_FLIGHT, 1);
+    GerritChecksApi limitedChecksApi =
+        new GerritChecksApiBuilder(new URIish("http://localhost:" + g.getPort()))
+            .setBasicAuthCredentials("USERNAME", "PASSWORD")
+            .setRequestExecutor(GerritRestClientBuilderExtension.REQUEST_EXECUTOR)
+            .setRetryHandler(GerritRestClientBuilderExtension.RETRY_HANDLER)
+            .setServiceUnavailableRetryStrategy(
+                GerritRestClientBuilderExtension.SERVICE_UNAVAILABLE_RETRY)
+            .addRequestInterceptor(GerritRestClientBuilderExtension.ADMISSION)
+            .addResponseInterceptor(GerritRestClientBuilderExtension.RESPONSE_CHECK)
+            .build();
+    try {
+      for (int i = 0; i < 3 * GerritRestLimiter.DEFAULT_MAX_IN_FLIGHT; i++) {
+        try {
+          if (i % 2 == 0) {
+            limitedChecksApi.checks().change(1000 + i).patchSet(1).list();
+          } else {
+            limitedChecksApi.checkers().get("test:missing-" + i);
+          }
+          fail("Expected a failure for the missing resource");
+        } catch (RestApiException e) {
+          assertEquals("Request failed with status: 404", e.getCause().getMessage());
+        }
+      }
+    } finally {
+      limitedChecksApi.close();
+      GerritRestLimiter.configure(
+          GerritRestLimiter.DEFAULT_REQUESTS_PER_SECOND,
+          GerritRestLimiter.DEFAULT_BURST,
+          GerritRestLimiter.DEFAULT_MAX_IN_FLIGHT,
+          GerritRestLimiter.DEFAULT_MAX_WAIT_SECONDS);
+    }
+
+    assertEquals(0, GerritRestLimiter.forServer("http://localhost:" + g.getPort()).getInFlight());
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class GerritCircuitBreakerTest {
+
+  private final GerritCircuitBreaker breaker =
+      new GerritCircuitBreaker("http://gerrit", new GerritCircuitBreaker.Settings(50, 4, 1));
+
+  @Test
+  public void shouldStayClosedBelowTheMinimumCalls() throws Exception {
+    failCalls(3);
+
+    assertEquals(GerritCircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.beforeCall();
+  }
+
+  @Test
+  public void shouldOpenOnTheFailureRateAndRejectCalls() throws Exception {
+    succeedCalls(2);
+    failCalls(2);
+
+    assertEquals(GerritCircuitBreaker.State.OPEN, breaker.getState());
+    assertTrue(breaker.isOpen());
+    try {
+      breaker.beforeCall();
+      fail("Call should have been rejected");
+    } catch (GerritUnavailableException e) {
+      assertTrue(e.getRetryAfterMillis() > 0);
+      assertTrue(e.getRetryAfterMillis() <= 1000);
+    }
+    assertEquals(1, breaker.getRejected());
+    assertEquals(1, breaker.getTimesOpened());
+  }
+
+  @Test
+  public void shouldCloseAfterASuccessfulProbe() throws Exception {
+    failCalls(4);
+    Thread.sleep(1100);
+
+    breaker.beforeCall();
+    assertEquals(GerritCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertRejected();
+
+    breaker.onSuccess();
+    assertEquals(GerritCircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(0, breaker.getFailureRatePercent());
+    breaker.beforeCall();
+  }
+
+  @Test
+  public void shouldReopenAfterAFailedProbe() throws Exception {
+    failCalls(4);
+    Thread.sleep(1100);
+
+    breaker.beforeCall();
+    breaker.onFailure();
+
+    assertEquals(GerritCircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(2, breaker.getTimesOpened());
+    assertRejected();
+  }
+
+  @Test
+  public void shouldLetAnotherProbeThroughAfterACancelledOne() throws Exception {
+    failCalls(4);
+    Thread.sleep(1100);
+
+    breaker.beforeCall();
+    breaker.onCancel();
+
+    breaker.beforeCall();
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void shouldFindTheUnavailabilityInTheCauses() {
+    GerritUnavailableException unavailable = new GerritUnavailableException("down", 10);
+    Exception suppressing = new Exception("Could not update 1 of 2 Gerrit checks");
+    suppressing.addSuppressed(new RuntimeException(new IOException(unavailable)));
+
+    assertEquals(unavailable, GerritUnavailableException.find(suppressing));
+    assertEquals(null, GerritUnavailableException.find(new IOException("other")));
+  }
+
+  private void assertRejected() throws IOException {
+    try {
+      breaker.beforeCall();
+      fail("Call should have been rejected");
+    } catch (GerritUnavailableException e) {
+      // expected
+    }
+  }
+
+  private void succeedCalls(int calls) throws IOException {
+    for (int i = 0; i < calls; i++) {
+      breaker.beforeCall();
+      breaker.onSuccess();
+    }
+  }
+
+  private void failCalls(int calls) throws IOException {
+    for (int i = 0; i < calls; i++) {
+      breaker.beforeCall();
+      breaker.onFailure();
+    }
+  }
+}
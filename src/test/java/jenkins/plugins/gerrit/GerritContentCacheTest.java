@@ -0,0 +1,99 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import hudson.Util;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GerritContentCacheTest {
+  private static final byte[] HELLO = "hello\n".getBytes(StandardCharsets.UTF_8);
+  private static final String HELLO_BLOB = "ce013625030ba8dba906f756967f9e9ca394464a";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void shouldComputeTheGitBlobId() {
+    assertEquals(HELLO_BLOB, GerritContentCache.blobId(HELLO));
+    assertEquals(
+        "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391", GerritContentCache.blobId(new byte[0]));
+  }
+
+  @Test
+  public void shouldServeFromMemoryThenFromDisk() throws Exception {
+    GerritContentCache cache = new GerritContentCache(tmp.getRoot(), 1024, 1024);
+    assertNull(cache.get("project", HELLO_BLOB));
+    cache.put("project", HELLO_BLOB, HELLO);
+    assertArrayEquals(HELLO, cache.get("project", HELLO_BLOB));
+
+    GerritContentCache restarted = new GerritContentCache(tmp.getRoot(), 1024, 1024);
+    assertArrayEquals(HELLO, restarted.get("project", HELLO_BLOB));
+    assertNull(restarted.get("other", HELLO_BLOB));
+
+    assertEquals(1, cache.getMemoryHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, restarted.getDiskHits());
+    assertEquals(50, restarted.getHitRatePercent());
+  }
+
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedContents() {
+    GerritContentCache cache = new GerritContentCache(null, 10, 0);
+    byte[] first = "12345".getBytes(StandardCharsets.UTF_8);
+    byte[] second = "67890".getBytes(StandardCharsets.UTF_8);
+    byte[] third = "abcde".getBytes(StandardCharsets.UTF_8);
+
+    cache.put("project", GerritContentCache.blobId(first), first);
+    cache.put("project", GerritContentCache.blobId(second), second);
+    cache.get("project", GerritContentCache.blobId(first));
+    cache.put("project", GerritContentCache.blobId(third), third);
+
+    assertArrayEquals(first, cache.get("project", GerritContentCache.blobId(first)));
+    assertNull(cache.get("project", GerritContentCache.blobId(second)));
+    assertEquals(10, cache.getMemoryBytes());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedFilesFromDisk() {
+    GerritContentCache cache = new GerritContentCache(tmp.getRoot(), 0, 12);
+    byte[] first = "12345".getBytes(StandardCharsets.UTF_8);
+    byte[] second = "67890".getBytes(StandardCharsets.UTF_8);
+    byte[] third = "abcde".getBytes(StandardCharsets.UTF_8);
+
+    cache.put("project", GerritContentCache.blobId(first), first);
+    cached("project", first).setLastModified(System.currentTimeMillis() - 20_000);
+    cache.put("project", GerritContentCache.blobId(second), second);
+    cached("project", second).setLastModified(System.currentTimeMillis() - 10_000);
+    cache.put("project", GerritContentCache.blobId(third), third);
+
+    assertNull(cache.get("project", GerritContentCache.blobId(first)));
+    assertArrayEquals(second, cache.get("project", GerritContentCache.blobId(second)));
+    assertEquals(10, cache.getDiskBytes());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  private File cached(String project, byte[] content) {
+    return new File(
+        new File(tmp.getRoot(), Util.getDigestOf(project)), GerritContentCache.blobId(content));
+  }
+}
@@ -20,14 +20,33 @@ import com.google.gerrit.extensions.client.ChangeKind;
 import com.google.gerrit.extensions.common.AccountInfo;
 import com.google.gerrit.extensions.common.ChangeInfo;
 import com.google.gerrit.extensions.common.RevisionInfo;
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.scm.NullSCM;
 import java.net.URISyntaxException;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import jenkins.branch.Branch;
+import jenkins.branch.BranchSource;
 import jenkins.plugins.gerrit.GerritEnvironmentContributor.ChangeInfoInvisibleAction;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockserver.junit.MockServerRule;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
 
 public class GerritEnvironmentContributorTest {
 
@@ -54,6 +73,10 @@ public class GerritEnvironmentContributorTest {
   public static final AccountInfo TEST_ACCOUNT_INFO_MATT_SMITH =
       new AccountInfo("Matt Smith", "matt.smith@mycompany.com");
   public static final String TEST_GERRIT_URL = "http://gerrit.mycompany.com";
+
+  @Rule public MockServerRule g = new MockServerRule(this);
+  @Rule public JenkinsRule j = new JenkinsRule();
+
   private ChangeInfo changeInfo;
   private GerritURI gerritURI;
 
@@ -96,40 +119,7 @@ public class GerritEnvironmentContributorTest {
     Map<String, String> changeEnvs =
         new ChangeInfoInvisibleAction(Optional.of(changeInfo), TEST_PATCHSET_NUMBER, gerritURI)
             .getChangeEnvs();
-    Map<String, String> expectedMap =
-        new HashMap<String, String>() {
-          {
-            put("GERRIT_BRANCH", TEST_BRANCH);
-            put("GERRIT_PATCHSET_UPLOADER_NAME", TEST_ACCOUNT_INFO_MATT_SMITH.name);
-            put(
-                "GERRIT_CHANGE_OWNER",
-                TEST_ACCOUNT_INFO_JOHN_DOE.name + " <" + TEST_ACCOUNT_INFO_JOHN_DOE.email + ">");
-            put("GERRIT_CHANGE_OWNER_NAME", TEST_ACCOUNT_INFO_JOHN_DOE.name);
-            put("GERRIT_CHANGE_OWNER_EMAIL", TEST_ACCOUNT_INFO_JOHN_DOE.email);
-            put(
-                "GERRIT_PATCHSET_UPLOADER",
-                TEST_ACCOUNT_INFO_MATT_SMITH.name
-                    + " <"
-                    + TEST_ACCOUNT_INFO_MATT_SMITH.email
-                    + ">");
-            put("GERRIT_PATCHSET_UPLOADER_NAME", TEST_ACCOUNT_INFO_MATT_SMITH.name);
-            put("GERRIT_PATCHSET_UPLOADER_EMAIL", TEST_ACCOUNT_INFO_MATT_SMITH.email);
-            put("GERRIT_CHANGE_SUBJECT", TEST_CHANGE_SUBJECT);
-            put("GERRIT_TOPIC", TEST_CHANGE_TOPIC);
-            put("GERRIT_REFNAME", TEST_CHANGE_REF_NAME);
-            put("GERRIT_CHANGE_URL", TEST_GERRIT_URL + "/" + TEST_CHANGE_NUMBER);
-            put("GERRIT_CHANGE_NUMBER", Integer.toString(TEST_CHANGE_NUMBER));
-            put("GERRIT_PATCHSET_KIND", TEST_CHANGE_KIND);
-            put("GERRIT_PATCHSET_REVISION", Integer.toString(TEST_PATCHSET_NUMBER));
-            put("GERRIT_PATCHSET_NUMBER", Integer.toString(TEST_PATCHSET_NUMBER));
-            put("GERRIT_CHANGE_WIP_STATE", "false");
-            put("GERRIT_CHANGE_ID", TEST_CHANGE_ID_TRIPLET);
-            put("GERRIT_CHANGE_PRIVATE_STATE", "false");
-            put("GERRIT_REFSPEC", TEST_CHANGE_REF_NAME);
-            put("GERRIT_REVERTED_CHANGE_NUMBER", Integer.toString(TEST_REVERTED_CHANGE_NUMBER));
-          }
-        };
-    assertThat(changeEnvs).containsExactlyEntriesIn(expectedMap);
+    assertThat(changeEnvs).containsExactlyEntriesIn(expectedChangeEnvs());
   }
 
   @Test
@@ -149,4 +139,91 @@ public class GerritEnvironmentContributorTest {
                 .getChangeEnvs())
         .containsEntry("GERRIT_CHANGE_WIP_STATE", "true");
   }
+
+  @Test
+  public void testBuildEnvironmentFromScannedChangeHead() throws Exception {
+    g.getClient()
+        .when(HttpRequest.request("/a/changes/.*"))
+        .respond(HttpResponse.response().withStatusCode(500));
+    GerritSCMSource source =
+        new GerritSCMSource(
+            String.format(
+                "https://%s:%s/a/%s",
+                g.getClient().remoteAddress().getHostName(),
+                g.getClient().remoteAddress().getPort(),
+                TEST_PROJECT_NAME));
+    source.setInsecureHttps(true);
+    source.setCredentialsId("cid");
+    WorkflowMultiBranchProject mp = j.jenkins.createProject(WorkflowMultiBranchProject.class, "mp");
+    mp.getSourcesList().add(new BranchSource(source));
+    ChangeSCMHead head =
+        new ChangeSCMHead(
+            new AbstractMap.SimpleEntry<>(TEST_CHANGE_REF_NAME, ObjectId.zeroId()),
+            TEST_CHANGE_REF_NAME.substring("refs/changes/".length()),
+            new HashSet<>(),
+            GerritEnvironmentContributor.changeEnvsOf(
+                changeInfo, TEST_PATCHSET_NUMBER, gerritURI));
+    WorkflowJob job =
+        mp.getProjectFactory()
+            .newInstance(new Branch(source.getId(), head, new NullSCM(), Collections.emptyList()));
+    job.setDisplayName(head.getName());
+    EnvVars envs = new EnvVars();
+
+    new GerritEnvironmentContributor()
+        .buildEnvironmentFor(new WorkflowRun(job), envs, TaskListener.NULL);
+
+    assertThat(envs).containsAtLeastEntriesIn(expectedChangeEnvs());
+    g.getClient().verify(HttpRequest.request("/a/changes/.*"), VerificationTimes.exactly(0));
+  }
+
+  @Test
+  public void testBuildEnvironmentFromPrefetchedChangeInfo() {
+    Map<String, String> changeEnvs =
+        GerritEnvironmentContributor.changeEnvsOf(changeInfo, TEST_PATCHSET_NUMBER, gerritURI);
+
+    assertThat(
+            new ChangeInfoInvisibleAction(CompletableFuture.completedFuture(changeEnvs))
+                .getChangeEnvs())
+        .containsExactlyEntriesIn(changeEnvs);
+  }
+
+  @Test
+  public void testBuildEnvironmentFromFailedPrefetchIsEmpty() {
+    CompletableFuture<Map<String, String>> failedPrefetch = new CompletableFuture<>();
+    failedPrefetch.completeExceptionally(new IllegalStateException("Gerrit unavailable"));
+
+    assertThat(new ChangeInfoInvisibleAction(failedPrefetch).getChangeEnvs()).isEmpty();
+  }
+
+  private static Map<String, String> expectedChangeEnvs() {
+    return new HashMap<String, String>() {
+      {
+        put("GERRIT_BRANCH", TEST_BRANCH);
+        put("GERRIT_PATCHSET_UPLOADER_NAME", TEST_ACCOUNT_INFO_MATT_SMITH.name);
+        put(
+            "GERRIT_CHANGE_OWNER",
+            TEST_ACCOUNT_INFO_JOHN_DOE.name + " <" + TEST_ACCOUNT_INFO_JOHN_DOE.email + ">");
+        put("GERRIT_CHANGE_OWNER_NAME", TEST_ACCOUNT_INFO_JOHN_DOE.name);
+        put("GERRIT_CHANGE_OWNER_EMAIL", TEST_ACCOUNT_INFO_JOHN_DOE.email);
+        put(
+            "GERRIT_PATCHSET_UPLOADER",
+            TEST_ACCOUNT_INFO_MATT_SMITH.name + " <" + TEST_ACCOUNT_INFO_MATT_SMITH.email + ">");
+        put("GERRIT_PATCHSET_UPLOADER_NAME", TEST_ACCOUNT_INFO_MATT_SMITH.name);
+        put("GERRIT_PATCHSET_UPLOADER_EMAIL", TEST_ACCOUNT_INFO_MATT_SMITH.email);
+        put("GERRIT_CHANGE_SUBJECT", TEST_CHANGE_SUBJECT);
+        put("GERRIT_TOPIC", TEST_CHANGE_TOPIC);
+        put("GERRIT_REFNAME", TEST_CHANGE_REF_NAME);
+        put("GERRIT_CHANGE_URL", TEST_GERRIT_URL + "/" + TEST_CHANGE_NUMBER);
+        put("GERRIT_CHANGE_NUMBER", Integer.toString(TEST_CHANGE_NUMBER));
+        put("GERRIT_PATCHSET_KIND", TEST_CHANGE_KIND);
+        put("GERRIT_PATCHSET_REVISION", Integer.toString(TEST_PATCHSET_NUMBER));
+        put("GERRIT_PATCHSET_NUMBER", Integer.toString(TEST_PATCHSET_NUMBER));
+        put("GERRIT_CHANGE_WIP_STATE", "false");
+        put("GERRIT_CHANGE_ID", TEST_CHANGE_ID_TRIPLET);
+        put("GERRIT_CHANGE_PRIVATE_STATE", "false");
+        put("GERRIT_REFSPEC", TEST_CHANGE_REF_NAME);
+        put("GERRIT_REVERTED_CHANGE_NUMBER", Integer.toString(TEST_REVERTED_CHANGE_NUMBER));
+      }
+    };
+  }
 }
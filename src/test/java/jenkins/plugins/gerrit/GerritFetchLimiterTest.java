@@ -0,0 +1,115 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.Test;
+
+public class GerritFetchLimiterTest {
+  private final TaskListener listener = new StreamTaskListener(System.out);
+  private final List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void shouldServeTheServersRoundRobinAndEachInOrder() throws Exception {
+    GerritFetchLimiter limiter = new GerritFetchLimiter(1);
+    GerritFetchLimiter.Slot slot = limiter.acquire("https://a", listener);
+    List<Thread> scans = new ArrayList<>();
+    scans.add(startFetch(limiter, "https://b", "b1"));
+    scans.add(startFetch(limiter, "https://b", "b2"));
+    scans.add(startFetch(limiter, "https://c", "c1"));
+    assertEquals(1, limiter.getRunning());
+    assertEquals(3, limiter.getQueued());
+
+    slot.close();
+    for (Thread scan : scans) {
+      scan.join();
+    }
+
+    assertEquals("b1,c1,b2", String.join(",", fetched));
+    assertEquals(0, limiter.getRunning());
+    assertEquals(
+        "https://a:1,https://b:2,https://c:1",
+        limiter
+            .all()
+            .stream()
+            .map(stats -> stats.getServer() + ":" + stats.getFetches())
+            .collect(Collectors.joining(",")));
+  }
+
+  @Test
+  public void shouldLeaveTheQueueWhenInterrupted() throws Exception {
+    GerritFetchLimiter limiter = new GerritFetchLimiter(1);
+    try (GerritFetchLimiter.Slot slot = limiter.acquire("https://a", listener)) {
+      Thread scan = startFetch(limiter, "https://b", "b1");
+      scan.interrupt();
+      scan.join();
+
+      assertEquals(0, limiter.getQueued());
+    }
+
+    assertTrue(fetched.isEmpty());
+    assertEquals(0, limiter.getRunning());
+    limiter.acquire("https://b", listener).close();
+  }
+
+  @Test
+  public void shouldGrantTheSlotsFreedByANewLimit() throws Exception {
+    GerritFetchLimiter limiter = new GerritFetchLimiter(1);
+    try (GerritFetchLimiter.Slot slot = limiter.acquire("https://a", listener)) {
+      Thread scan = startFetch(limiter, "https://a", "a2");
+      limiter.setMaxConcurrent(0);
+      scan.join();
+    }
+
+    assertEquals("a2", String.join(",", fetched));
+  }
+
+  @Test
+  public void shouldIdentifyTheServerOfARemote() throws Exception {
+    assertEquals(
+        "ssh://gerrit:29418",
+        GerritFetchLimiter.serverOf(new URIish("ssh://admin@gerrit:29418/project")));
+    assertEquals(
+        "https://gerrit", GerritFetchLimiter.serverOf(new URIish("https://gerrit/a/project")));
+  }
+
+  private Thread startFetch(GerritFetchLimiter limiter, String server, String name)
+      throws InterruptedException {
+    Thread scan =
+        new Thread(
+            () -> {
+              try (GerritFetchLimiter.Slot slot = limiter.acquire(server, listener)) {
+                fetched.add(name);
+              } catch (InterruptedException e) {
+                // Aborted scan
+              }
+            });
+    scan.start();
+    // Queued for a slot
+    while (scan.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    return scan;
+  }
+}
@@ -84,16 +84,24 @@ public class GerritMockServerRule implements TestRule {
                       .filter(StringUtils::isNotBlank)
                       .map(Integer::parseInt)
                       .orElse(projectRepository.size());
+              String prefix =
+                  ofNullable(httpRequest.getFirstQueryStringParameter("p")).orElse("");
+              List<ProjectInfo> projects =
+                  projectRepository
+                      .values()
+                      .stream()
+                      .filter(projectInfo -> projectInfo.id.startsWith(prefix))
+                      .collect(Collectors.toList());
 
-              if (start >= projectRepository.size()) {
+              if (start >= projects.size()) {
                 return HttpResponse.response()
                     .withStatusCode(200)
                     .withBody(JsonBody.json(Collections.emptyMap()));
               }
 
               Map<String, ProjectInfo> projectSlice =
-                  new ArrayList<>(projectRepository.values())
-                      .subList(start, Math.min(start + limit, projectRepository.size()))
+                  projects
+                      .subList(start, Math.min(start + limit, projects.size()))
                       .stream()
                       .collect(
                           Collectors.toMap(
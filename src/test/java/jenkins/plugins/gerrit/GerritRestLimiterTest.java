@@ -0,0 +1,114 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class GerritRestLimiterTest {
+
+  @After
+  public void restoreDefaults() {
+    GerritRestLimiter.configure(
+        GerritRestLimiter.DEFAULT_REQUESTS_PER_SECOND,
+        GerritRestLimiter.DEFAULT_BURST,
+        GerritRestLimiter.DEFAULT_MAX_IN_FLIGHT,
+        GerritRestLimiter.DEFAULT_MAX_WAIT_SECONDS);
+  }
+
+  @Test
+  public void shouldThrottleRequestsOverTheRate() throws Exception {
+    GerritRestLimiter limiter =
+        new GerritRestLimiter("http://gerrit", new GerritRestLimiter.Settings(10, 1, 0, 10));
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 6; i++) {
+      limiter.acquire().close();
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue("5 requests over the burst should wait ~500ms", elapsedMillis >= 400);
+    assertEquals(6, limiter.getRequests());
+    assertEquals(5, limiter.getThrottled());
+    assertTrue(limiter.getMaxWaitMillis() > 0);
+  }
+
+  @Test
+  public void shouldRejectRequestsOverTheInFlightLimit() throws Exception {
+    GerritRestLimiter limiter =
+        new GerritRestLimiter("http://gerrit", new GerritRestLimiter.Settings(0, 1, 1, 0));
+
+    try (GerritRestLimiter.Permit permit = limiter.acquire()) {
+      assertEquals(1, limiter.getInFlight());
+      try {
+        limiter.acquire();
+        fail("Expected the second request to be rejected");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("1 requests in flight"));
+      }
+    }
+
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(1, limiter.getRejected());
+    limiter.acquire().close();
+  }
+
+  @Test
+  public void shouldShareLimiterPerServer() {
+    GerritRestLimiter.configure(10, 10, 2, 10);
+
+    assertTrue(
+        GerritRestLimiter.forServer("https://gerrit:443")
+            == GerritRestLimiter.forServer("https://gerrit:443"));
+    assertTrue(
+        GerritRestLimiter.forServer("https://gerrit:443")
+            != GerritRestLimiter.forServer("https://other:443"));
+  }
+
+  @Test
+  public void shouldResizeTheLimitsWhileRequestsAreInFlight() throws Exception {
+    GerritRestLimiter.configure(0, 1, 2, 0);
+    GerritRestLimiter limiter = GerritRestLimiter.forServer("https://resized:443");
+    GerritRestLimiter.Permit first = limiter.acquire();
+    GerritRestLimiter.Permit second = limiter.acquire();
+
+    GerritRestLimiter.configure(0, 1, 1, 0);
+    first.close();
+    assertEquals(1, limiter.getInFlight());
+    try {
+      limiter.acquire();
+      fail("Expected the request to count against the reduced limit");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("1 requests in flight"));
+    }
+
+    second.close();
+    assertEquals(0, limiter.getInFlight());
+    GerritRestLimiter.configure(0, 1, 3, 0);
+    GerritRestLimiter.Permit third = limiter.acquire();
+    GerritRestLimiter.Permit fourth = limiter.acquire();
+    GerritRestLimiter.Permit fifth = limiter.acquire();
+    assertEquals(3, limiter.getInFlight());
+    third.close();
+    fourth.close();
+    fifth.close();
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMHead;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GerritSCMFileSystemTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final List<String> reads = new ArrayList<>();
+
+  // The contents are cached by commit across file systems, a new commit keeps the tests independent
+  private final String commit = UUID.randomUUID().toString();
+
+  private final GerritSCMFileSystem fs =
+      new GerritSCMFileSystem(
+          new AbstractGitSCMSource.SCMRevisionImpl(new SCMHead("master"), commit),
+          "project",
+          commit,
+          path -> {
+            reads.add(path);
+            return path.equals("Jenkinsfile") ? "node {}".getBytes(StandardCharsets.UTF_8) : null;
+          });
+
+  @Test
+  public void shouldReadTheFilesOfTheRevision() throws Exception {
+    SCMFile jenkinsfile = fs.getRoot().child("Jenkinsfile");
+
+    assertEquals(SCMFile.Type.REGULAR_FILE, jenkinsfile.getType());
+    assertEquals("node {}", jenkinsfile.contentAsString());
+    assertEquals(SCMFile.Type.NONEXISTENT, fs.getRoot().child("missing").getType());
+    assertEquals(SCMFile.Type.DIRECTORY, fs.getRoot().getType());
+  }
+
+  @Test
+  public void shouldReadEachFileOnce() throws Exception {
+    fs.getRoot().child("Jenkinsfile").contentAsString();
+    fs.getRoot().child("Jenkinsfile").getType();
+    fs.getRoot().child("missing").getType();
+    fs.getRoot().child("missing").getType();
+
+    assertEquals(2, reads.size());
+  }
+
+  @Test
+  public void shouldReadANonTipRevisionOfABloblessSource() throws Exception {
+    File origin = tmp.newFolder("origin");
+    git(origin, "init", "-q");
+    git(origin, "config", "uploadpack.allowFilter", "true");
+    FileUtils.writeStringToFile(new File(origin, "Jenkinsfile"), "v1", StandardCharsets.UTF_8);
+    commit(origin);
+    String nonTip = git(origin, "rev-parse", "HEAD");
+    ObjectId nonTipBlob = ObjectId.fromString(git(origin, "rev-parse", "HEAD:Jenkinsfile"));
+    FileUtils.writeStringToFile(new File(origin, "Jenkinsfile"), "v2", StandardCharsets.UTF_8);
+    commit(origin);
+
+    String cacheEntry = "git-" + UUID.randomUUID();
+    String bloblessEntry = AbstractGerritSCMSource.cacheEntryOf(cacheEntry, true);
+    assertNotEquals(cacheEntry, bloblessEntry);
+    assertEquals(cacheEntry, AbstractGerritSCMSource.cacheEntryOf(cacheEntry, false));
+
+    GitClient blobless = fetchCache(origin, bloblessEntry, true);
+    GitClient full = fetchCache(origin, cacheEntry, false);
+
+    assertTrue(AbstractGerritSCMSource.isPartialClone(blobless));
+    assertFalse(AbstractGerritSCMSource.isPartialClone(full));
+    try (Repository repository = blobless.getRepository()) {
+      assertFalse(repository.getObjectDatabase().has(nonTipBlob));
+    }
+    try (Repository repository = full.getRepository()) {
+      assertArrayEquals(
+          "v1".getBytes(StandardCharsets.UTF_8),
+          GerritSCMFileSystem.GitContentReader.read(
+              repository, "project", ObjectId.fromString(nonTip), "Jenkinsfile"));
+    }
+  }
+
+  /** Fetches the branches of the origin in a new cache repository, the way the scans do. */
+  private GitClient fetchCache(File origin, String cacheEntry, boolean blobless) throws Exception {
+    GitClient client =
+        Git.with(TaskListener.NULL, new EnvVars())
+            .in(tmp.newFolder(cacheEntry))
+            .using("git")
+            .getClient();
+    client.init();
+    client.setRemoteUrl("origin", "file://" + origin.getAbsolutePath());
+    AbstractGerritSCMSource.configureCacheFetch(client, "origin", blobless, null);
+    client
+        .fetch_()
+        .from(
+            new URIish("origin"),
+            Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*")))
+        .execute();
+    return client;
+  }
+
+  private static void commit(File dir) throws IOException, InterruptedException {
+    git(dir, "add", "Jenkinsfile");
+    git(
+        dir,
+        "-c",
+        "user.name=Test",
+        "-c",
+        "user.email=test@example.com",
+        "commit",
+        "-q",
+        "-m",
+        "Update the Jenkinsfile");
+  }
+
+  private static String git(File dir, String... args) throws IOException, InterruptedException {
+    String[] command = new String[args.length + 1];
+    command[0] = "git";
+    System.arraycopy(args, 0, command, 1, args.length);
+    Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+    process.getOutputStream().close();
+    String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+    assertEquals(output, 0, process.waitFor());
+    return output.trim();
+  }
+}
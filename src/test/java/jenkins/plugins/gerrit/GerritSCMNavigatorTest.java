@@ -25,12 +25,14 @@ import hudson.model.TaskListener;
 import hudson.util.LogTaskListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.plugins.gerrit.traits.ProjectNameFilterTrait;
 import jenkins.plugins.git.traits.RefSpecsSCMSourceTrait;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceObserver;
@@ -80,6 +82,26 @@ public class GerritSCMNavigatorTest {
         Collections.emptyList());
   }
 
+  @Test
+  public void visitSourcesMatchingTheProjectNameFilter() throws IOException, InterruptedException {
+    g.addProject(createProject("team/foo"));
+    g.addProject(createProject("other/bar"));
+    g.addProject(createProject("team/baz"));
+
+    GerritSCMNavigator navigator =
+        new GerritSCMNavigator(
+            g.getUrl(),
+            false,
+            null,
+            Collections.singletonList(
+                new ProjectNameFilterTrait(ProjectNameFilterTrait.Mode.PREFIX, "team/")));
+    RecordingSCMSourceObserver sourceObserver = new RecordingSCMSourceObserver();
+    navigator.visitSources(sourceObserver);
+
+    assertEquals(Arrays.asList("team/foo", "team/baz"), sourceObserver.observedProjectNames);
+    assertEquals(2, sourceObserver.addedSourceByProjectName.size());
+  }
+
   @Test
   public void sourcesShareCommonPropertiesWithTheNavigator()
       throws IOException, InterruptedException {
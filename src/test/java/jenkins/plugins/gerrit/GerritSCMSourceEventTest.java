@@ -0,0 +1,64 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import jenkins.scm.api.SCMEvent;
+import org.junit.Test;
+
+public class GerritSCMSourceEventTest {
+
+  private final GerritProjectEvent projectCreated =
+      new GerritProjectEvent(null, null, "project-created", "team/app");
+
+  @Test
+  public void shouldMapTheProjectLifecycleEvents() {
+    assertEquals(SCMEvent.Type.CREATED, GerritSCMSourceEvent.typeOf("project-created"));
+    assertEquals(SCMEvent.Type.REMOVED, GerritSCMSourceEvent.typeOf("project-deleted"));
+    assertEquals(SCMEvent.Type.UPDATED, GerritSCMSourceEvent.typeOf("project-head-updated"));
+    assertNull(GerritSCMSourceEvent.typeOf("ref-updated"));
+  }
+
+  @Test
+  public void shouldMatchTheNavigatorsOfTheServer() {
+    GerritSCMSourceEvent event =
+        new GerritSCMSourceEvent(
+            SCMEvent.Type.CREATED, projectCreated, null, "https://gerrit.example.com/", null);
+
+    assertEquals("team/app", event.getSourceName());
+    assertTrue(event.isMatch(navigator("https://gerrit.example.com")));
+    assertFalse(event.isMatch(navigator("https://other.example.com")));
+    assertTrue(event.isMatch(new GerritSCMSource("https://gerrit.example.com/a/team/app")));
+    assertFalse(event.isMatch(new GerritSCMSource("https://other.example.com/a/team/app")));
+  }
+
+  @Test
+  public void shouldMatchAnyServerWhenNotSpecified() {
+    GerritSCMSourceEvent event =
+        new GerritSCMSourceEvent(SCMEvent.Type.CREATED, projectCreated, null, null, null);
+
+    assertTrue(event.isMatch(navigator("https://gerrit.example.com")));
+    assertTrue(event.isMatch(navigator("https://other.example.com")));
+  }
+
+  private static GerritSCMNavigator navigator(String serverUrl) {
+    return new GerritSCMNavigator(serverUrl, false, null, Collections.emptyList());
+  }
+}
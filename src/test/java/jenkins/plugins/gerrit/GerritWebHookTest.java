@@ -46,6 +46,19 @@ public class GerritWebHookTest {
     assertEquals(testRepoName, projectEvent.get().project.name);
   }
 
+  @Test
+  public void shouldExtractProjectLifecycleEvents() throws Exception {
+    byte[] gerritEventBody =
+        ("{\"projectName\":\"testrepo\", \"headName\":\"refs/heads/main\","
+                + " \"type\":\"project-created\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    Optional<GerritProjectEvent> projectEvent =
+        webHook.getBody(getInMemoryServletRequest(gerritEventBody));
+
+    assertTrue(projectEvent.isPresent());
+    assertEquals(testRepoName, projectEvent.get().getProjectName());
+  }
+
   @Test
   public void shouldIngoreNotInterestingEvents() throws Exception {
     assertFalse(
@@ -0,0 +1,121 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import java.util.UUID;
+import java.util.function.Predicate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockserver.junit.MockServerRule;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class MarkerFileProbeTest {
+
+  @Rule public MockServerRule g = new MockServerRule(this);
+
+  private static final Predicate<String> ALL_BRANCHES = name -> true;
+
+  private MarkerFileProbe probe;
+  private MarkerFileProbe branchesProbe;
+
+  @Before
+  public void setup() throws Exception {
+    for (String project : new String[] {"with", "without", "feature"}) {
+      g.getClient()
+          .when(HttpRequest.request().withMethod("GET").withPath("/projects/" + project + "/HEAD"))
+          .respond(
+              HttpResponse.response().withStatusCode(200).withBody(")]}'\n\"refs/heads/master\""));
+      g.getClient()
+          .when(
+              HttpRequest.request()
+                  .withMethod("GET")
+                  .withPath("/projects/" + project + "/branches/[^/]*master"))
+          .respond(
+              HttpResponse.response()
+                  .withStatusCode(200)
+                  .withBody(
+                      ")]}'\n{\"ref\":\"refs/heads/master\","
+                          + "\"revision\":\"4b3c1ab5e0e1ea0e2bd1f4d9d5ab5d0a54cfdd34\"}"));
+    }
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/projects/feature/branches/?"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(
+                    ")]}'\n[{\"ref\":\"HEAD\",\"revision\":\"master\"},"
+                        + "{\"ref\":\"refs/heads/master\","
+                        + "\"revision\":\"4b3c1ab5e0e1ea0e2bd1f4d9d5ab5d0a54cfdd34\"},"
+                        + "{\"ref\":\"refs/heads/feature\","
+                        + "\"revision\":\"9d3a6e1c0e1ea0e2bd1f4d9d5ab5d0a54cfdd34b\"}]"));
+    g.getClient()
+        .when(
+            HttpRequest.request()
+                .withMethod("GET")
+                .withPath("/projects/feature/branches/[^/]*feature/files/.*/content"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody("bm9kZSB7fQ=="));
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/projects/feature/.*/content"))
+        .respond(HttpResponse.response().withStatusCode(404).withBody("Not found"));
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/projects/with/.*/content"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody("bm9kZSB7fQ=="));
+    g.getClient()
+        .when(HttpRequest.request().withMethod("GET").withPath("/projects/without/.*/content"))
+        .respond(HttpResponse.response().withStatusCode(404).withBody("Not found"));
+
+    GerritApi gerritApi =
+        new GerritApiBuilder().gerritApiUrl("http://localhost:" + g.getPort()).build();
+    // The answers are cached across probes, a new server key keeps the tests independent
+    String server = UUID.randomUUID().toString();
+    probe = new MarkerFileProbe(gerritApi, server, "Jenkinsfile", true);
+    branchesProbe = new MarkerFileProbe(gerritApi, server, "Jenkinsfile", false);
+  }
+
+  @Test
+  public void shouldFindTheMarkerFileOnTheHeadBranch() throws Exception {
+    assertTrue(probe.isPresent("with", ALL_BRANCHES));
+    assertFalse(probe.isPresent("without", ALL_BRANCHES));
+  }
+
+  @Test
+  public void shouldNotFetchTheMarkerFileAgainWhileTheHeadBranchDoesNotMove() throws Exception {
+    assertTrue(probe.isPresent("with", ALL_BRANCHES));
+    assertTrue(probe.isPresent("with", ALL_BRANCHES));
+
+    g.getClient()
+        .verify(
+            HttpRequest.request().withPath("/projects/with/.*/content"),
+            VerificationTimes.once());
+  }
+
+  @Test
+  public void shouldFindTheMarkerFileOnTheBranchesAcceptedByTheFilters() throws Exception {
+    assertTrue(branchesProbe.isPresent("feature", ALL_BRANCHES));
+    assertFalse(branchesProbe.isPresent("feature", name -> name.equals("master")));
+  }
+
+  @Test
+  public void shouldOnlyLookAtTheHeadBranchWhenAsked() throws Exception {
+    assertFalse(probe.isPresent("feature", ALL_BRANCHES));
+  }
+}
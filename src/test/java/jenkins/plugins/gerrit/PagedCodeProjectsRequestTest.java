@@ -15,9 +15,13 @@
 package jenkins.plugins.gerrit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.google.gerrit.extensions.common.ProjectInfo;
+import java.io.Closeable;
 import java.net.URISyntaxException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -60,6 +64,30 @@ public class PagedCodeProjectsRequestTest {
     test(2 * CHUNK_MAX_SIZE + 1);
   }
 
+  @Test
+  public void testChunksGrowingUpToTheMaxSize() throws URISyntaxException {
+    request =
+        new PagedCodeProjectsRequest(
+            new GerritApiBuilder().gerritApiUrl(g.getUrl()).build(), 1, CHUNK_MAX_SIZE);
+
+    // Chunks of 1, 2, 4, 4, 4 and a last partial one
+    test(1 + 2 + 3 * CHUNK_MAX_SIZE + 1);
+  }
+
+  @Test
+  public void testClosingStopsTheIteration() throws Exception {
+    for (int i = 1; i <= 2 * CHUNK_MAX_SIZE; i++) {
+      g.addProject(createProject(String.valueOf(i)));
+    }
+
+    Iterator<ProjectInfo> projects = request.iterator();
+    assertEquals("1", projects.next().id);
+    assertTrue(projects instanceof Closeable);
+    ((Closeable) projects).close();
+
+    assertFalse(projects.hasNext());
+  }
+
   private void test(int numberOfProjects) {
     for (int i = 1; i <= numberOfProjects; i++) {
       g.addProject(createProject(String.valueOf(i)));
@@ -0,0 +1,106 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import com.google.gerrit.plugins.checks.api.PendingChecksInfo;
+import com.google.gerrit.plugins.checks.client.Checks;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the parsing of a pending checks response, buffered as a string versus streamed from the
+ * HTTP entity.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=jenkins.plugins.gerrit.PendingChecksParserBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingChecksParserBenchmark {
+  private static final Type PENDING_CHECKS_LIST_TYPE =
+      new TypeToken<List<PendingChecksInfo>>() {}.getType();
+
+  @Param({"10000"})
+  public int entries;
+
+  private byte[] response;
+
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder(")]}'\n[");
+    for (int i = 0; i < entries; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(
+          String.format(
+              "{\"patch_set\":{\"repository\":\"project-%d\",\"change_number\":%d,"
+                  + "\"patch_set_id\":%d},\"pending_checks\":{\"test:checker-%d\":"
+                  + "{\"state\":\"NOT_STARTED\"},\"test:other-checker\":"
+                  + "{\"state\":\"SCHEDULED\"}}}",
+              i % 100, i, 1 + i % 7, i % 10));
+    }
+    json.append(']');
+    response = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public List<PendingChecksInfo> parseBufferedString() throws IOException {
+    return Checks.JsonBodyParser.parseResponse(
+        EntityUtils.toString(newEntity()), PENDING_CHECKS_LIST_TYPE);
+  }
+
+  @Benchmark
+  public List<PendingChecksInfo> parseStreamedEntity() throws IOException {
+    return Checks.JsonBodyParser.parseResponse(newEntity(), PENDING_CHECKS_LIST_TYPE);
+  }
+
+  private ByteArrayEntity newEntity() {
+    return new ByteArrayEntity(response, ContentType.APPLICATION_JSON);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(PendingChecksParserBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
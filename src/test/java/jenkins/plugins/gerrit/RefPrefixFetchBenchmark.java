@@ -0,0 +1,173 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures a scan fetch of the branches and of the open changes from a local repository with many
+ * change refs, with the original protocol, which advertises all the refs, versus protocol v2, which
+ * only lists the refs matching the {@code ref-prefix} of the refspecs.
+ *
+ * <p>Requires git 2.18 or later. Run with {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=jenkins.plugins.gerrit.RefPrefixFetchBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RefPrefixFetchBenchmark {
+
+  @Param({"500000"})
+  public int changeRefs;
+
+  @Param({"100"})
+  public int openChanges;
+
+  private Path server;
+  private Path cache;
+  private final List<String> refSpecs = new ArrayList<>();
+
+  @Setup
+  public void createServerRepository() throws IOException, InterruptedException {
+    server = Files.createTempDirectory("gerrit-server");
+    git(server, "init", "-q", "--bare");
+    String tree = git(server, "mktree");
+    String commit =
+        git(
+            server,
+            "-c",
+            "user.name=Benchmark",
+            "-c",
+            "user.email=benchmark@example.com",
+            "commit-tree",
+            tree,
+            "-m",
+            "Initial commit");
+
+    // Writing packed-refs directly is much faster than creating the refs one by one
+    try (Writer packedRefs =
+        Files.newBufferedWriter(server.resolve("packed-refs"), StandardCharsets.UTF_8)) {
+      packedRefs.write("# pack-refs with: peeled fully-peeled \n");
+      packedRefs.write(commit + " refs/heads/master\n");
+      for (int change = 1; change <= changeRefs; change++) {
+        packedRefs.write(commit + " " + changeRef(change) + "\n");
+      }
+    }
+
+    refSpecs.add("+refs/heads/*:refs/remotes/origin/*");
+    int step = Math.max(1, changeRefs / openChanges);
+    for (int change = step; change <= changeRefs; change += step) {
+      String ref = changeRef(change);
+      refSpecs.add(ref + ":" + ref.replace("refs/changes", "refs/remotes/origin"));
+    }
+  }
+
+  @TearDown
+  public void deleteServerRepository() throws IOException {
+    FileUtils.deleteDirectory(server.toFile());
+  }
+
+  @Setup(Level.Invocation)
+  public void createCacheRepository() throws IOException, InterruptedException {
+    cache = Files.createTempDirectory("gerrit-cache");
+    git(cache, "init", "-q", "--bare");
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteCacheRepository() throws IOException {
+    FileUtils.deleteDirectory(cache.toFile());
+  }
+
+  @Benchmark
+  public String fetchWithProtocolV0() throws IOException, InterruptedException {
+    return fetch(0);
+  }
+
+  @Benchmark
+  public String fetchWithProtocolV2() throws IOException, InterruptedException {
+    return fetch(2);
+  }
+
+  private String fetch(int protocolVersion) throws IOException, InterruptedException {
+    List<String> args =
+        new ArrayList<>(
+            Arrays.asList(
+                "-c",
+                "protocol.version=" + protocolVersion,
+                "fetch",
+                "-q",
+                server.toUri().toString()));
+    args.addAll(refSpecs);
+    return git(cache, args.toArray(new String[0]));
+  }
+
+  private static String changeRef(int change) {
+    return String.format("refs/changes/%02d/%d/1", change % 100, change);
+  }
+
+  private static String git(Path directory, String... args)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    Process process =
+        new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+    process.getOutputStream().close();
+    String output;
+    try (InputStream in = process.getInputStream()) {
+      output = IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+    if (process.waitFor() != 0) {
+      throw new IOException("git " + String.join(" ", args) + " failed: " + output);
+    }
+    return output.trim();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(RefPrefixFetchBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,267 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.util.StreamTaskListener;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import jenkins.plugins.gerrit.traits.ChangeDiscoveryTrait;
+import jenkins.plugins.gerrit.traits.RestDiscoveryTrait;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSourceCriteria;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockserver.junit.MockServerRule;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.JsonBody;
+import org.mockserver.verify.VerificationTimes;
+
+public class RestDiscoveryTest {
+  private static final String MASTER_SHA = "0123456789abcdef0123456789abcdef01234567";
+  private static final String STABLE_SHA = "89abcdef0123456789abcdef0123456789abcdef";
+  private static final String CHANGE1_SHA = "1111111111111111111111111111111111111111";
+  private static final String CHANGE2_SHA = "2222222222222222222222222222222222222222";
+
+  @Rule public MockServerRule g = new MockServerRule(this);
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  private GerritSCMSource source;
+
+  @Before
+  public void setup() throws Exception {
+    CredentialsProvider.lookupStores(j.jenkins)
+        .iterator()
+        .next()
+        .addCredentials(
+            Domain.global(),
+            new UsernamePasswordCredentialsImpl(
+                CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD"));
+
+    g.getClient()
+        .when(HttpRequest.request("/a/projects/test/branches/").withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(
+                    JsonBody.json(
+                        Arrays.asList(
+                            branch("HEAD", "master"),
+                            branch("refs/meta/config", MASTER_SHA),
+                            branch("refs/heads/master", MASTER_SHA),
+                            branch("refs/heads/stable", STABLE_SHA)))));
+    g.getClient()
+        .when(HttpRequest.request("/a/changes/").withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.emptyList())));
+    g.getClient()
+        .when(
+            HttpRequest.request("/a/projects/test/branches/.*master/files/Jenkinsfile/content")
+                .withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(
+                    Base64.getEncoder()
+                        .encodeToString("node {}".getBytes(StandardCharsets.UTF_8))));
+    g.getClient()
+        .when(HttpRequest.request("/a/projects/test/branches/.*/files/.*").withMethod("GET"))
+        .respond(HttpResponse.response().withStatusCode(404));
+
+    source =
+        new GerritSCMSource(
+            String.format(
+                "https://%s:%s/a/test",
+                g.getClient().remoteAddress().getHostName(),
+                g.getClient().remoteAddress().getPort()));
+    source.setInsecureHttps(true);
+    source.setCredentialsId("cid");
+    source.setTraits(Arrays.asList(new ChangeDiscoveryTrait(null), new RestDiscoveryTrait()));
+  }
+
+  @Test
+  public void shouldDiscoverTheBranchesWithoutCacheRepository() throws Exception {
+    SCMSourceCriteria hasJenkinsfile =
+        (probe, listener) -> probe.stat("Jenkinsfile").getType() == SCMFile.Type.REGULAR_FILE;
+    SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+
+    source.fetch(hasJenkinsfile, collector, new StreamTaskListener(System.out));
+
+    Map<SCMHead, SCMRevision> heads = collector.result();
+    assertEquals(1, heads.size());
+    SCMHead master = heads.keySet().iterator().next();
+    assertEquals("master", master.getName());
+    assertEquals(
+        new AbstractGerritSCMSource.SCMRevisionImpl(master, MASTER_SHA), heads.get(master));
+    assertArrayEquals(new File[0], cacheRepositories());
+  }
+
+  @Test
+  public void shouldRetrieveTheBranchRevision() throws Exception {
+    g.getClient()
+        .when(
+            HttpRequest.request("/a/projects/test/branches/.*stable").withMethod("GET"),
+            Times.once())
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(branch("refs/heads/stable", STABLE_SHA))));
+
+    SCMRevision revision = source.fetch(new SCMHead("stable"), new StreamTaskListener(System.out));
+
+    assertEquals(STABLE_SHA, ((AbstractGerritSCMSource.SCMRevisionImpl) revision).getHash());
+    assertArrayEquals(new File[0], cacheRepositories());
+  }
+
+  @Test
+  public void shouldDiscoverTheOpenChangesOfAllThePages() throws Exception {
+    g.getClient().clear(HttpRequest.request("/a/changes/"));
+    g.getClient()
+        .when(
+            HttpRequest.request("/a/changes/")
+                .withMethod("GET")
+                .withQueryStringParameter("S", "1"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.singletonList(change(2, CHANGE2_SHA, false)))));
+    g.getClient()
+        .when(HttpRequest.request("/a/changes/").withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.singletonList(change(1, CHANGE1_SHA, true)))));
+    g.getClient()
+        .when(
+            HttpRequest.request("/a/changes/.*/revisions/.*/files/Jenkinsfile/content")
+                .withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(
+                    Base64.getEncoder()
+                        .encodeToString("node {}".getBytes(StandardCharsets.UTF_8))));
+    SCMSourceCriteria hasJenkinsfile =
+        (probe, listener) -> probe.stat("Jenkinsfile").getType() == SCMFile.Type.REGULAR_FILE;
+    SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+
+    source.fetch(hasJenkinsfile, collector, new StreamTaskListener(System.out));
+
+    Set<Integer> changes = new TreeSet<>();
+    for (Map.Entry<SCMHead, SCMRevision> head : collector.result().entrySet()) {
+      if (head.getKey() instanceof ChangeSCMHead) {
+        ChangeSCMHead change = (ChangeSCMHead) head.getKey();
+        changes.add(change.getChangeNumber());
+        assertEquals(
+            change.getChangeNumber() == 1 ? CHANGE1_SHA : CHANGE2_SHA,
+            ((ChangeSCMRevision) head.getValue()).getPatchsetHash());
+      }
+    }
+    assertEquals(new TreeSet<>(Arrays.asList(1, 2)), changes);
+    g.getClient()
+        .verify(
+            HttpRequest.request("/a/changes/").withQueryStringParameter("S", "1"),
+            VerificationTimes.once());
+    assertArrayEquals(new File[0], cacheRepositories());
+  }
+
+  @Test
+  public void shouldStopPagingWhenThereAreNoMoreChanges() throws Exception {
+    g.getClient().clear(HttpRequest.request("/a/changes/"));
+    g.getClient()
+        .when(HttpRequest.request("/a/changes/").withMethod("GET"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(
+                    JsonBody.json(Collections.singletonList(change(1, CHANGE1_SHA, false)))));
+
+    source.fetch(
+        (probe, listener) -> true, SCMHeadObserver.collect(), new StreamTaskListener(System.out));
+
+    g.getClient().verify(HttpRequest.request("/a/changes/"), VerificationTimes.once());
+  }
+
+  @Test
+  public void shouldRetrieveTheChangeRevisionWithoutCallingGerrit() throws Exception {
+    ChangeSCMHead head =
+        new ChangeSCMHead(
+            new AbstractMap.SimpleEntry<>("refs/changes/01/1/1", ObjectId.fromString(CHANGE1_SHA)),
+            "01/1/1",
+            Collections.emptySet());
+
+    SCMRevision revision = source.fetch(head, new StreamTaskListener(System.out));
+
+    assertTrue(revision instanceof AbstractGerritSCMSource.SCMRevisionImpl);
+    assertEquals(CHANGE1_SHA, ((AbstractGerritSCMSource.SCMRevisionImpl) revision).getHash());
+    g.getClient().verify(HttpRequest.request("/a/changes/.*"), VerificationTimes.exactly(0));
+    assertArrayEquals(new File[0], cacheRepositories());
+  }
+
+  private File[] cacheRepositories() {
+    File caches = new File(j.jenkins.getRootDir(), "caches");
+    File[] repositories = caches.listFiles((dir, name) -> name.startsWith("git-"));
+    return repositories == null ? new File[0] : repositories;
+  }
+
+  private static Map<String, Object> change(int number, String sha, boolean moreChanges) {
+    Map<String, Object> revision = new HashMap<>();
+    revision.put("_number", 1);
+    revision.put("ref", String.format("refs/changes/%02d/%d/1", number % 100, number));
+    Map<String, Object> change = new HashMap<>();
+    change.put("_number", number);
+    change.put("project", "test");
+    change.put("branch", "master");
+    change.put("change_id", "I" + sha);
+    change.put("current_revision", sha);
+    change.put("revisions", Collections.singletonMap(sha, revision));
+    if (moreChanges) {
+      change.put("_more_changes", true);
+    }
+    return change;
+  }
+
+  private static Map<String, String> branch(String ref, String revision) {
+    Map<String, String> branch = new HashMap<>();
+    branch.put("ref", ref);
+    branch.put("revision", revision);
+    return branch;
+  }
+}
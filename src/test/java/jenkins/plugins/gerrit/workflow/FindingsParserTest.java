@@ -0,0 +1,101 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FindingsParserTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void shouldParseSarifResultsRelativeToWorkspace() throws Exception {
+    String workspace = tmp.getRoot().getAbsolutePath();
+    File report =
+        write(
+            "report.sarif",
+            "{\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":{\"name\":\"lint\"}},"
+                + "\"results\":["
+                + result("UnusedVar", "warning", "x is unused", "file://" + workspace + "/a.c", 3)
+                + ","
+                + result("UnusedVar", "warning", "x is unused", "a.c", 3)
+                + ","
+                + result("NullDeref", "error", "p may be null", "./src/b.c", 10)
+                + "]}]}");
+
+    FindingsParser.Findings findings =
+        new FindingsParser(FindingsParser.Format.SARIF, workspace, 10, 100).invoke(report, null);
+
+    assertEquals(3, findings.total);
+    assertEquals(2, findings.kept);
+    assertEquals(1, findings.duplicates);
+    List<FindingsParser.Finding> a = findings.byFile.get("a.c");
+    assertEquals(1, a.size());
+    assertEquals(3, a.get(0).line);
+    assertEquals("[warning] UnusedVar: x is unused", a.get(0).message);
+    assertEquals(10, findings.byFile.get("src/b.c").get(0).line);
+  }
+
+  @Test
+  public void shouldCapCheckstyleFindingsPerFileAndOverall() throws Exception {
+    String workspace = tmp.getRoot().getAbsolutePath();
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<checkstyle>\n");
+    for (int file = 0; file < 5; file++) {
+      xml.append(String.format("<file name=\"%s/F%d.java\">\n", workspace, file));
+      for (int line = 1; line <= 10; line++) {
+        xml.append(
+            String.format(
+                "<error line=\"%d\" severity=\"warning\" message=\"m%d\" source=\"Rule\"/>\n",
+                line, line));
+      }
+      xml.append("</file>\n");
+    }
+    xml.append("</checkstyle>\n");
+    File report = write("checkstyle-result.xml", xml.toString());
+
+    FindingsParser.Findings findings =
+        new FindingsParser(FindingsParser.Format.of(null, report.getName()), workspace, 3, 10)
+            .invoke(report, null);
+
+    assertEquals(50, findings.total);
+    assertEquals(10, findings.kept);
+    assertEquals(40, findings.dropped);
+    assertEquals(3, findings.byFile.get("F0.java").size());
+    assertEquals(3, findings.byFile.get("F2.java").size());
+    assertEquals(1, findings.byFile.get("F3.java").size());
+    assertEquals(4, findings.byFile.size());
+  }
+
+  private static String result(String rule, String level, String message, String uri, int line) {
+    return String.format(
+        "{\"ruleId\":\"%s\",\"level\":\"%s\",\"message\":{\"text\":\"%s\"},"
+            + "\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"%s\"},"
+            + "\"region\":{\"startLine\":%d,\"startColumn\":1}}}]}",
+        rule, level, message, uri, line);
+  }
+
+  private File write(String name, String content) throws Exception {
+    File file = tmp.newFile(name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
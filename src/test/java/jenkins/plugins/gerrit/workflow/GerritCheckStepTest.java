@@ -19,6 +19,7 @@ import static java.time.ZoneOffset.UTC;
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.cloudbees.plugins.credentials.CredentialsProvider;
@@ -31,12 +32,18 @@ import com.google.gerrit.plugins.checks.api.CheckInput;
 import com.google.gerrit.plugins.checks.api.CheckState;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import hudson.model.FreeStyleBuild;
 import hudson.model.Result;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import jenkins.plugins.gerrit.GerritChange;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
@@ -290,6 +297,145 @@ public class GerritCheckStepTest {
         allOf(lessThanOrEqualTo(endTestEpoch), greaterThanOrEqualTo(beginTestEpoch)));
   }
 
+  @Test
+  public void gerritCheckStepUpdatesRemainingCheckersWhenOneFails() throws Exception {
+    int changeId = 4321;
+    int revision = 1;
+    String branch = String.format("%02d/%d/%d", changeId % 100, changeId, revision);
+    UsernamePasswordCredentialsImpl c =
+        new UsernamePasswordCredentialsImpl(
+            CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD");
+    CredentialsProvider.lookupStores(j.jenkins)
+        .iterator()
+        .next()
+        .addCredentials(Domain.global(), c);
+    WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+    p.setDefinition(
+        new CpsFlowDefinition(
+            String.format(
+                ""
+                    + "node {\n"
+                    + "  withEnv([\n"
+                    + "    'GERRIT_API_URL=https://%s:%s/a/project',\n"
+                    + "    'GERRIT_API_INSECURE_HTTPS=true',\n"
+                    + "    'GERRIT_CREDENTIALS_ID=cid',\n"
+                    + "    'BRANCH_NAME=%s',\n"
+                    + "  ]) {\n"
+                    + "    gerritCheck checks: [lint: 'SUCCESSFUL', broken: 'FAILED', "
+                    + "unit: 'RUNNING']\n"
+                    + "  }\n"
+                    + "}",
+                g.getClient().remoteAddress().getHostString(),
+                g.getClient().remoteAddress().getPort(),
+                branch),
+            true));
+
+    String expectedUrl = String.format("/a/changes/%s/revisions/%s/checks/", changeId, revision);
+
+    g.getClient()
+        .when(
+            HttpRequest.request(expectedUrl)
+                .withMethod("POST")
+                .withBody(JsonBody.json("{\"checker_uuid\":\"broken\"}")))
+        .respond(HttpResponse.response().withStatusCode(500));
+    g.getClient()
+        .when(HttpRequest.request(expectedUrl).withMethod("POST"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.emptyMap())));
+
+    WorkflowRun run = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0));
+
+    g.getClient().verify(HttpRequest.request(expectedUrl), VerificationTimes.exactly(3));
+    j.assertLogContains("Gerrit check broken could not be updated", run);
+    j.assertLogContains("Could not update 1 of 3 Gerrit checks", run);
+    j.assertLogNotContains("Gerrit check lint could not be updated", run);
+    j.assertLogNotContains("Gerrit check unit could not be updated", run);
+  }
+
+  @Test
+  public void gerritCheckStepAbortCancelsInFlightRequest() throws Exception {
+    int changeId = 4321;
+    int revision = 1;
+    String branch = String.format("%02d/%d/%d", changeId % 100, changeId, revision);
+    UsernamePasswordCredentialsImpl c =
+        new UsernamePasswordCredentialsImpl(
+            CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD");
+    CredentialsProvider.lookupStores(j.jenkins)
+        .iterator()
+        .next()
+        .addCredentials(Domain.global(), c);
+    WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+    p.setDefinition(
+        new CpsFlowDefinition(
+            String.format(
+                ""
+                    + "node {\n"
+                    + "  withEnv([\n"
+                    + "    'GERRIT_API_URL=https://%s:%s/a/project',\n"
+                    + "    'GERRIT_API_INSECURE_HTTPS=true',\n"
+                    + "    'GERRIT_CREDENTIALS_ID=cid',\n"
+                    + "    'BRANCH_NAME=%s',\n"
+                    + "  ]) {\n"
+                    + "    gerritCheck checks: [checker: 'RUNNING']\n"
+                    + "  }\n"
+                    + "}",
+                g.getClient().remoteAddress().getHostString(),
+                g.getClient().remoteAddress().getPort(),
+                branch),
+            true));
+
+    String expectedUrl = String.format("/a/changes/%s/revisions/%s/checks/", changeId, revision);
+
+    g.getClient()
+        .when(HttpRequest.request(expectedUrl).withMethod("POST"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withDelay(TimeUnit.SECONDS, 120)
+                .withBody(JsonBody.json(Collections.emptyMap())));
+
+    long start = System.currentTimeMillis();
+    WorkflowRun run = p.scheduleBuild2(0).waitForStart();
+    j.waitForMessage("Gerrit review change", run);
+    run.getExecutor().interrupt();
+    j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(run));
+
+    assertThat(
+        "The pending check update should be aborted with the build",
+        System.currentTimeMillis() - start,
+        lessThanOrEqualTo(TimeUnit.SECONDS.toMillis(60)));
+  }
+
+  @Test
+  public void gerritOutboxDropsSupersededCheckUpdates() throws Exception {
+    FreeStyleBuild build = j.buildAndAssertSuccess(j.createFreeStyleProject());
+    Map<String, String> env = new HashMap<>();
+    env.put("GERRIT_API_URL", "https://gerrit.invalid/");
+    env.put("GERRIT_PROJECT", "project");
+    env.put("BRANCH_NAME", "21/4321/1");
+    GerritChange change = new GerritChange(env, null);
+
+    GerritOutbox outbox = GerritOutbox.get();
+    outbox.enqueue(build, env, change, checkInput("checker", CheckState.RUNNING));
+    outbox.enqueue(build, env, change, checkInput("other", CheckState.RUNNING));
+    outbox.enqueue(build, env, change, checkInput("checker", CheckState.SUCCESSFUL));
+
+    List<GerritOutbox.Entry> entries = outbox.getEntries();
+    assertEquals(2, entries.size());
+    assertEquals("check other: RUNNING", entries.get(0).getSummary());
+    assertEquals("check checker: SUCCESSFUL", entries.get(1).getSummary());
+    assertEquals(1, outbox.getSuperseded());
+  }
+
+  private static CheckInput checkInput(String checkerUuid, CheckState state) {
+    CheckInput input = new CheckInput();
+    input.checkerUuid = checkerUuid;
+    input.state = state;
+    return input;
+  }
+
   private static Instant instantFromUtc(String s) {
     // Parse the "local"-format timestamp text as if it is UTC
     DateTimeFormatter formatter =
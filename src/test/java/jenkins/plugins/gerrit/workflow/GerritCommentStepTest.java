@@ -85,7 +85,112 @@ public class GerritCommentStepTest {
     verifyDrafts(changeId);
   }
 
-  private void verifyDrafts(String changeId) {
+  @Test
+  public void gerritCommentStepBufferedIsPublishedAtEndOfRun() throws Exception {
+    WorkflowJob p =
+        createWorkflowJob(
+            branch,
+            ""
+                + "gerritComment path: 'a.txt', line: 1, message: 'first', buffered: true\n"
+                + "gerritComment path: 'a.txt', line: 2, message: 'second', buffered: true\n"
+                + "gerritComment path: 'b.txt', message: 'file comment', buffered: true\n");
+    setupServerVersion("2.16");
+
+    String changeId = String.format("%s~%s", projectName, changeNumber);
+    setupReview(changeId);
+
+    WorkflowRun run = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+    j.assertLogContains("Gerrit review publishing 3 buffered comments in the background", run);
+    awaitReviews(changeId, 1);
+
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withMethod("POST")
+                .withBody(
+                    JsonBody.json(
+                        "{\"comments\":{"
+                            + "\"a.txt\":[{\"line\":1,\"message\":\"first\"},"
+                            + "{\"line\":2,\"message\":\"second\"}],"
+                            + "\"b.txt\":[{\"message\":\"file comment\"}]}}")),
+            VerificationTimes.once());
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                String.format("/a/changes/%s/revisions/%s/drafts", changeId, revision)),
+            VerificationTimes.exactly(0));
+  }
+
+  @Test
+  public void gerritCommentStepBufferedIsPublishedWithNextReview() throws Exception {
+    WorkflowJob p =
+        createWorkflowJob(
+            branch,
+            ""
+                + "gerritComment path: 'a.txt', line: 1, message: 'first', buffered: true\n"
+                + "gerritReview labels: [Verified: -1], message: 'Build failed'\n");
+    setupServerVersion("2.16");
+
+    String changeId = String.format("%s~%s", projectName, changeNumber);
+    setupReview(changeId);
+
+    j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                String.format("/a/changes/%s/revisions/%s/review", changeId, revision)),
+            VerificationTimes.once());
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withBody(
+                    JsonBody.json(
+                        "{\"message\":\"Build failed\",\"labels\":{\"Verified\":-1},"
+                            + "\"comments\":{\"a.txt\":[{\"line\":1,\"message\":\"first\"}]}}")),
+            VerificationTimes.once());
+  }
+
+  @Test
+  public void gerritFlushCommentsStepPublishesBufferedComments() throws Exception {
+    WorkflowJob p =
+        createWorkflowJob(
+            branch,
+            ""
+                + "gerritComment path: 'a.txt', line: 1, message: 'first', buffered: true\n"
+                + "gerritFlushComments()\n"
+                + "gerritComment path: 'a.txt', line: 2, message: 'second', buffered: true\n"
+                + "gerritFlushComments()\n"
+                + "gerritFlushComments()\n");
+    setupServerVersion("2.16");
+
+    String changeId = String.format("%s~%s", projectName, changeNumber);
+    setupReview(changeId);
+
+    j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                String.format("/a/changes/%s/revisions/%s/review", changeId, revision)),
+            VerificationTimes.exactly(2));
+  }
+
+  /** Waits for the reviews published in the background once the run has completed. */
+  private void awaitReviews(String changeId, int count) throws InterruptedException {
+    HttpRequest review =
+        HttpRequest.request(String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+            .withMethod("POST");
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (g.getClient().retrieveRecordedRequests(review).length < count
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+  }
+
+    private void verifyDrafts(String changeId) {
     g.getClient()
         .verify(
             HttpRequest.request(
@@ -112,8 +217,26 @@ public class GerritCommentStepTest {
                 .withBody(JsonBody.json(Collections.emptyMap())));
   }
 
+  private void setupReview(String changeId) {
+    g.getClient()
+        .when(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withMethod("POST"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.emptyMap())));
+  }
+
   private WorkflowJob createWorkflowJob(String path, int line, String message, String branch)
       throws IOException {
+    return createWorkflowJob(
+        branch,
+        String.format("gerritComment path: '%s', line: %s, message: '%s'\n", path, line, message));
+  }
+
+  private WorkflowJob createWorkflowJob(String branch, String steps) throws IOException {
     UsernamePasswordCredentialsImpl c =
         new UsernamePasswordCredentialsImpl(
             CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD");
@@ -134,16 +257,14 @@ public class GerritCommentStepTest {
                     + "    'GERRIT_CREDENTIALS_ID=cid',\n"
                     + "    'BRANCH_NAME=%s',\n"
                     + "  ]) {\n"
-                    + "    gerritComment path: '%s', line: %s, message: '%s'\n"
+                    + "%s"
                     + "  }\n"
                     + "}",
                 g.getClient().remoteAddress().getHostString(),
                 g.getClient().remoteAddress().getPort(),
                 projectName,
                 branch,
-                path,
-                line,
-                message),
+                steps),
             true));
     return p;
   }
@@ -0,0 +1,148 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.plugins.checks.api.CheckInput;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import hudson.model.FreeStyleBuild;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jenkins.plugins.gerrit.GerritChange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class GerritOutboxTest {
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  private FreeStyleBuild run;
+  private Map<String, String> envVars;
+  private GerritChange change;
+
+  @Before
+  public void setUp() throws Exception {
+    run = j.buildAndAssertSuccess(j.createFreeStyleProject());
+    envVars = new HashMap<>();
+    envVars.put("GERRIT_API_URL", "https://gerrit.example.com");
+    envVars.put("GERRIT_PROJECT", "project");
+    envVars.put("GERRIT_CHANGE_NUMBER", "1234");
+    envVars.put("GERRIT_PATCHSET_NUMBER", "2");
+    change = new GerritChange(envVars, null);
+  }
+
+  @Test
+  public void shouldReplayTheJournalAfterARestart() throws Exception {
+    GerritOutbox outbox = new GerritOutbox();
+    outbox.enqueue(run, envVars, change, review("Verified", 1));
+    outbox.enqueue(run, envVars, change, check("checker:1", CheckState.RUNNING));
+    outbox.enqueue(run, envVars, change, review("Verified", -1));
+    outbox.enqueue(run, envVars, change, check("checker:1", CheckState.SUCCESSFUL));
+
+    assertTrue(journalFile().exists());
+    assertFalse(configFile().exists());
+
+    GerritOutbox restarted = new GerritOutbox();
+    assertEquals(summaries(outbox), summaries(restarted));
+    assertEquals(2, summaries(restarted).size());
+    assertEquals(2, restarted.getSuperseded());
+  }
+
+  @Test
+  public void shouldContinueTheIdsAfterARestart() throws Exception {
+    GerritOutbox outbox = new GerritOutbox();
+    outbox.enqueue(run, envVars, change, review("Verified", 1));
+
+    GerritOutbox restarted = new GerritOutbox();
+    restarted.enqueue(run, envVars, change, review("Code-Review", 1));
+
+    List<Long> ids =
+        new GerritOutbox()
+            .getEntries()
+            .stream()
+            .map(GerritOutbox.Entry::getId)
+            .collect(Collectors.toList());
+    assertEquals(2, ids.size());
+    assertTrue(ids.get(0) < ids.get(1));
+  }
+
+  @Test
+  public void shouldIgnoreAnIncompleteJournalRecord() throws Exception {
+    GerritOutbox outbox = new GerritOutbox();
+    outbox.enqueue(run, envVars, change, review("Verified", 1));
+    Files.write(
+        journalFile().toPath(),
+        "<jenkins.plugins.gerrit.workflow.GerritOutbox_-Put><seq>2</se"
+            .getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    assertEquals(summaries(outbox), summaries(new GerritOutbox()));
+  }
+
+  @Test
+  public void shouldSkipTheJournalRecordsAlreadySaved() throws Exception {
+    GerritOutbox outbox = new GerritOutbox();
+    outbox.enqueue(run, envVars, change, review("Verified", 1));
+    outbox.enqueue(run, envVars, change, review("Verified", -1));
+    byte[] journal = Files.readAllBytes(journalFile().toPath());
+
+    outbox.save();
+    assertTrue(configFile().exists());
+    assertFalse(journalFile().exists());
+
+    // Jenkins stopped after saving the outbox but before deleting the journal
+    Files.write(journalFile().toPath(), journal);
+    outbox.enqueue(run, envVars, change, review("Code-Review", 1));
+
+    GerritOutbox restarted = new GerritOutbox();
+    assertEquals(summaries(outbox), summaries(restarted));
+    assertEquals(2, summaries(restarted).size());
+    assertEquals(1, restarted.getSuperseded());
+  }
+
+  private static List<String> summaries(GerritOutbox outbox) {
+    return outbox.getEntries().stream().map(Object::toString).collect(Collectors.toList());
+  }
+
+  private static ReviewInput review(String label, int value) {
+    return new ReviewInput().label(label, value);
+  }
+
+  private static CheckInput check(String checkerUuid, CheckState state) {
+    CheckInput check = new CheckInput();
+    check.checkerUuid = checkerUuid;
+    check.state = state;
+    return check;
+  }
+
+  private File journalFile() {
+    return new File(j.jenkins.getRootDir(), GerritOutbox.class.getName() + ".journal");
+  }
+
+  private File configFile() {
+    return new File(j.jenkins.getRootDir(), GerritOutbox.class.getName() + ".xml");
+  }
+}
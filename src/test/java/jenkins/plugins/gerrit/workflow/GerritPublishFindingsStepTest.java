@@ -0,0 +1,145 @@
+// Copyright (C) 2023 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package jenkins.plugins.gerrit.workflow;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.model.Result;
+import java.io.IOException;
+import java.util.Collections;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockserver.junit.MockServerRule;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.JsonBody;
+import org.mockserver.verify.VerificationTimes;
+
+public class GerritPublishFindingsStepTest {
+
+  @Rule public MockServerRule g = new MockServerRule(this);
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  String projectName = "test-project";
+  int changeNumber = 4321;
+  int revision = 1;
+  String branch = String.format("%02d/%d/%d", changeNumber % 100, changeNumber, revision);
+  String changeId = String.format("%s~%s", projectName, changeNumber);
+
+  @Test
+  public void gerritPublishFindingsStepPostsRobotComments() throws Exception {
+    WorkflowJob p =
+        createWorkflowJob(
+            ""
+                + "writeFile file: 'checkstyle-result.xml', text: '''<checkstyle>\n"
+                + "  <file name=\"src/A.java\">\n"
+                + "    <error line=\"4\" severity=\"error\" message=\"Missing javadoc\"/>\n"
+                + "    <error line=\"4\" severity=\"error\" message=\"Missing javadoc\"/>\n"
+                + "  </file>\n"
+                + "</checkstyle>'''\n"
+                + "gerritPublishFindings report: 'checkstyle-result.xml', robotId: 'checkstyle'\n");
+    setupServerVersion("2.16");
+    setupReview();
+
+    WorkflowRun run = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+    j.assertLogContains("publishing 1 of 2 findings from checkstyle-result.xml", run);
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withMethod("POST")
+                .withBody(
+                    JsonBody.json(
+                        "{\"robot_comments\":{\"src/A.java\":[{\"line\":4,"
+                            + "\"message\":\"[error] Missing javadoc\","
+                            + "\"robot_id\":\"checkstyle\"}]}}")),
+            VerificationTimes.once());
+  }
+
+  @Test
+  public void gerritPublishFindingsStepFailsWhenTheReportIsMissing() throws Exception {
+    WorkflowJob p =
+        createWorkflowJob("gerritPublishFindings report: 'missing.sarif', robotId: 'sarif'\n");
+    setupServerVersion("2.16");
+    setupReview();
+
+    WorkflowRun run = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0));
+
+    j.assertLogContains("Findings report missing.sarif not found in the workspace", run);
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                String.format("/a/changes/%s/revisions/%s/review", changeId, revision)),
+            VerificationTimes.exactly(0));
+  }
+
+  private void setupServerVersion(String version) {
+    g.getClient()
+        .when(HttpRequest.request("/a/config/server/version").withMethod("GET"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody(")]}'\n\"" + version + "\""));
+  }
+
+  private void setupReview() {
+    g.getClient()
+        .when(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withMethod("POST"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.emptyMap())));
+  }
+
+  private WorkflowJob createWorkflowJob(String steps) throws IOException {
+    UsernamePasswordCredentialsImpl c =
+        new UsernamePasswordCredentialsImpl(
+            CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD");
+    CredentialsProvider.lookupStores(j.jenkins)
+        .iterator()
+        .next()
+        .addCredentials(Domain.global(), c);
+    WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+    p.setDefinition(
+        new CpsFlowDefinition(
+            String.format(
+                ""
+                    + "node {\n"
+                    + "  withEnv([\n"
+                    + "    'GERRIT_API_URL=https://%s:%s/',\n"
+                    + "    'GERRIT_PROJECT=%s',\n"
+                    + "    'GERRIT_API_INSECURE_HTTPS=true',\n"
+                    + "    'GERRIT_CREDENTIALS_ID=cid',\n"
+                    + "    'BRANCH_NAME=%s',\n"
+                    + "  ]) {\n"
+                    + "%s"
+                    + "  }\n"
+                    + "}",
+                g.getClient().remoteAddress().getHostString(),
+                g.getClient().remoteAddress().getPort(),
+                projectName,
+                branch,
+                steps),
+            true));
+    return p;
+  }
+}
@@ -14,6 +14,8 @@
 
 package jenkins.plugins.gerrit.workflow;
 
+import static org.junit.Assert.assertTrue;
+
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.domains.Domain;
@@ -393,6 +395,65 @@ public class GerritReviewStepTest {
     }
   }
 
+  @Test
+  public void gerritReviewStepOutboxDeliversReviewInBackground() throws Exception {
+    int revision = 1;
+    String branch = String.format("%02d/%d/%d", changeNumber % 100, changeNumber, revision);
+
+    UsernamePasswordCredentialsImpl c =
+        new UsernamePasswordCredentialsImpl(
+            CredentialsScope.GLOBAL, "cid", "cid", "USERNAME", "PASSWORD");
+    CredentialsProvider.lookupStores(j.jenkins)
+        .iterator()
+        .next()
+        .addCredentials(Domain.global(), c);
+    WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+    p.setDefinition(
+        new CpsFlowDefinition(
+            String.format(
+                ""
+                    + "node {\n"
+                    + "  withEnv([\n"
+                    + "    'GERRIT_API_URL=https://%s:%s',\n"
+                    + "    'GERRIT_API_INSECURE_HTTPS=true',\n"
+                    + "    'GERRIT_CREDENTIALS_ID=cid',\n"
+                    + "    'GERRIT_PROJECT=%s',\n"
+                    + "    'BRANCH_NAME=%s',\n"
+                    + "  ]) {\n"
+                    + "    gerritReview labels: [Verified: 1], outbox: true\n"
+                    + "  }\n"
+                    + "}",
+                g.getClient().remoteAddress().getHostString(),
+                g.getClient().remoteAddress().getPort(),
+                projectName,
+                branch),
+            true));
+    g.getClient()
+        .when(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withMethod("POST"))
+        .respond(
+            HttpResponse.response()
+                .withStatusCode(200)
+                .withBody(JsonBody.json(Collections.emptyMap())));
+
+    WorkflowRun run = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+    j.assertLogContains("Gerrit review queued in the outbox", run);
+
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (!GerritOutbox.get().getEntries().isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertTrue(GerritOutbox.get().getEntries().isEmpty());
+    g.getClient()
+        .verify(
+            HttpRequest.request(
+                    String.format("/a/changes/%s/revisions/%s/review", changeId, revision))
+                .withBody(JsonBody.json("{\"labels\":{\"Verified\":1}}")),
+            VerificationTimes.once());
+  }
+
   private void setupServerVersion() {
     g.getClient()
         .when(HttpRequest.request("/a/config/server/version").withMethod("GET"))